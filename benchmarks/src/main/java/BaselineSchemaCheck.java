@@ -0,0 +1,84 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Checks that the migrations bring a database set up by hand for the original app up to date: the
+// users, employees and timesheet tables as it used them, timesheet without an id column, once without
+// and once with a primary key of its own. After migrating, every shift must have a distinct id, new
+// shifts must get one, and closing the pay periods must move every finished shift to the archive.
+// Each case runs with H2 folding unquoted names to lower case, as MySQL on Linux keeps them, and to
+// upper case, its default; an empty database must migrate under both as well. Exits with status 1
+// on any failure.
+//
+//   java -cp target/benchmarks.jar BaselineSchemaCheck
+public class BaselineSchemaCheck {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("timesheet.schema.selfCheck", "false");
+        System.setProperty("timesheet.journal", "false");
+        boolean ok = true;
+        for (String folding : new String[]{";DATABASE_TO_LOWER=TRUE", ""}) {
+            ok &= checkEmpty(folding);
+            ok &= check("no-key", "", folding);
+            ok &= check("natural-key", ", PRIMARY KEY (employee_id, start_time)", folding);
+        }
+        System.out.println(ok ? "OK" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean checkEmpty(String folding) throws Exception {
+        String name = "empty" + (folding.isEmpty() ? ", upper case" : "");
+        DatabaseManager dbManager = new DatabaseManager("jdbc:h2:mem:baseline-" + name + ";MODE=MySQL" + folding + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new SchemaMigrator(dbManager).migrate();
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO employees (employee_id, name, department) VALUES ('emp1', 'Employee 1', 'Floor')");
+        }
+        TimesheetDataService service = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        service.addTimeEntry("emp1", LocalDateTime.of(2024, 3, 20, 8, 0), LocalDateTime.of(2024, 3, 20, 12, 0));
+        boolean ok = same(dbManager, name + ": ids", "SELECT COUNT(DISTINCT id) FROM timesheet", 1);
+        dbManager.close();
+        return ok;
+    }
+
+    private static boolean check(String key, String timesheetKey, String folding) throws Exception {
+        String name = key + (folding.isEmpty() ? ", upper case" : "");
+        String url = "jdbc:h2:mem:baseline-" + name + ";MODE=MySQL" + folding + ";DB_CLOSE_DELAY=-1";
+        DatabaseManager dbManager = new DatabaseManager(url, "sa", "");
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE users (username VARCHAR(50) PRIMARY KEY, password VARCHAR(50), role VARCHAR(20))");
+            stmt.execute("CREATE TABLE employees (employee_id VARCHAR(50) PRIMARY KEY, name VARCHAR(100), department VARCHAR(100))");
+            stmt.execute("CREATE TABLE timesheet (employee_id VARCHAR(50) NOT NULL, start_time DATETIME NOT NULL, end_time DATETIME"
+                    + timesheetKey + ")");
+            stmt.execute("INSERT INTO employees (employee_id, name, department) SELECT CONCAT('emp', n), CONCAT('Employee ', n), 'Floor' "
+                    + "FROM SYSTEM_RANGE(1, 3) AS r(n)");
+            stmt.execute("INSERT INTO timesheet (employee_id, start_time, end_time) SELECT CONCAT('emp', MOD(n, 3) + 1), "
+                    + "DATEADD(DAY, n, TIMESTAMP '2024-01-01 08:00:00'), DATEADD(DAY, n, TIMESTAMP '2024-01-01 16:00:00') "
+                    + "FROM SYSTEM_RANGE(1, 60) AS r(n)");
+        }
+        new SchemaMigrator(dbManager).migrate();
+
+        TimesheetDataService service = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        service.addTimeEntry("emp1", LocalDateTime.of(2024, 3, 20, 8, 0), LocalDateTime.of(2024, 3, 20, 12, 0));
+        boolean ok = same(dbManager, name + ": distinct ids", "SELECT COUNT(DISTINCT id) FROM timesheet", 61);
+        ok &= same(dbManager, name + ": no missing ids", "SELECT COUNT(*) FROM timesheet WHERE id IS NULL", 0);
+
+        service.getPayPeriods().closeDuePeriods(LocalDate.of(2030, 1, 1));
+        ok &= same(dbManager, name + ": archived", "SELECT COUNT(*) FROM " + PayPeriodArchive.ARCHIVE_TABLE, 61);
+        ok &= same(dbManager, name + ": left live", "SELECT COUNT(*) FROM timesheet", 0);
+        ok &= same(dbManager, name + ": period minutes", "SELECT SUM(minutes) FROM pay_period_hours", 60 * 8 * 60 + 4 * 60);
+        dbManager.close();
+        return ok;
+    }
+
+    private static boolean same(DatabaseManager dbManager, String step, String sql, long expected) throws Exception {
+        long actual;
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            actual = rs.getLong(1);
+        }
+        System.out.printf("%-40s %d, expected %d: %s%n", step, actual, expected, actual == expected ? "ok" : "MISMATCH");
+        return actual == expected;
+    }
+}
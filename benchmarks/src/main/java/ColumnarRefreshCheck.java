@@ -0,0 +1,104 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Checks that the columnar report store counts each shift once, and against the right employee.
+// With the change feed on and off, a few employees clock in and out between two reports, one shift
+// is added directly, one is clocked in and out twice, and a new employee whose id sorts among the
+// loaded ones clocks in and out before a full reload renumbers the dictionaries; every report must
+// match SUM(TIMESTAMPDIFF) per employee over the database rows. Exits with status 1 on any mismatch.
+//
+//   java -cp target/benchmarks.jar ColumnarRefreshCheck
+public class ColumnarRefreshCheck {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("timesheet.schema.selfCheck", "false");
+        System.setProperty("timesheet.journal", "false");
+        System.setProperty("timesheet.columnarReports", "true");
+        boolean ok = true;
+        for (boolean changeFeed : new boolean[]{true, false}) {
+            // Read by the service's constructor
+            System.setProperty("timesheet.changeFeed", Boolean.toString(changeFeed));
+            ok &= check(changeFeed);
+        }
+        System.out.println(ok ? "OK" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean check(boolean changeFeed) throws Exception {
+        String url = "jdbc:h2:mem:columnar-" + changeFeed + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        DatabaseManager dbManager = new DatabaseManager(url, "sa", "");
+        new SchemaMigrator(dbManager).migrate();
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO employees (employee_id, name, department) SELECT CONCAT('emp', n), CONCAT('Employee ', n), 'Floor' "
+                    + "FROM SYSTEM_RANGE(1, 5) AS r(n)");
+            stmt.execute("INSERT INTO timesheet (employee_id, start_time, end_time) SELECT CONCAT('emp', n), "
+                    + "TIMESTAMP '2030-01-01 08:00:00', TIMESTAMP '2030-01-01 12:00:00' FROM SYSTEM_RANGE(1, 5) AS r(n)");
+        }
+        TimesheetDataService service = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        boolean ok = matches(service, dbManager, "feed " + changeFeed + ", loaded");
+
+        LocalDateTime day = LocalDateTime.of(2030, 1, 2, 0, 0);
+        for (int i = 1; i <= 3; i++) {
+            service.clockIn("emp" + i, day.plusHours(8));
+            service.clockOut("emp" + i, day.plusHours(8 + i));
+        }
+        service.addTimeEntry("emp4", day.plusHours(9), day.plusHours(17));
+        ok &= matches(service, dbManager, "feed " + changeFeed + ", after clock in and out");
+
+        // The same employee twice between refreshes, and again after one
+        service.clockIn("emp5", day.plusHours(6));
+        service.clockOut("emp5", day.plusHours(7));
+        service.clockIn("emp5", day.plusHours(13));
+        service.clockOut("emp5", day.plusHours(15));
+        ok &= matches(service, dbManager, "feed " + changeFeed + ", two shifts");
+        service.clockIn("emp5", day.plusHours(20));
+        service.clockOut("emp5", day.plusHours(22));
+        ok &= matches(service, dbManager, "feed " + changeFeed + ", third shift");
+
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO employees (employee_id, name, department) VALUES ('emp10', 'Employee 10', 'Floor')");
+        }
+        service.clockIn("emp10", day.plusHours(8));
+        service.clockOut("emp10", day.plusHours(12));
+        ok &= matches(service, dbManager, "feed " + changeFeed + ", new employee");
+        service.getColumnarStore().reload();
+        ok &= matches(service, dbManager, "feed " + changeFeed + ", after reload");
+        dbManager.close();
+        return ok;
+    }
+
+    private static boolean matches(TimesheetDataService service, DatabaseManager dbManager, String step) throws Exception {
+        double reported = 0;
+        Map<String, Double> byEmployee = new TreeMap<>();
+        for (EmployeeHours hours : service.generateReport()) {
+            reported += hours.getTotalHours();
+            byEmployee.put(hours.getEmployeeId(), hours.getTotalHours());
+        }
+        double expected = 0;
+        Map<String, Double> expectedByEmployee = new TreeMap<>();
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT employee_id, SUM(TIMESTAMPDIFF(MINUTE, start_time, end_time)) FROM timesheet "
+                     + "WHERE end_time IS NOT NULL GROUP BY employee_id")) {
+            while (rs.next()) {
+                expected += rs.getLong(2) / 60.0;
+                expectedByEmployee.put(rs.getString(1), rs.getLong(2) / 60.0);
+            }
+        }
+        boolean same = byEmployee.equals(expectedByEmployee) && service.getColumnarStore().getRowCount() == rowCount(dbManager);
+        System.out.printf("%-36s report %.1fh, database %.1fh, rows %d: %s%n", step, reported, expected,
+                service.getColumnarStore().getRowCount(), same ? "ok" : "MISMATCH " + byEmployee + " vs " + expectedByEmployee);
+        return same;
+    }
+
+    private static long rowCount(DatabaseManager dbManager) throws Exception {
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM timesheet WHERE end_time IS NOT NULL")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
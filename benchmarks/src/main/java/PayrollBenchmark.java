@@ -0,0 +1,133 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+
+// Payroll engine benchmark. Seeds one pay period with the given number of finished shifts spread
+// over the employees (4 to 12 hours each, some crossing midnight, enough for daily and weekly
+// overtime) into an embedded H2 file database in MySQL mode, so the data stays off the heap. Then
+// runs the period on one thread and on the given number of threads and checks both give the same
+// results. It also interrupts a run half way and checks that the resumed run still agrees. Prints
+// throughput and the peak heap of each run; run it with a small heap to check memory stays
+// bounded, e.g.
+//
+//   java -Xmx256m -cp target/benchmarks.jar PayrollBenchmark [employees] [entries] [threads]
+//
+// Exits with status 1 when results differ.
+public class PayrollBenchmark {
+    private static final long SEED_CHUNK = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int employees = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long entries = args.length > 1 ? Long.parseLong(args[1]) : 10_000_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        System.setProperty("timesheet.schema.selfCheck", "false");
+        // Seeding holds one connection for minutes
+        System.setProperty("timesheet.pool.leakDetectionThresholdMillis", "0");
+
+        DatabaseManager dbManager = new DatabaseManager(
+                "jdbc:h2:./target/payroll-db/timesheet;MODE=MySQL;DATABASE_TO_LOWER=TRUE;OPTIMIZE_REUSE_RESULTS=FALSE", "sa", "");
+        PayPeriodArchive payPeriods = new PayPeriodArchive(dbManager);
+        LocalDate periodStart = payPeriods.periodStart(LocalDate.of(2030, 1, 7));
+        long seedStarted = System.nanoTime();
+        seed(dbManager, employees, entries, periodStart, payPeriods.periodEnd(periodStart));
+        System.out.printf("Seeded %d shifts for %d employees in %.1fs%n", entries, employees, (System.nanoTime() - seedStarted) / 1e9);
+
+        PayrollEngine.Result single = run(dbManager, payPeriods, periodStart, 1);
+        List<PayrollEngine.Line> expected = engine(dbManager, payPeriods, 1).lines(periodStart);
+        PayrollEngine.Result parallel = run(dbManager, payPeriods, periodStart, threads);
+        boolean deterministic = same(expected, engine(dbManager, payPeriods, threads).lines(periodStart));
+
+        // Interrupted about half way through, then resumed
+        PayrollEngine interrupted = engine(dbManager, payPeriods, threads);
+        Thread runner = new Thread(() -> {
+            try {
+                interrupted.run(periodStart, true);
+            } catch (InterruptedException ex) {
+                // Expected
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        });
+        runner.start();
+        Thread.sleep(Math.max(1, parallel.elapsedNanos / 2_000_000));
+        runner.interrupt();
+        runner.join();
+        PayrollEngine.Result resumed = engine(dbManager, payPeriods, threads).run(periodStart, false);
+        System.out.println("resumed:    " + resumed);
+        boolean restartable = resumed.shifts == entries && same(expected, engine(dbManager, payPeriods, threads).lines(periodStart));
+        dbManager.close();
+
+        System.out.printf("1 thread: %.0f shifts/s, %d threads: %.0f shifts/s (%.2fx)%n",
+                single.shifts * 1e9 / single.elapsedNanos, threads, parallel.shifts * 1e9 / parallel.elapsedNanos,
+                (double) single.elapsedNanos / parallel.elapsedNanos);
+        System.out.println("deterministic across thread counts: " + deterministic + ", resumed run matches: " + restartable);
+        boolean ok = deterministic && restartable && single.shifts == entries;
+        System.out.println(ok ? "OK" : "FAIL");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static PayrollEngine engine(DatabaseManager dbManager, PayPeriodArchive payPeriods, int threads) {
+        // Read by the engine's constructor
+        System.setProperty("timesheet.payroll.threads", Integer.toString(threads));
+        return new PayrollEngine(dbManager, payPeriods);
+    }
+
+    private static PayrollEngine.Result run(DatabaseManager dbManager, PayPeriodArchive payPeriods, LocalDate periodStart, int threads)
+            throws SQLException, InterruptedException {
+        PayrollEngine engine = engine(dbManager, payPeriods, threads);
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans();
+        heapPools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        PayrollEngine.Result result = engine.run(periodStart, true);
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        System.out.printf("%d thread(s): %s, peak heap %d MB of %d MB%n", threads, result, peakHeap >> 20,
+                Runtime.getRuntime().maxMemory() >> 20);
+        return result;
+    }
+
+    private static boolean same(List<PayrollEngine.Line> expected, List<PayrollEngine.Line> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            PayrollEngine.Line a = expected.get(i);
+            PayrollEngine.Line b = actual.get(i);
+            if (!a.employeeId.equals(b.employeeId) || !Objects.equals(a.department, b.department) || a.shifts != b.shifts
+                    || a.regularMinutes != b.regularMinutes || a.overtimeMinutes != b.overtimeMinutes) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Each employee's shifts are evenly spaced over the period, starting up to two hours late, so
+    // they never overlap.
+    private static void seed(DatabaseManager dbManager, int employees, long entries, LocalDate periodStart, LocalDate periodEnd)
+            throws SQLException {
+        long perEmployee = (entries + employees - 1) / employees;
+        long spacingMinutes = (periodEnd.toEpochDay() - periodStart.toEpochDay()) * 24 * 60 / perEmployee;
+        if (spacingMinutes < 14 * 60) {
+            throw new IllegalArgumentException("Too many shifts per employee for one pay period: " + perEmployee);
+        }
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+            new SchemaMigrator(dbManager).migrate();
+            stmt.execute("INSERT INTO employees (employee_id, name, department) SELECT CONCAT('emp', n), CONCAT('Employee ', n), "
+                    + "CONCAT('Department ', MOD(n, 20)) FROM SYSTEM_RANGE(1, " + employees + ") AS r(n)");
+            for (long first = 0; first < entries; first += SEED_CHUNK) {
+                long last = Math.min(entries, first + SEED_CHUNK) - 1;
+                stmt.execute("INSERT INTO timesheet (employee_id, start_time, end_time) "
+                        + "SELECT CONCAT('emp', MOD(n, " + employees + ") + 1), s, DATEADD(MINUTE, 240 + MOD(n * 13, 480), s) FROM ("
+                        + "SELECT n, DATEADD(MINUTE, (n / " + employees + ") * " + spacingMinutes + " + MOD(n * 7, 120), "
+                        + "TIMESTAMP '" + periodStart + " 00:00:00') AS s FROM SYSTEM_RANGE(" + first + ", " + last + ") AS r(n)) AS shifts");
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Multi-threaded punch stress test. Many threads clock a small set of employees in and out at
+// random through two TimesheetDataService instances with separate pools, standing in for two
+// windows, devices or servers, against one embedded H2 database in MySQL mode. Afterwards the
+// tables must agree with what the punches reported: one row per accepted clock-in, one finished
+// row per accepted clock-out, at most one open shift per employee, no shift ending before it
+// starts, and hours rollups matching the finished rows. Exits with status 1 on any violation.
+//
+//   java -cp target/benchmarks.jar PunchStressTest [threads] [employees] [seconds]
+public class PunchStressTest {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int employees = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.setProperty("timesheet.pool.maxSize", "16");
+
+        String url = "jdbc:h2:mem:punch-stress;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+        DatabaseManager first = new DatabaseManager(url, "sa", "");
+        DatabaseManager second = new DatabaseManager(url, "sa", "");
+        new SchemaMigrator(first).migrate();
+        try (Connection conn = first.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO employees (employee_id, name, department) SELECT CONCAT('emp', n), CONCAT('Employee ', n), 'Stress' "
+                    + "FROM SYSTEM_RANGE(1, " + employees + ") AS r(n)");
+        }
+        TimesheetDataService[] services = {
+                new TimesheetDataService(first, new DataAccessExecutor()),
+                new TimesheetDataService(second, new DataAccessExecutor())
+        };
+
+        // Punch times come from one counter, a second apart, so every punch has its own timestamp
+        LocalDateTime base = LocalDateTime.of(2030, 1, 1, 0, 0);
+        AtomicLong clock = new AtomicLong();
+        AtomicLongArray clockIns = new AtomicLongArray(employees);
+        AtomicLongArray clockOuts = new AtomicLongArray(employees);
+        AtomicLong punches = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int employee = random.nextInt(employees);
+                    String employeeId = "emp" + (employee + 1);
+                    TimesheetDataService service = services[random.nextInt(services.length)];
+                    LocalDateTime now = base.plusSeconds(clock.incrementAndGet());
+                    if (random.nextBoolean()) {
+                        if (service.clockIn(employeeId, now) == TimesheetDataService.PunchResult.RECORDED) {
+                            clockIns.incrementAndGet(employee);
+                        } else {
+                            refused.incrementAndGet();
+                        }
+                    } else {
+                        if (service.clockOut(employeeId, now).result == TimesheetDataService.PunchResult.RECORDED) {
+                            clockOuts.incrementAndGet(employee);
+                        } else {
+                            refused.incrementAndGet();
+                        }
+                    }
+                    punches.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+        System.out.printf("%d punches (%d refused) by %d threads on %d employees in %ds: %.0f punches/s%n",
+                punches.get(), refused.get(), threads, employees, seconds, punches.get() / (double) seconds);
+
+        List<String> violations = new ArrayList<>();
+        try (Connection conn = first.getConnection(); Statement stmt = conn.createStatement()) {
+            for (int employee = 0; employee < employees; employee++) {
+                String employeeId = "emp" + (employee + 1);
+                long ins = clockIns.get(employee);
+                long outs = clockOuts.get(employee);
+                long rows = count(stmt, "SELECT COUNT(*) FROM timesheet WHERE employee_id = '" + employeeId + "'");
+                long open = count(stmt, "SELECT COUNT(*) FROM timesheet WHERE employee_id = '" + employeeId + "' AND end_time IS NULL");
+                if (rows != ins) {
+                    violations.add(employeeId + ": " + ins + " clock-ins accepted but " + rows + " rows");
+                }
+                if (rows - open != outs) {
+                    violations.add(employeeId + ": " + outs + " clock-outs accepted but " + (rows - open) + " finished rows");
+                }
+                if (open > 1) {
+                    violations.add(employeeId + ": " + open + " open shifts");
+                }
+            }
+            long backwards = count(stmt, "SELECT COUNT(*) FROM timesheet WHERE end_time < start_time");
+            if (backwards > 0) {
+                violations.add(backwards + " shifts end before they start");
+            }
+            long duplicates = count(stmt, "SELECT COUNT(*) FROM (SELECT employee_id, start_time FROM timesheet "
+                    + "GROUP BY employee_id, start_time HAVING COUNT(*) > 1) AS d");
+            if (duplicates > 0) {
+                violations.add(duplicates + " duplicated shift starts");
+            }
+            // Summed here rather than with TIMESTAMPDIFF, which H2 computes differently from MySQL
+            long tableMinutes = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT start_time, end_time FROM timesheet WHERE end_time IS NOT NULL")) {
+                while (rs.next()) {
+                    tableMinutes += Duration.between(rs.getTimestamp(1).toLocalDateTime(), rs.getTimestamp(2).toLocalDateTime()).toMinutes();
+                }
+            }
+            long rollupMinutes = count(stmt, "SELECT COALESCE(SUM(minutes), 0) FROM hours_rollup WHERE period_type = 'D'");
+            if (tableMinutes != rollupMinutes) {
+                violations.add("hours rollup has " + rollupMinutes + " minutes, timesheet " + tableMinutes);
+            }
+        }
+        for (TimesheetDataService service : services) {
+            service.getDirectory().stop();
+            service.getHoursRollup().stop();
+        }
+        first.close();
+        second.close();
+
+        for (String violation : violations) {
+            System.out.println("FAIL " + violation);
+        }
+        System.out.println(violations.isEmpty() ? "OK" : violations.size() + " violations");
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    private static long count(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Shift change load test. Every employee arrives once within the given number of seconds, following
+// an arrival curve, logs in and, after a think time, clocks out (the leaving shift, clocked in
+// beforehand) or clocks in (the arriving one), through TimesheetDataService as the Swing client does,
+// against an embedded H2 database in MySQL mode.
+//
+// Arrivals are open loop: each session starts on schedule however far behind the system is, and
+// latency is measured from when the operation should have started, so time spent queued behind a
+// saturated system counts (coordinated omission correction). Service time, measured from when it
+// actually started, is reported next to it; a growing gap between the two marks the capacity limit.
+//
+//   java -cp target/benchmarks.jar ShiftChangeLoadTest [employees] [seconds] [constant|ramp|peak] [thinkMillis]
+//
+// peak rises to the middle of the window and falls again, like a shift change. Logins hash with
+// -Dtimesheet.auth.iterations (default 120000) and the pool is sized by -Dtimesheet.pool.maxSize, as
+// in production. Sessions run on virtual threads when the JVM has them, else on
+// -Dload.threads platform threads (default 256). Exits with status 1 when an operation failed or the
+// tables do not match the punches.
+public class ShiftChangeLoadTest {
+    private static final String PASSWORD = "password";
+    private static final String[] OPERATIONS = {"login", "clock-in", "clock-out"};
+    private static final int LOGIN = 0;
+    private static final int CLOCK_IN = 1;
+    private static final int CLOCK_OUT = 2;
+
+    // Fraction of the arrivals (0..1) due by a point in the window (0..1).
+    enum Curve {
+        CONSTANT, RAMP, PEAK;
+
+        // Position in the window of the arrival at the given fraction of all arrivals.
+        double at(double fraction) {
+            switch (this) {
+                case RAMP:
+                    // Arrival rate growing linearly from nothing
+                    return Math.sqrt(fraction);
+                case PEAK:
+                    // Triangular: rising to twice the mean rate at the middle, then falling
+                    return fraction < 0.5 ? Math.sqrt(fraction / 2) : 1 - Math.sqrt((1 - fraction) / 2);
+                default:
+                    return fraction;
+            }
+        }
+    }
+
+    private static class Session {
+        final String employeeId;
+        final boolean leaving;
+        final long arrivalNanos;
+
+        Session(String employeeId, boolean leaving, long arrivalNanos) {
+            this.employeeId = employeeId;
+            this.leaving = leaving;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    private final TimesheetDataService dataService;
+    private final ScheduledExecutorService clock;
+    private final ExecutorService workers;
+    private final long thinkNanos;
+    private final long bucketNanos;
+    private final Metrics.Histogram[] responseTimes = new Metrics.Histogram[OPERATIONS.length];
+    private final Metrics.Histogram[] serviceTimes = new Metrics.Histogram[OPERATIONS.length];
+    private final AtomicLong[] failures = new AtomicLong[OPERATIONS.length];
+    // Per timeline bucket, by intended start: operations due, and the worst response among them
+    private final AtomicLongArray due;
+    private final AtomicLongArray completed;
+    private final AtomicLongArray worstResponse;
+    private CountDownLatch finished;
+    private long startedAt;
+
+    ShiftChangeLoadTest(TimesheetDataService dataService, ExecutorService workers, long thinkNanos, long bucketNanos, int buckets) {
+        this.dataService = dataService;
+        this.workers = workers;
+        this.thinkNanos = thinkNanos;
+        this.bucketNanos = bucketNanos;
+        this.clock = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "load-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            responseTimes[i] = new Metrics.Histogram();
+            serviceTimes[i] = new Metrics.Histogram();
+            failures[i] = new AtomicLong();
+        }
+        this.due = new AtomicLongArray(buckets);
+        this.completed = new AtomicLongArray(buckets);
+        this.worstResponse = new AtomicLongArray(buckets);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int employees = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 180;
+        Curve curve = args.length > 2 ? Curve.valueOf(args[2].toUpperCase()) : Curve.PEAK;
+        long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 3_000;
+        System.setProperty("timesheet.schema.selfCheck", "false");
+        System.setProperty("timesheet.journal", "false");
+
+        String url = "jdbc:h2:mem:shift-change;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+        DatabaseManager dbManager = new DatabaseManager(url, "sa", "");
+        new SchemaMigrator(dbManager).migrate();
+        LocalDateTime leavingShiftStart = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusHours(8);
+        seed(dbManager, employees, leavingShiftStart);
+        TimesheetDataService dataService = new TimesheetDataService(dbManager, new DataAccessExecutor());
+
+        // Who comes when: a fixed shuffle, so runs are repeatable; every other arrival is leaving
+        List<String> order = new ArrayList<>();
+        for (int i = 1; i <= employees; i++) {
+            order.add("emp" + i);
+        }
+        Collections.shuffle(order, new Random(42));
+        long windowNanos = TimeUnit.SECONDS.toNanos(seconds);
+        List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i < employees; i++) {
+            long arrival = (long) (curve.at((i + 0.5) / employees) * windowNanos);
+            sessions.add(new Session(order.get(i), isLeaving(order.get(i)), arrival));
+        }
+
+        int buckets = Math.min(seconds, 20);
+        long bucketNanos = (windowNanos + thinkNanosFor(thinkMillis)) / buckets + 1;
+        ExecutorService workers = workers();
+        ShiftChangeLoadTest test = new ShiftChangeLoadTest(dataService, workers, thinkNanosFor(thinkMillis), bucketNanos, buckets);
+        System.out.printf("%d employees over %ds, %s arrivals (peak %.1f/s), %dms think time, %s%n", employees, seconds,
+                curve.name().toLowerCase(), peakRate(sessions), thinkMillis, workers.getClass().getSimpleName());
+
+        boolean drained = test.run(sessions, windowNanos + TimeUnit.MINUTES.toNanos(5));
+        test.report();
+        System.out.println();
+        System.out.print(dbManager.getMetrics().toText());
+
+        boolean consistent = check(dbManager, employees, leavingShiftStart);
+        long failed = 0;
+        for (AtomicLong failure : test.failures) {
+            failed += failure.get();
+        }
+        boolean ok = drained && consistent && failed == 0;
+        System.out.println(ok ? "OK" : "FAIL" + (drained ? "" : " (sessions still running after five minutes)"));
+        dbManager.close();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static long thinkNanosFor(long thinkMillis) {
+        return TimeUnit.MILLISECONDS.toNanos(thinkMillis);
+    }
+
+    // Odd employee numbers are on the leaving shift.
+    private static boolean isLeaving(String employeeId) {
+        return Integer.parseInt(employeeId.substring(3)) % 2 == 1;
+    }
+
+    // Virtual threads where the JVM has them (21 and later). This module builds for 17, so they are
+    // looked up at run time.
+    private static ExecutorService workers() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(Integer.getInteger("load.threads", 256), r -> {
+                Thread thread = new Thread(r, "load-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static double peakRate(List<Session> sessions) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        int peak = 0;
+        for (int first = 0, last = 0; last < sessions.size(); last++) {
+            while (sessions.get(last).arrivalNanos - sessions.get(first).arrivalNanos >= second) {
+                first++;
+            }
+            peak = Math.max(peak, last - first + 1);
+        }
+        return peak;
+    }
+
+    // Returns whether every session finished before the deadline.
+    boolean run(List<Session> sessions, long timeoutNanos) throws InterruptedException {
+        finished = new CountDownLatch(sessions.size());
+        startedAt = System.nanoTime();
+        for (Session session : sessions) {
+            clock.schedule(() -> workers.execute(() -> login(session)), session.arrivalNanos, TimeUnit.NANOSECONDS);
+        }
+        boolean drained = finished.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        clock.shutdownNow();
+        workers.shutdownNow();
+        return drained;
+    }
+
+    private void login(Session session) {
+        long intended = startedAt + session.arrivalNanos;
+        long started = System.nanoTime();
+        String role = null;
+        try {
+            role = dataService.authenticate(session.employeeId, PASSWORD);
+        } catch (SQLException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
+        long done = record(LOGIN, intended, started, role != null);
+        if (role == null) {
+            finished.countDown();
+            return;
+        }
+        // The user clicks once the form has answered and they have had time to react
+        long punchAt = done + thinkNanos;
+        clock.schedule(() -> workers.execute(() -> punch(session, punchAt)), thinkNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void punch(Session session, long intended) {
+        int operation = session.leaving ? CLOCK_OUT : CLOCK_IN;
+        long started = System.nanoTime();
+        boolean recorded = false;
+        try {
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            recorded = session.leaving
+                    ? dataService.clockOut(session.employeeId, now).result == TimesheetDataService.PunchResult.RECORDED
+                    : dataService.clockIn(session.employeeId, now) == TimesheetDataService.PunchResult.RECORDED;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        record(operation, intended, started, recorded);
+        finished.countDown();
+    }
+
+    private long record(int operation, long intended, long started, boolean ok) {
+        long done = System.nanoTime();
+        responseTimes[operation].record(done - intended);
+        serviceTimes[operation].record(done - started);
+        if (!ok) {
+            failures[operation].incrementAndGet();
+        }
+        int bucket = (int) Math.min(due.length() - 1, (intended - startedAt) / bucketNanos);
+        due.incrementAndGet(bucket);
+        completed.incrementAndGet((int) Math.min(completed.length() - 1, Math.max(0, done - startedAt) / bucketNanos));
+        long worst = worstResponse.get(bucket);
+        while (done - intended > worst && !worstResponse.compareAndSet(bucket, worst, done - intended)) {
+            worst = worstResponse.get(bucket);
+        }
+        return done;
+    }
+
+    private void report() {
+        long elapsed = System.nanoTime() - startedAt;
+        System.out.printf("%nResponse time from the intended start (corrected for coordinated omission), service time from the actual start:%n");
+        System.out.printf("%-10s %7s %6s %8s %9s %9s %9s %9s %9s | %9s %9s%n", "operation", "count", "failed", "ops/s",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p50", "svc p99");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            Metrics.Histogram response = responseTimes[i];
+            Metrics.Histogram service = serviceTimes[i];
+            System.out.printf("%-10s %7d %6d %8.1f %9.1f %9.1f %9.1f %9.1f %9.1f | %9.1f %9.1f%n", OPERATIONS[i], response.count(),
+                    failures[i].get(), response.count() * 1e9 / elapsed, response.percentile(0.5) / 1e6, response.percentile(0.9) / 1e6,
+                    response.percentile(0.99) / 1e6, response.percentile(0.999) / 1e6, response.max() / 1e6,
+                    service.percentile(0.5) / 1e6, service.percentile(0.99) / 1e6);
+        }
+        System.out.printf("%nTimeline (operations by intended start, completions by finish time):%n");
+        System.out.printf("%8s %10s %12s %12s%n", "from s", "due/s", "completed/s", "worst ms");
+        double bucketSeconds = bucketNanos / 1e9;
+        for (int i = 0; i < due.length(); i++) {
+            System.out.printf("%8.1f %10.1f %12.1f %12.1f%n", i * bucketSeconds, due.get(i) / bucketSeconds,
+                    completed.get(i) / bucketSeconds, worstResponse.get(i) / 1e6);
+        }
+    }
+
+    // Employees with a user each; the leaving shift clocked in eight hours ago.
+    private static void seed(DatabaseManager dbManager, int employees, LocalDateTime leavingShiftStart) throws SQLException {
+        // Same iteration count as the service verifies with, so no login rehashes
+        String hash = new PasswordHasher().hash(PASSWORD);
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO employees (employee_id, name, department) SELECT CONCAT('emp', n), CONCAT('Employee ', n), "
+                    + "CONCAT('Department ', MOD(n, 20)) FROM SYSTEM_RANGE(1, " + employees + ") AS r(n)");
+            stmt.execute("INSERT INTO users (username, password, role) SELECT CONCAT('emp', n), '" + hash + "', 'Employee' "
+                    + "FROM SYSTEM_RANGE(1, " + employees + ") AS r(n)");
+            stmt.execute("INSERT INTO timesheet (employee_id, start_time, end_time) SELECT CONCAT('emp', n), TIMESTAMP '"
+                    + Timestamp.valueOf(leavingShiftStart) + "', NULL FROM SYSTEM_RANGE(1, " + employees + ") AS r(n) WHERE MOD(n, 2) = 1");
+        }
+    }
+
+    // Every leaving employee has exactly one finished shift and nothing open, every arriving one
+    // exactly one open shift.
+    private static boolean check(DatabaseManager dbManager, int employees, LocalDateTime leavingShiftStart) throws SQLException {
+        long leaving = (employees + 1) / 2;
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT "
+                     + "COUNT(CASE WHEN end_time IS NOT NULL AND start_time = TIMESTAMP '" + Timestamp.valueOf(leavingShiftStart) + "' THEN 1 END), "
+                     + "COUNT(CASE WHEN end_time IS NULL AND start_time > TIMESTAMP '" + Timestamp.valueOf(leavingShiftStart) + "' THEN 1 END), "
+                     + "COUNT(*) FROM timesheet")) {
+            rs.next();
+            boolean consistent = rs.getLong(1) == leaving && rs.getLong(2) == employees - leaving && rs.getLong(3) == employees;
+            System.out.printf("Shifts closed %d of %d, opened %d of %d, rows %d: %s%n", rs.getLong(1), leaving, rs.getLong(2),
+                    employees - leaving, rs.getLong(3), consistent ? "consistent" : "INCONSISTENT");
+            return consistent;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import timesheet.bench.Workload;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Benchmark fixture: an embedded H2 database in MySQL mode with the application's schema, seeded
+// with generated employees, users and finished shifts, and a TimesheetDataService on top of it.
+// Lives in the default package so it can reach the application classes.
+public class TimesheetWorkload implements Workload {
+    static final String PASSWORD = "password";
+    private static final long SEED_CHUNK = 1_000_000;
+    private static final int DEPARTMENTS = 20;
+
+    private final int employees;
+    private final DatabaseManager dbManager;
+    private final TimesheetDataService dataService;
+    // Punches go after the seeded history, one minute apart, so they never collide.
+    private final AtomicLong punchMinute = new AtomicLong();
+    private final LocalDateTime punchBase;
+    private final Set<String> punching = ConcurrentHashMap.newKeySet();
+
+    public TimesheetWorkload(Properties config) throws SQLException, InterruptedException {
+        this.employees = Integer.parseInt(config.getProperty("employees", "1000"));
+        long entries = Long.parseLong(config.getProperty("entries", "100000"));
+        String reportSource = config.getProperty("reportSource", "sql");
+        int hashIterations = Integer.parseInt(config.getProperty("hashIterations", "120000"));
+
+        // Read by the service's constructor
+        System.setProperty("timesheet.auth.iterations", Integer.toString(hashIterations));
+        System.setProperty("timesheet.columnarReports", Boolean.toString(reportSource.equals("columnar")));
+
+        // H2 would otherwise hand back the previous result of an identical query over unchanged tables
+        String url = config.getProperty("database", "mem").equals("file")
+                ? "jdbc:h2:./target/bench-db/timesheet;MODE=MySQL;DATABASE_TO_LOWER=TRUE;OPTIMIZE_REUSE_RESULTS=FALSE"
+                : "jdbc:h2:mem:bench" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;OPTIMIZE_REUSE_RESULTS=FALSE;DB_CLOSE_DELAY=-1";
+        this.dbManager = new DatabaseManager(url, "sa", "");
+        long days = seed(entries, new PasswordHasher(hashIterations).hash(PASSWORD));
+        this.punchBase = LocalDateTime.of(2020, 1, 1, 0, 0).plusDays(days + 1);
+
+        this.dataService = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        if (reportSource.equals("rollup")) {
+            awaitRollup();
+        } else if (!reportSource.equals("sql") && !reportSource.equals("columnar")) {
+            throw new IllegalArgumentException("Unknown report source: " + reportSource);
+        }
+        dataService.generateReport();
+    }
+
+    @Override
+    public Object login() throws SQLException {
+        String role = dataService.authenticate(randomEmployee(), PASSWORD);
+        if (role == null) {
+            throw new IllegalStateException("Seeded login failed");
+        }
+        return role;
+    }
+
+    @Override
+    public Object punch() throws SQLException, IOException {
+        LocalDateTime start = punchBase.plusMinutes(punchMinute.getAndIncrement());
+        String employeeId = randomEmployee();
+        // Two threads on one employee would turn each other's punches into no-ops
+        while (!punching.add(employeeId)) {
+            employeeId = randomEmployee();
+        }
+        try {
+            if (dataService.clockIn(employeeId, start) != TimesheetDataService.PunchResult.RECORDED) {
+                throw new IllegalStateException("Clock-in of " + employeeId + " was not recorded");
+            }
+            TimesheetDataService.ClockOut out = dataService.clockOut(employeeId, start.plusHours(8));
+            if (out.result != TimesheetDataService.PunchResult.RECORDED) {
+                throw new IllegalStateException("Clock-out of " + employeeId + " was not recorded");
+            }
+            return out.shift;
+        } finally {
+            punching.remove(employeeId);
+        }
+    }
+
+    @Override
+    public Object loadTimesheet() throws SQLException {
+        return dataService.loadTimesheet(randomEmployee());
+    }
+
+    @Override
+    public Object generateReport() throws SQLException {
+        return dataService.generateReport();
+    }
+
+    @Override
+    public void close() {
+        dataService.getHoursRollup().stop();
+        dbManager.close();
+    }
+
+    private String randomEmployee() {
+        return "emp" + (ThreadLocalRandom.current().nextInt(employees) + 1);
+    }
+
+    // Spreads the entries evenly over the employees, one shift per employee per day starting at
+    // 2020-01-01, in chunks so a large seed does not run as a single transaction. Returns the
+    // number of days the history covers.
+    private long seed(long entries, String passwordHash) throws SQLException {
+        try (Connection conn = dbManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+            new SchemaMigrator(dbManager).migrate();
+            stmt.execute("INSERT INTO employees (employee_id, name, department) SELECT CONCAT('emp', n), CONCAT('Employee ', n), "
+                    + "CONCAT('Department ', MOD(n, " + DEPARTMENTS + ")) FROM SYSTEM_RANGE(1, " + employees + ") AS r(n)");
+            stmt.execute("INSERT INTO users (username, password, role) SELECT CONCAT('emp', n), '" + passwordHash + "', 'Employee' "
+                    + "FROM SYSTEM_RANGE(1, " + employees + ") AS r(n)");
+            for (long first = 0; first < entries; first += SEED_CHUNK) {
+                long last = Math.min(entries, first + SEED_CHUNK) - 1;
+                stmt.execute("INSERT INTO timesheet (employee_id, start_time, end_time) "
+                        + "SELECT CONCAT('emp', MOD(n, " + employees + ") + 1), s, DATEADD(MINUTE, 240 + MOD(n * 13, 300), s) FROM ("
+                        + "SELECT n, DATEADD(MINUTE, 480 + MOD(n * 7, 120), DATEADD(DAY, n / " + employees + ", TIMESTAMP '2020-01-01 00:00:00')) AS s "
+                        + "FROM SYSTEM_RANGE(" + first + ", " + last + ") AS r(n)) AS shifts");
+            }
+        }
+        return (entries + employees - 1) / employees;
+    }
+
+    private void awaitRollup() throws InterruptedException {
+        dataService.getHoursRollup().start();
+        long deadline = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+        while (!dataService.getHoursRollup().isReady()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Hours rollup backfill did not finish");
+            }
+            Thread.sleep(100);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package timesheet.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and sampled latency (for p99) of the main data paths against an embedded H2 database
+// in MySQL mode. Data sizes are parameters, e.g. -p employees=1000000 -p entries=100000000; large
+// sizes want -p database=file and a bigger heap (-jvmArgsAppend -Xmx16g).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Dtimesheet.journal=false"})
+@Threads(4)
+public class TimesheetBenchmarks {
+
+    @Param("1000")
+    public int employees;
+
+    @Param("100000")
+    public long entries;
+
+    // sql, rollup or columnar: which path generateReport takes
+    @Param("sql")
+    public String reportSource;
+
+    // mem, or file for data sets that do not fit in the heap
+    @Param("mem")
+    public String database;
+
+    // PBKDF2 cost of the seeded password hashes
+    @Param("120000")
+    public int hashIterations;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Properties config = new Properties();
+        config.setProperty("employees", Integer.toString(employees));
+        config.setProperty("entries", Long.toString(entries));
+        config.setProperty("reportSource", reportSource);
+        config.setProperty("database", database);
+        config.setProperty("hashIterations", Integer.toString(hashIterations));
+        workload = (Workload) Class.forName("TimesheetWorkload")
+                .getConstructor(Properties.class)
+                .newInstance(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    @Benchmark
+    public Object login() throws Exception {
+        return workload.login();
+    }
+
+    @Benchmark
+    public Object punchInsert() throws Exception {
+        return workload.punch();
+    }
+
+    @Benchmark
+    public Object loadTimesheet() throws Exception {
+        return workload.loadTimesheet();
+    }
+
+    @Benchmark
+    public Object generateReport() throws Exception {
+        return workload.generateReport();
+    }
+}
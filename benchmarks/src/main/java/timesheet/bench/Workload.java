@@ -0,0 +1,20 @@
+package timesheet.bench;
+
+// The operations being measured. The application classes live in the default package, which code
+// in a named package cannot refer to, so the implementation (TimesheetWorkload, in the default
+// package) is loaded by name and driven through this interface. Each call returns its result so
+// JMH can consume it.
+public interface Workload extends AutoCloseable {
+
+    // Username/password login of a random seeded employee.
+    Object login() throws Exception;
+
+    // A clock-in and clock-out of a random employee, as the punch screen does them.
+    Object punch() throws Exception;
+
+    // All entries of a random employee.
+    Object loadTimesheet() throws Exception;
+
+    // Hours per employee over the whole history.
+    Object generateReport() throws Exception;
+}
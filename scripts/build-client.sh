@@ -0,0 +1,26 @@
+#!/bin/sh
+# Builds the desktop client into build/client: timesheet-client.jar with the MySQL driver next to
+# it, and timesheet-client.jsa, a class data sharing archive of the classes a launch up to the login
+# form loads, which run-client.sh maps in instead of loading and verifying them again.
+#
+#   MYSQL_JAR=/path/to/mysql-connector-j.jar scripts/build-client.sh
+#
+# The training run opens the login form, so it needs a display (xvfb-run on a headless build
+# machine); it waits for the database warm-up but works without a database. Rebuild the archive
+# with the jar: a JVM of another version or a changed jar ignores it and starts without it.
+set -e
+: "${MYSQL_JAR:?Set MYSQL_JAR to the MySQL Connector/J jar}"
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+OUT="$ROOT/build/client"
+
+rm -rf "$OUT"
+mkdir -p "$OUT/classes" "$OUT/lib"
+javac --release 17 -d "$OUT/classes" "$ROOT"/src/*.java
+cp "$MYSQL_JAR" "$OUT/lib/mysql-connector-j.jar"
+printf 'Class-Path: lib/mysql-connector-j.jar\n' > "$OUT/manifest.txt"
+jar --create --file "$OUT/timesheet-client.jar" --manifest "$OUT/manifest.txt" --main-class EmployeeTimesheetApp -C "$OUT/classes" .
+rm -rf "$OUT/classes" "$OUT/manifest.txt"
+
+java -XX:ArchiveClassesAtExit="$OUT/timesheet-client.jsa" -Dtimesheet.startup.exitWhenReady=true \
+    -Dtimesheet.journal=false -jar "$OUT/timesheet-client.jar"
+echo "Built $OUT/timesheet-client.jar and $OUT/timesheet-client.jsa"
@@ -0,0 +1,7 @@
+#!/bin/sh
+# Starts the desktop client built by build-client.sh with its class data sharing archive. The
+# serial collector keeps the footprint down; the client never has a large heap. Extra arguments
+# go to the JVM, e.g. -Dtimesheet.startup.report=true to print time to the login form and
+# resident memory.
+OUT=$(cd "$(dirname "$0")/.." && pwd)/build/client
+exec java -XX:SharedArchiveFile="$OUT/timesheet-client.jsa" -XX:+UseSerialGC "$@" -jar "$OUT/timesheet-client.jar"
@@ -0,0 +1,240 @@
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Logins without a database round trip in the common case: user records (password hash, role and
+// whether the employee row exists) are cached for a short TTL and passwords are verified in-process.
+// Plaintext passwords left by older versions are replaced with a hash on the next successful login.
+// Session tokens let API clients skip the password check entirely until they expire.
+class AuthService {
+
+    static class Session {
+        final String token;
+        final String username;
+        final String role;
+        final long expiresAt;
+
+        Session(String token, String username, String role, long expiresAt) {
+            this.token = token;
+            this.username = username;
+            this.role = role;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isManager() {
+            return role.equalsIgnoreCase("manager");
+        }
+    }
+
+    static class Stats {
+        final long cacheHits;
+        final long cacheMisses;
+        final int cachedUsers;
+        final int activeSessions;
+        final long hashes;
+        final double averageHashMillis;
+
+        Stats(long cacheHits, long cacheMisses, int cachedUsers, int activeSessions, long hashes, double averageHashMillis) {
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.cachedUsers = cachedUsers;
+            this.activeSessions = activeSessions;
+            this.hashes = hashes;
+            this.averageHashMillis = averageHashMillis;
+        }
+
+        double hitRate() {
+            long lookups = cacheHits + cacheMisses;
+            return lookups == 0 ? 0 : (double) cacheHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hitRate=%.1f%% hits=%d misses=%d cached=%d sessions=%d hashes=%d avgHash=%.1fms",
+                    hitRate() * 100, cacheHits, cacheMisses, cachedUsers, activeSessions, hashes, averageHashMillis);
+        }
+    }
+
+    @FunctionalInterface
+    interface EmployeeCreator {
+        void create(String employeeId) throws SQLException;
+    }
+
+    private static class CachedUser {
+        final String passwordHash;
+        final String role;
+        final boolean employeeExists;
+        final long loadedAt;
+
+        CachedUser(String passwordHash, String role, boolean employeeExists, long loadedAt) {
+            this.passwordHash = passwordHash;
+            this.role = role;
+            this.employeeExists = employeeExists;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final UserDao userDao;
+    private final PasswordHasher hasher;
+    private final long cacheTtlNanos = TimeUnit.SECONDS.toNanos(Long.getLong("timesheet.auth.cacheTtlSeconds", 300));
+    private final long sessionTtlMillis = TimeUnit.MINUTES.toMillis(Long.getLong("timesheet.auth.sessionMinutes", 720));
+    private final Map<String, CachedUser> users;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicInteger sessionsCreated = new AtomicInteger();
+
+    AuthService(DatabaseManager dbManager, UserDao userDao, PasswordHasher hasher) {
+        this.dbManager = dbManager;
+        this.userDao = userDao;
+        this.hasher = hasher;
+        int maxCachedUsers = Integer.getInteger("timesheet.auth.cacheSize", 10_000);
+        // Access-ordered, so the user who logged in longest ago is dropped first.
+        this.users = new LinkedHashMap<String, CachedUser>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                return size() > maxCachedUsers;
+            }
+        };
+    }
+
+    PasswordHasher getHasher() {
+        return hasher;
+    }
+
+    // Returns the role, or null when the credentials do not match. onMissingEmployee runs for an
+    // employee login whose employees row does not exist yet.
+    String authenticate(String username, String password, EmployeeCreator onMissingEmployee) throws SQLException {
+        CachedUser user = cached(username);
+        boolean fromCache = user != null;
+        if (!fromCache) {
+            user = load(username);
+            if (user == null) {
+                return null;
+            }
+        }
+        if (!hasher.verify(password, user.passwordHash)) {
+            // The password may have changed in another process or on another server since it was cached
+            if (!fromCache) {
+                return null;
+            }
+            user = load(username);
+            if (user == null || !hasher.verify(password, user.passwordHash)) {
+                return null;
+            }
+        }
+        if (hasher.needsRehash(user.passwordHash)) {
+            user = upgradeHash(username, password, user);
+        }
+        if (user.role.equalsIgnoreCase("employee") && !user.employeeExists) {
+            onMissingEmployee.create(username);
+            put(username, new CachedUser(user.passwordHash, user.role, true, user.loadedAt));
+        }
+        return user.role;
+    }
+
+    Session createSession(String username, String role) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), username, role,
+                System.currentTimeMillis() + sessionTtlMillis);
+        sessions.put(session.token, session);
+        if (sessionsCreated.incrementAndGet() % 1024 == 0) {
+            sessions.values().removeIf(expired -> expired.expiresAt < System.currentTimeMillis());
+        }
+        return session;
+    }
+
+    // Null for unknown or expired tokens.
+    Session resolveSession(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAt < System.currentTimeMillis()) {
+            sessions.remove(token, session);
+            return null;
+        }
+        return session;
+    }
+
+    void endSession(String token) {
+        sessions.remove(token);
+    }
+
+    // Called after anything that changes a user's password, role or employee row. Their sessions end
+    // too, since they carry the old role and outlive any cache entry. Only reaches this process.
+    void invalidate(String username) {
+        synchronized (users) {
+            users.remove(username);
+        }
+        sessions.values().removeIf(session -> session.username.equals(username));
+    }
+
+    Stats getStats() {
+        int cachedUsers;
+        synchronized (users) {
+            cachedUsers = users.size();
+        }
+        return new Stats(hits.get(), misses.get(), cachedUsers, sessions.size(), hasher.getHashCount(), hasher.averageHashMillis());
+    }
+
+    private CachedUser cached(String username) {
+        CachedUser user;
+        synchronized (users) {
+            user = users.get(username);
+            if (user != null && System.nanoTime() - user.loadedAt > cacheTtlNanos) {
+                users.remove(username);
+                user = null;
+            }
+        }
+        (user == null ? misses : hits).incrementAndGet();
+        return user;
+    }
+
+    // One query for the user and their employee row, instead of one each.
+    private CachedUser load(String username) throws SQLException {
+        UserDao.Credentials credentials;
+        try (Connection conn = dbManager.getConnection()) {
+            credentials = userDao.findCredentials(conn, username);
+        }
+        if (credentials == null) {
+            return null;
+        }
+        CachedUser user = new CachedUser(credentials.passwordHash, credentials.role, credentials.employeeExists, System.nanoTime());
+        put(username, user);
+        return user;
+    }
+
+    // Swaps the stored password for a current-strength hash. If the column cannot hold it (an old
+    // schema with a short password column) the login still succeeds with the old value.
+    private CachedUser upgradeHash(String username, String password, CachedUser user) {
+        String hash = hasher.hash(password);
+        try (Connection conn = dbManager.getConnection()) {
+            if (userDao.replacePassword(conn, username, user.passwordHash, hash)) {
+                CachedUser upgraded = new CachedUser(hash, user.role, user.employeeExists, user.loadedAt);
+                put(username, upgraded);
+                return upgraded;
+            }
+            invalidate(username);
+        } catch (SQLException ex) {
+            System.err.println("Could not upgrade the password hash of " + username + ": " + ex.getMessage());
+        }
+        return user;
+    }
+
+    private void put(String username, CachedUser user) {
+        synchronized (users) {
+            users.put(username, user);
+        }
+    }
+}
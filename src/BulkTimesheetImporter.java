@@ -0,0 +1,427 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+// Loads finished shifts from a CSV or JSON Lines file (for example a badge system export) in
+// chunked transactions of multi-row INSERTs. Each chunk is recorded in import_chunk_log under a
+// digest of its rows in the same transaction, so re-running an import after a failure skips the
+// chunks that already committed instead of inserting them twice.
+class BulkTimesheetImporter {
+    enum Format { CSV, JSONL }
+
+    static class Result {
+        long rowsRead;
+        long rowsImported;
+        long rowsSkipped;
+        long rowsRejected;
+        int chunksImported;
+        int chunksSkipped;
+        long elapsedNanos;
+        final List<String> errors = new ArrayList<>();
+
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsImported * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("read=%d imported=%d skipped=%d (already imported) rejected=%d, chunks %d imported/%d skipped, %.1fs, %.0f rows/s",
+                    rowsRead, rowsImported, rowsSkipped, rowsRejected, chunksImported, chunksSkipped,
+                    elapsedNanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final DatabaseManager dbManager;
+    private final ChangeFeed changeFeed;
+    private final HoursRollup hoursRollup;
+    private final ColumnarTimesheetStore columnarStore;
+    private final int chunkSize = Integer.getInteger("timesheet.import.chunkSize", 5000);
+    private final int rowsPerStatement = Integer.getInteger("timesheet.import.rowsPerStatement", 500);
+    private final int maxAttempts = Integer.getInteger("timesheet.import.attempts", 3);
+
+    // columnarStore may be null.
+    BulkTimesheetImporter(DatabaseManager dbManager, ChangeFeed changeFeed, HoursRollup hoursRollup,
+                          ColumnarTimesheetStore columnarStore) {
+        this.dbManager = dbManager;
+        this.changeFeed = changeFeed;
+        this.hoursRollup = hoursRollup;
+        this.columnarStore = columnarStore;
+    }
+
+    static Format formatOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? Format.JSONL : Format.CSV;
+    }
+
+    // Rows need employee_id, start_time and end_time ("yyyy-MM-dd HH:mm:ss" or ISO); other columns,
+    // such as those written by ReportExporter, are ignored. progress receives the rows read so far
+    // after every chunk.
+    Result importFile(Path file, LongConsumer progress) throws SQLException, IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, formatOf(file), file.getFileName().toString(), progress);
+        }
+    }
+
+    Result importFrom(BufferedReader reader, Format format, String source, LongConsumer progress) throws SQLException, IOException {
+        Result result = new Result();
+        long started = System.nanoTime();
+        Set<String> employeeIds = loadEmployeeIds();
+        RecordReader records = format == Format.CSV ? new CsvRecordReader(reader) : new JsonlRecordReader(reader);
+
+        List<TimesheetEntry> chunk = new ArrayList<>(chunkSize);
+        int chunkNumber = 0;
+        String[] record;
+        while ((record = records.next()) != null) {
+            result.rowsRead++;
+            TimesheetEntry entry = parse(record, employeeIds, records.recordNumber(), result);
+            if (entry != null) {
+                chunk.add(entry);
+            }
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, source, ++chunkNumber, result);
+                chunk.clear();
+                progress.accept(result.rowsRead);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, source, ++chunkNumber, result);
+        }
+        progress.accept(result.rowsRead);
+        result.elapsedNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    private TimesheetEntry parse(String[] record, Set<String> employeeIds, long recordNumber, Result result) {
+        String employeeId = record[0];
+        String problem = null;
+        LocalDateTime start = null;
+        LocalDateTime end = null;
+        if (employeeId == null || employeeId.isEmpty()) {
+            problem = "missing employee_id";
+        } else if (!employeeIds.contains(employeeId)) {
+            problem = "unknown employee " + employeeId;
+        } else if (record[1] == null || record[2] == null) {
+            problem = "missing start_time or end_time";
+        } else {
+            try {
+                start = parseTime(record[1]);
+                end = parseTime(record[2]);
+                if (end.isBefore(start)) {
+                    problem = "end_time before start_time";
+                }
+            } catch (DateTimeParseException ex) {
+                problem = "bad timestamp: " + ex.getParsedString();
+            }
+        }
+        if (problem != null) {
+            result.rowsRejected++;
+            if (result.errors.size() < MAX_REPORTED_ERRORS) {
+                result.errors.add("record " + recordNumber + ": " + problem);
+            }
+            return null;
+        }
+        return new TimesheetEntry(employeeId, start, end, Duration.between(start, end).toMinutes() / 60.0);
+    }
+
+    // Retries a chunk a few times before giving up; whatever committed stays committed, and a
+    // rerun of the same file picks up from the first chunk missing from the ledger.
+    private void importChunk(List<TimesheetEntry> chunk, String source, int chunkNumber, Result result) throws SQLException {
+        String chunkId = digest(chunk);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (writeChunk(chunk, chunkId, source, chunkNumber)) {
+                    result.chunksImported++;
+                    result.rowsImported += chunk.size();
+                    if (columnarStore != null) {
+                        for (TimesheetEntry entry : chunk) {
+                            columnarStore.append(entry.getEmployeeId(), entry.getStartTime(), entry.getEndTime());
+                        }
+                    }
+                } else {
+                    result.chunksSkipped++;
+                    result.rowsSkipped += chunk.size();
+                }
+                return;
+            } catch (SQLException ex) {
+                if (attempt >= maxAttempts) {
+                    throw new SQLException("Chunk " + chunkNumber + " of " + source + " failed after " + attempt
+                            + " attempts; rerun the import to continue from it", ex.getSQLState(), ex);
+                }
+                try {
+                    Thread.sleep(200L * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    // Returns false when the ledger shows this chunk was already imported.
+    private boolean writeChunk(List<TimesheetEntry> chunk, String chunkId, String source, int chunkNumber) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            // Claim the chunk first: a concurrent import of the same rows blocks on this key and
+            // then fails the duplicate check instead of inserting them a second time.
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO import_chunk_log (chunk_id, source, chunk_number, row_count) VALUES (?, ?, ?, ?)")) {
+                stmt.setString(1, chunkId);
+                stmt.setString(2, source.length() > 255 ? source.substring(0, 255) : source);
+                stmt.setInt(3, chunkNumber);
+                stmt.setInt(4, chunk.size());
+                stmt.executeUpdate();
+            } catch (SQLException ex) {
+                if (ex.getSQLState() != null && ex.getSQLState().startsWith("23")) {
+                    return false;
+                }
+                throw ex;
+            }
+
+            int fullStatements = chunk.size() / rowsPerStatement;
+            if (fullStatements > 0) {
+                try (PreparedStatement stmt = conn.prepareStatement(insertSql(rowsPerStatement))) {
+                    for (int i = 0; i < fullStatements; i++) {
+                        bindRows(stmt, chunk, i * rowsPerStatement, rowsPerStatement);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            int remaining = chunk.size() - fullStatements * rowsPerStatement;
+            if (remaining > 0) {
+                try (PreparedStatement stmt = conn.prepareStatement(insertSql(remaining))) {
+                    bindRows(stmt, chunk, fullStatements * rowsPerStatement, remaining);
+                    stmt.executeUpdate();
+                }
+            }
+
+            hoursRollup.addAll(conn, chunk);
+            List<String> keys = new ArrayList<>(chunk.size());
+            for (TimesheetEntry entry : chunk) {
+                keys.add(TimesheetDataService.timesheetKey(entry.getEmployeeId(), entry.getStartTime()));
+            }
+            changeFeed.recordAll(conn, "timesheet", keys, ChangeFeed.INSERT);
+            conn.commit();
+            return true;
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO timesheet (employee_id, start_time, end_time) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    private static void bindRows(PreparedStatement stmt, List<TimesheetEntry> chunk, int from, int count) throws SQLException {
+        int parameter = 1;
+        for (int i = from; i < from + count; i++) {
+            TimesheetEntry entry = chunk.get(i);
+            stmt.setString(parameter++, entry.getEmployeeId());
+            stmt.setTimestamp(parameter++, Timestamp.valueOf(entry.getStartTime()));
+            stmt.setTimestamp(parameter++, Timestamp.valueOf(entry.getEndTime()));
+        }
+    }
+
+    private Set<String> loadEmployeeIds() throws SQLException {
+        Set<String> ids = new HashSet<>();
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT employee_id FROM employees")) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    // Identifies a chunk by its content, so the same rows map to the same ledger entry on a rerun.
+    private static String digest(List<TimesheetEntry> chunk) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (TimesheetEntry entry : chunk) {
+            String row = entry.getEmployeeId() + "|" + entry.getStartTime() + "|" + entry.getEndTime() + "\n";
+            sha256.update(row.getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : sha256.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        return LocalDateTime.parse(value.trim().replace(' ', 'T'));
+    }
+
+    // Yields {employee_id, start_time, end_time} per record; missing fields are null.
+    private interface RecordReader {
+        String[] next() throws IOException;
+
+        long recordNumber();
+    }
+
+    private static class CsvRecordReader implements RecordReader {
+        private final BufferedReader reader;
+        private int employeeColumn = -1;
+        private int startColumn = -1;
+        private int endColumn = -1;
+        private long recordNumber;
+
+        CsvRecordReader(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            List<String> header = readRecord();
+            if (header == null) {
+                return;
+            }
+            for (int i = 0; i < header.size(); i++) {
+                switch (header.get(i).trim().toLowerCase()) {
+                    case "employee_id": employeeColumn = i; break;
+                    case "start_time": startColumn = i; break;
+                    case "end_time": endColumn = i; break;
+                    default: break;
+                }
+            }
+            if (employeeColumn < 0 || startColumn < 0 || endColumn < 0) {
+                throw new IOException("CSV header must name employee_id, start_time and end_time columns");
+            }
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            List<String> fields;
+            do {
+                fields = readRecord();
+                if (fields == null) {
+                    return null;
+                }
+                recordNumber++;
+            } while (fields.size() == 1 && fields.get(0).isEmpty());
+            return new String[]{field(fields, employeeColumn), field(fields, startColumn), field(fields, endColumn)};
+        }
+
+        @Override
+        public long recordNumber() {
+            return recordNumber;
+        }
+
+        private static String field(List<String> fields, int column) {
+            if (column >= fields.size() || fields.get(column).isEmpty()) {
+                return null;
+            }
+            return fields.get(column);
+        }
+
+        // RFC 4180: quoted fields may contain commas, doubled quotes and line breaks.
+        private List<String> readRecord() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    line = reader.readLine();
+                    if (line == null) {
+                        throw new IOException("Unterminated quoted field in CSV record " + (recordNumber + 1));
+                    }
+                    field.append('\n');
+                    i = 0;
+                    continue;
+                }
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private static class JsonlRecordReader implements RecordReader {
+        private final BufferedReader reader;
+        private long recordNumber;
+
+        JsonlRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                recordNumber++;
+            } while (line.isBlank());
+            Map<String, Object> object;
+            try {
+                object = Json.parseObject(line);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid JSON on line " + recordNumber + ": " + ex.getMessage(), ex);
+            }
+            return new String[]{string(object.get("employee_id")), string(object.get("start_time")), string(object.get("end_time"))};
+        }
+
+        @Override
+        public long recordNumber() {
+            return recordNumber;
+        }
+
+        private static String string(Object value) {
+            return value == null ? null : value.toString();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Optional outbox of row changes. Writers append to change_log in the same transaction as the
+// change itself; open dashboards poll for entries newer than the last one they saw and reload
+// just those rows. Enable with -Dtimesheet.changeFeed=true.
+//
+// Change ids are handed out when the entry is inserted but become visible when its transaction
+// commits, so an id below one already read can still turn up. A Cursor therefore keeps re-reading
+// the ids between its settled floor and the newest change it has delivered, skipping those it has
+// seen. An id is given up on once the newest change is -Dtimesheet.changeFeed.settleSeconds
+// (default 60) younger than a delivered change above it: a transaction still holding it after that
+// long has rolled back. Once started, the feed deletes entries older than
+// -Dtimesheet.changeFeed.retentionHours (default 24) every hour.
+class ChangeFeed {
+    static final String INSERT = "I";
+    static final String UPDATE = "U";
+    static final String DELETE = "D";
+
+    static class Change {
+        final long changeId;
+        final String tableName;
+        final String rowKey;
+        final String operation;
+
+        Change(long changeId, String tableName, String rowKey, String operation) {
+            this.changeId = changeId;
+            this.tableName = tableName;
+            this.rowKey = rowKey;
+            this.operation = operation;
+        }
+    }
+
+    // Net effect of a batch of changes: rows to insert or refresh, and keys that no longer exist.
+    static class Delta<R> {
+        final List<R> upserts = new ArrayList<>();
+        final List<String> removedKeys = new ArrayList<>();
+    }
+
+    // One consumer's position in one table's changes. Not for sharing between consumers.
+    static class Cursor {
+        final String tableName;
+        // Every id at or below this has been delivered or given up on
+        private long floor;
+        private long newest;
+        private Timestamp newestAt;
+        // Delivered ids above floor -> changed_at
+        private final TreeMap<Long, Timestamp> delivered = new TreeMap<>();
+
+        Cursor(String tableName, long floor, long newest, Timestamp newestAt) {
+            this.tableName = tableName;
+            this.floor = floor;
+            this.newest = newest;
+            this.newestAt = newestAt;
+        }
+
+        synchronized long position() {
+            return newest;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final boolean enabled;
+    private final long settleMillis = TimeUnit.SECONDS.toMillis(Long.getLong("timesheet.changeFeed.settleSeconds", 60));
+    private final long retentionMillis = TimeUnit.HOURS.toMillis(Long.getLong("timesheet.changeFeed.retentionHours", 24));
+    private ScheduledExecutorService retention;
+
+    ChangeFeed(DatabaseManager dbManager, boolean enabled) {
+        this.dbManager = dbManager;
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // Starts the hourly retention job; for one process per database, the server or a manager's client.
+    synchronized void start() {
+        if (!enabled || retention != null) {
+            return;
+        }
+        retention = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "change-feed-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retention.scheduleWithFixedDelay(() -> {
+            try {
+                prune();
+            } catch (SQLException | RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }, 1, 60, TimeUnit.MINUTES);
+    }
+
+    synchronized void stop() {
+        if (retention != null) {
+            retention.shutdownNow();
+            retention = null;
+        }
+    }
+
+    // Deletes entries past the retention period in small transactions; returns how many.
+    int prune() throws SQLException {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - retentionMillis);
+        int deleted = 0;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM change_log WHERE changed_at < ? LIMIT 10000")) {
+            stmt.setTimestamp(1, cutoff);
+            int batch;
+            while ((batch = stmt.executeUpdate()) > 0) {
+                deleted += batch;
+            }
+        }
+        return deleted;
+    }
+
+    // Call inside the writer's transaction so the change and its log entry commit together.
+    void record(Connection conn, String tableName, String rowKey, String operation) throws SQLException {
+        if (!enabled) {
+            return;
+        }
+        String sql = "INSERT INTO change_log (table_name, row_key, operation) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, tableName);
+            stmt.setString(2, rowKey);
+            stmt.setString(3, operation);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Batched form of record for bulk writers.
+    void recordAll(Connection conn, String tableName, List<String> rowKeys, String operation) throws SQLException {
+        if (!enabled || rowKeys.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO change_log (table_name, row_key, operation) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (String rowKey : rowKeys) {
+                stmt.setString(1, tableName);
+                stmt.setString(2, rowKey);
+                stmt.setString(3, operation);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    long latestChangeId() throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(change_id) FROM change_log")) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // A cursor for changes after the latest one.
+    Cursor cursor(String tableName) throws SQLException {
+        return cursor(tableName, latestChangeId());
+    }
+
+    // A cursor for changes after the given id, for a consumer that read it before loading the
+    // table. Changes within the settle time below it are delivered again, since they may have
+    // committed after the load; consumers re-read the rows, so seeing one twice is harmless.
+    Cursor cursor(String tableName, long position) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            Timestamp positionAt = null;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT changed_at FROM change_log WHERE change_id = ?")) {
+                stmt.setLong(1, position);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        positionAt = rs.getTimestamp(1);
+                    }
+                }
+            }
+            if (positionAt == null) {
+                // Empty or pruned log: nothing below can still be pending
+                return new Cursor(tableName, position, position, null);
+            }
+            long floor = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT change_id FROM change_log "
+                    + "WHERE change_id <= ? AND changed_at < ? ORDER BY change_id DESC LIMIT 1")) {
+                stmt.setLong(1, position);
+                stmt.setTimestamp(2, new Timestamp(positionAt.getTime() - settleMillis));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        floor = rs.getLong(1);
+                    }
+                }
+            }
+            return new Cursor(tableName, floor, position, positionAt);
+        }
+    }
+
+    // Changes to the cursor's table it has not delivered yet: late commits below its newest change
+    // first, then up to limit newer ones, each in id order. Advances the cursor.
+    List<Change> poll(Cursor cursor, int limit) throws SQLException {
+        synchronized (cursor) {
+            List<Change> changes = new ArrayList<>();
+            Map<Long, Timestamp> changedAt = new TreeMap<>();
+            try (Connection conn = dbManager.getConnection()) {
+                if (cursor.newest > cursor.floor) {
+                    read(conn, "SELECT change_id, table_name, row_key, operation, changed_at FROM change_log "
+                                    + "WHERE table_name = ? AND change_id > ? AND change_id < ? ORDER BY change_id",
+                            cursor, cursor.floor, cursor.newest, changes, changedAt);
+                }
+                read(conn, "SELECT change_id, table_name, row_key, operation, changed_at FROM change_log "
+                                + "WHERE table_name = ? AND change_id > ? ORDER BY change_id LIMIT " + limit,
+                        cursor, cursor.newest, null, changes, changedAt);
+            }
+            for (Map.Entry<Long, Timestamp> entry : changedAt.entrySet()) {
+                cursor.delivered.put(entry.getKey(), entry.getValue());
+                if (entry.getKey() > cursor.newest) {
+                    cursor.newest = entry.getKey();
+                    cursor.newestAt = entry.getValue();
+                }
+            }
+            settle(cursor);
+            return changes;
+        }
+    }
+
+    private static void read(Connection conn, String sql, Cursor cursor, long after, Long before, List<Change> changes,
+                             Map<Long, Timestamp> changedAt) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, cursor.tableName);
+            stmt.setLong(2, after);
+            if (before != null) {
+                stmt.setLong(3, before);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long changeId = rs.getLong("change_id");
+                    if (!cursor.delivered.containsKey(changeId)) {
+                        changes.add(new Change(changeId, rs.getString("table_name"), rs.getString("row_key"), rs.getString("operation")));
+                        changedAt.put(changeId, rs.getTimestamp("changed_at"));
+                    }
+                }
+            }
+        }
+    }
+
+    // Raises the floor past delivered changes older than the settle time before the newest one;
+    // any id below them not seen by now belonged to a transaction that rolled back.
+    private void settle(Cursor cursor) {
+        if (cursor.newestAt == null) {
+            return;
+        }
+        long settledBefore = cursor.newestAt.getTime() - settleMillis;
+        for (Iterator<Map.Entry<Long, Timestamp>> it = cursor.delivered.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Timestamp> entry = it.next();
+            if (entry.getValue() == null || entry.getValue().getTime() >= settledBefore) {
+                break;
+            }
+            cursor.floor = entry.getKey();
+            it.remove();
+        }
+    }
+}
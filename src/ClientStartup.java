@@ -0,0 +1,113 @@
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+
+// Brings the desktop client up behind its login form: the form is shown first, while a background
+// thread migrates the schema (which also loads the JDBC driver and opens the first connection) and
+// starts the services every client needs. Login and sign-up wait for that to finish. The employee
+// directory and report cache only serve the manager's dashboard, and the hours rollup reconcile, pay
+// period archiving and change log retention jobs are wanted in few processes, so they start with
+// the first manager login instead; an employee kiosk never runs them.
+//
+// -Dtimesheet.startup.report=true prints the time from JVM start to the login form and to the
+// database being ready, with the resident memory at each. -Dtimesheet.startup.exitWhenReady=true
+// exits once both are reached; scripts/build-client.sh uses it for the class data sharing
+// training run.
+class ClientStartup {
+    private final TimesheetDataService dataService;
+    private final boolean report = Boolean.getBoolean("timesheet.startup.report");
+    private final boolean exitWhenReady = Boolean.getBoolean("timesheet.startup.exitWhenReady");
+
+    // Guarded by this
+    private boolean warmedUp;
+    private boolean managerServicesStarted;
+    // Only touched on the EDT
+    private boolean loginFormShown;
+    private boolean warmUpAttempted;
+
+    ClientStartup(TimesheetDataService dataService) {
+        this.dataService = dataService;
+    }
+
+    void start() {
+        Thread thread = new Thread(() -> {
+            try {
+                awaitReady();
+            } catch (SQLException | RuntimeException ex) {
+                // Login retries and reports it
+                System.err.println("Could not bring the database schema up to date: " + ex.getMessage());
+            }
+            SwingUtilities.invokeLater(() -> {
+                warmUpAttempted = true;
+                exitIfTrained();
+            });
+        }, "client-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Blocks until the schema is migrated and the services are running; a failed background
+    // attempt is retried here, so a kiosk started before its database recovers once it is up.
+    // Not for the EDT.
+    synchronized void awaitReady() throws SQLException {
+        if (warmedUp) {
+            return;
+        }
+        new SchemaMigrator(dataService.getDatabaseManager()).migrate();
+        dataService.openPunchJournal();
+        dataService.getDatabaseManager().getMetrics().startPeriodicDump();
+        warmedUp = true;
+        report("database ready");
+    }
+
+    synchronized void startManagerServices() {
+        if (!managerServicesStarted) {
+            dataService.getHoursRollup().start();
+            dataService.getPayPeriods().start();
+            dataService.getDirectory().start();
+            dataService.getReportCache().start();
+            dataService.getChangeFeed().start();
+            managerServicesStarted = true;
+        }
+    }
+
+    // Called on the EDT once the login form is on screen.
+    void loginFormShown() {
+        report("login form shown");
+        loginFormShown = true;
+        exitIfTrained();
+    }
+
+    private void exitIfTrained() {
+        if (exitWhenReady && loginFormShown && warmUpAttempted) {
+            System.exit(0);
+        }
+    }
+
+    private void report(String milestone) {
+        if (report) {
+            Instant jvmStart = ProcessHandle.current().info().startInstant().orElse(null);
+            System.out.printf("Startup: %s after %s ms, resident memory %s%n", milestone,
+                    jvmStart == null ? "?" : Long.toString(Duration.between(jvmStart, Instant.now()).toMillis()), residentMemory());
+        }
+    }
+
+    // VmRSS where /proc has it, else the heap in use.
+    private static String residentMemory() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return (Long.parseLong(line.replaceAll("\\D", "")) >> 10) + " MB";
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            // Not Linux
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + " MB heap";
+    }
+}
@@ -0,0 +1,694 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// In-process copy of the finished timesheet rows held column by column in primitive arrays:
+// employee ids dictionary-encoded to ints and start/end as epoch seconds. Aggregations scan the
+// arrays in parallel on the common fork-join pool instead of sending aggregate SQL to the database.
+// Times are stored as local wall-clock time (encoded with UTC offset zero), like the DATETIME columns.
+class ColumnarTimesheetStore {
+    static final int MAX_HISTOGRAM_MINUTES = 24 * 60;
+    private static final int SCAN_THRESHOLD = 64 * 1024;
+    private static final long SECONDS_PER_WEEK = 7 * 24 * 3600L;
+    // 128 MB of week totals, allocated once per overtime scan
+    private static final long MAX_OVERTIME_CELLS = 16_000_000L;
+    // Row keys pack the employee code above the start second, offset so that any DATETIME from
+    // the year 881 to 9600 fits in 38 bits; that leaves 25 bits, 33 million employee codes.
+    private static final int START_BITS = 38;
+    private static final long START_OFFSET = 1L << 35;
+
+    // Open-addressing map from row key to row, about 16 bytes a row where a HashMap<Long, Integer>
+    // takes 80. Row keys are never negative, so -1 marks a free slot; linear probing, and removal
+    // shifts the rest of the run back rather than leaving a tombstone.
+    private static class RowIndex {
+        private static final long FREE = -1;
+        private long[] keys;
+        private int[] rows;
+        private int size;
+
+        RowIndex() {
+            allocate(1024);
+        }
+
+        // -1 when absent.
+        int get(long key) {
+            for (int slot = slot(key); keys[slot] != FREE; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) {
+                    return rows[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int row) {
+            if (size >= keys.length * 3 / 4) {
+                grow();
+            }
+            int slot = slot(key);
+            while (keys[slot] != FREE && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                size++;
+            }
+            rows[slot] = row;
+        }
+
+        // The removed row, or -1 when absent.
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key);
+            while (keys[slot] != key) {
+                if (keys[slot] == FREE) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int row = rows[slot];
+            // Moves back each later entry of the run whose home slot is not between the hole and it
+            for (int next = (slot + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+                if (((next - slot(keys[next])) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    rows[slot] = rows[next];
+                    slot = next;
+                }
+            }
+            keys[slot] = FREE;
+            size--;
+            return row;
+        }
+
+        void clear() {
+            Arrays.fill(keys, FREE);
+            size = 0;
+        }
+
+        long memoryFootprintBytes() {
+            return 32 + 12L * keys.length;
+        }
+
+        private int slot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldRows = rows;
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slot(oldKeys[i]);
+                    while (keys[slot] != FREE) {
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            rows = new int[capacity];
+            Arrays.fill(keys, FREE);
+        }
+    }
+
+    // One consistent view of the columns and dictionaries. The writer fills rows past size in the
+    // same arrays and then publishes a new snapshot, and copies the arrays before changing or
+    // removing a row in place, so readers never see a half-written row.
+    private static class Snapshot {
+        final int[] employee;
+        final long[] start;
+        final long[] end;
+        final int size;
+        final int[] employeeDepartment;
+        final String[] employeeIds;
+        final String[] departmentNames;
+
+        Snapshot(int[] employee, long[] start, long[] end, int size, int[] employeeDepartment,
+                 String[] employeeIds, String[] departmentNames) {
+            this.employee = employee;
+            this.start = start;
+            this.end = end;
+            this.size = size;
+            this.employeeDepartment = employeeDepartment;
+            this.employeeIds = employeeIds;
+            this.departmentNames = departmentNames;
+        }
+
+        int departmentCode(String department) {
+            for (int code = 0; code < departmentNames.length; code++) {
+                if (Objects.equals(departmentNames[code], department)) {
+                    return code;
+                }
+            }
+            return -2;
+        }
+    }
+
+    // A fork-join aggregation: each leaf folds a row range into its own accumulator, then accumulators merge.
+    interface Aggregation<A> {
+        A newAccumulator();
+
+        void accept(A accumulator, Snapshot columns, int row);
+
+        A merge(A left, A right);
+    }
+
+    private final DatabaseManager dbManager;
+    private final ChangeFeed changeFeed;
+    private final Map<String, Integer> employeeCodes = new HashMap<>();
+    private final List<String> employeeIds = new ArrayList<>();
+    private final Map<String, Integer> departmentCodes = new HashMap<>();
+    private final List<String> departmentNames = new ArrayList<>();
+    // Writer-side columns, guarded by this; snapshot is what queries read.
+    private int[] employee = new int[0];
+    private long[] start = new long[0];
+    private long[] end = new long[0];
+    private int size;
+    private int[] employeeDepartment = new int[0];
+    // (employee, start) -> row, so a shift written again replaces its row instead of adding one
+    private final RowIndex rowIndex = new RowIndex();
+    // Whether the column arrays are shared with the published snapshot; they are copied before
+    // a row a reader can see is changed in place
+    private boolean published;
+    // Whether the dictionaries were renumbered since the last publish(), so the snapshot's id and
+    // department arrays no longer match the codes even where their sizes do
+    private boolean renumbered;
+    private volatile Snapshot snapshot = new Snapshot(employee, start, end, 0, employeeDepartment, new String[0], new String[0]);
+    private final long reloadIntervalNanos =
+            Long.getLong("timesheet.columnarReports.reloadMinutes", 15) * 60_000_000_000L;
+    private ChangeFeed.Cursor timesheetChanges;
+    private ChangeFeed.Cursor employeeChanges;
+    private boolean loaded;
+    private long loadedAt;
+
+    ColumnarTimesheetStore(DatabaseManager dbManager, ChangeFeed changeFeed) {
+        this.dbManager = dbManager;
+        this.changeFeed = changeFeed;
+    }
+
+    // Loads everything on first use; afterwards applies only the timesheet and employee changes
+    // recorded in the change feed since the last refresh. Without the change feed, rows written by
+    // this process arrive through append(). Either way a full reload() every
+    // -Dtimesheet.columnarReports.reloadMinutes picks up what was missed: everyone else's rows
+    // without the feed, and with it changes it never logged, such as direct SQL or archiving.
+    synchronized void refresh() throws SQLException {
+        if (!loaded || System.nanoTime() - loadedAt > reloadIntervalNanos) {
+            reload();
+            return;
+        }
+        if (!changeFeed.isEnabled()) {
+            return;
+        }
+        List<ChangeFeed.Change> changes;
+        while (!(changes = changeFeed.poll(timesheetChanges, 10_000)).isEmpty()) {
+            // A shift is usually logged twice, clocked in then out; its current row is read once
+            Set<String> rowKeys = new LinkedHashSet<>();
+            for (ChangeFeed.Change change : changes) {
+                rowKeys.add(change.rowKey);
+            }
+            try (Connection conn = dbManager.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "SELECT end_time FROM timesheet WHERE employee_id = ? AND start_time = ? AND end_time IS NOT NULL "
+                                 + "UNION ALL SELECT end_time FROM " + PayPeriodArchive.ARCHIVE_TABLE + " WHERE employee_id = ? AND start_time = ?")) {
+                for (String rowKey : rowKeys) {
+                    int separator = rowKey.lastIndexOf('|');
+                    String employeeId = rowKey.substring(0, separator);
+                    LocalDateTime startTime = LocalDateTime.parse(rowKey.substring(separator + 1));
+                    stmt.setString(1, employeeId);
+                    stmt.setTimestamp(2, Timestamp.valueOf(startTime));
+                    stmt.setString(3, employeeId);
+                    stmt.setTimestamp(4, Timestamp.valueOf(startTime));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            putRow(employeeId, startTime, rs.getTimestamp(1).toLocalDateTime());
+                        } else {
+                            // Deleted or reopened
+                            removeRow(employeeId, startTime);
+                        }
+                    }
+                }
+            }
+            publish();
+        }
+        refreshDepartments();
+    }
+
+    // Reads all finished rows, live and archived, and the change feed position from one
+    // transaction, so later incremental refreshes neither miss nor double count a row.
+    synchronized void reload() throws SQLException {
+        // Queries keep reading the last snapshot; a failed reload starts over on the next refresh.
+        loaded = false;
+        employeeCodes.clear();
+        employeeIds.clear();
+        departmentCodes.clear();
+        departmentNames.clear();
+        int capacity = Math.max(1024, size);
+        employee = new int[capacity];
+        start = new long[capacity];
+        end = new long[capacity];
+        size = 0;
+        rowIndex.clear();
+        published = false;
+        renumbered = true;
+        employeeDepartment = new int[0];
+
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            long changeId = 0;
+            if (changeFeed.isEnabled()) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT MAX(change_id) FROM change_log")) {
+                    rs.next();
+                    changeId = rs.getLong(1);
+                }
+            }
+            try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(10_000);
+                try (ResultSet rs = stmt.executeQuery("SELECT employee_id, start_time, end_time FROM timesheet WHERE end_time IS NOT NULL "
+                        + "UNION ALL SELECT employee_id, start_time, end_time FROM " + PayPeriodArchive.ARCHIVE_TABLE)) {
+                    while (rs.next()) {
+                        putRow(rs.getString(1), rs.getTimestamp(2).toLocalDateTime(), rs.getTimestamp(3).toLocalDateTime());
+                    }
+                }
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT employee_id, department FROM employees")) {
+                while (rs.next()) {
+                    Integer code = employeeCodes.get(rs.getString(1));
+                    if (code != null) {
+                        employeeDepartment[code] = departmentCode(rs.getString(2));
+                    }
+                }
+            }
+            conn.commit();
+            if (changeFeed.isEnabled()) {
+                timesheetChanges = changeFeed.cursor("timesheet", changeId);
+                employeeChanges = changeFeed.cursor("employees", changeId);
+            }
+            loaded = true;
+            loadedAt = System.nanoTime();
+            publish();
+        }
+    }
+
+    // Adds or replaces a finished row written by this process; only used when the change feed is off.
+    synchronized void append(String employeeId, LocalDateTime startTime, LocalDateTime endTime) {
+        if (!loaded || changeFeed.isEnabled()) {
+            return;
+        }
+        putRow(employeeId, startTime, endTime);
+        publish();
+    }
+
+    int getRowCount() {
+        return snapshot.size;
+    }
+
+    // Approximate heap used by the columns and dictionaries.
+    synchronized long memoryFootprintBytes() {
+        long arrays = 16L * 4 + 4L * employee.length + 8L * start.length + 8L * end.length
+                + 4L * employeeDepartment.length;
+        long index = rowIndex.memoryFootprintBytes();
+        long dictionaries = 0;
+        for (String id : employeeIds) {
+            // String object and backing array, plus a hash map entry and list slot
+            dictionaries += 40 + 2L * id.length() + 48;
+        }
+        for (String name : departmentNames) {
+            dictionaries += 40 + 2L * (name == null ? 0 : name.length()) + 48;
+        }
+        return arrays + index + dictionaries;
+    }
+
+    // Hours per employee for shifts starting in [from, toExclusive); null bounds are open.
+    List<EmployeeHours> hoursByEmployee(LocalDate from, LocalDate toExclusive, String department) {
+        Snapshot columns = snapshot;
+        long lower = lowerBound(from);
+        long upper = upperBound(toExclusive);
+        int departmentFilter = department == null ? -1 : columns.departmentCode(department);
+        int employees = columns.employeeIds.length;
+        long[] minutes = scan(columns, new Aggregation<long[]>() {
+            public long[] newAccumulator() {
+                return new long[employees];
+            }
+
+            public void accept(long[] totals, Snapshot c, int row) {
+                if (c.start[row] >= lower && c.start[row] < upper
+                        && (departmentFilter == -1 || c.employeeDepartment[c.employee[row]] == departmentFilter)) {
+                    totals[c.employee[row]] += (c.end[row] - c.start[row]) / 60;
+                }
+            }
+
+            public long[] merge(long[] left, long[] right) {
+                for (int i = 0; i < left.length; i++) {
+                    left[i] += right[i];
+                }
+                return left;
+            }
+        });
+
+        List<EmployeeHours> report = new ArrayList<>();
+        for (int code = 0; code < minutes.length; code++) {
+            if (minutes[code] > 0) {
+                report.add(new EmployeeHours(columns.employeeIds[code], minutes[code] / 60.0));
+            }
+        }
+        report.sort((a, b) -> a.getEmployeeId().compareTo(b.getEmployeeId()));
+        return report;
+    }
+
+    Map<String, Double> hoursByDepartment(LocalDate from, LocalDate toExclusive) {
+        Snapshot columns = snapshot;
+        long lower = lowerBound(from);
+        long upper = upperBound(toExclusive);
+        int departments = columns.departmentNames.length;
+        // Last slot collects employees without a department row
+        long[] minutes = scan(columns, new Aggregation<long[]>() {
+            public long[] newAccumulator() {
+                return new long[departments + 1];
+            }
+
+            public void accept(long[] totals, Snapshot c, int row) {
+                if (c.start[row] >= lower && c.start[row] < upper) {
+                    int department = c.employeeDepartment[c.employee[row]];
+                    totals[department < 0 ? departments : department] += (c.end[row] - c.start[row]) / 60;
+                }
+            }
+
+            public long[] merge(long[] left, long[] right) {
+                for (int i = 0; i < left.length; i++) {
+                    left[i] += right[i];
+                }
+                return left;
+            }
+        });
+
+        Map<String, Double> totals = new LinkedHashMap<>();
+        for (int code = 0; code <= departments; code++) {
+            if (minutes[code] > 0) {
+                totals.put(code == departments ? "(none)" : columns.departmentNames[code], minutes[code] / 60.0);
+            }
+        }
+        return totals;
+    }
+
+    // Hours above weeklyThresholdHours per employee, with weeks counted in 7-day blocks from 'from'.
+    // The leaves share one table of week totals rather than each folding into its own copy.
+    List<EmployeeHours> weeklyOvertime(LocalDate from, LocalDate toExclusive, double weeklyThresholdHours) {
+        Snapshot columns = snapshot;
+        long lower = lowerBound(from);
+        long upper = upperBound(toExclusive);
+        int employees = columns.employeeIds.length;
+        int weeks = (int) ((upper - lower + SECONDS_PER_WEEK - 1) / SECONDS_PER_WEEK);
+        if ((long) employees * weeks > MAX_OVERTIME_CELLS) {
+            throw new IllegalArgumentException("Date range too large for an overtime scan: " + weeks + " weeks");
+        }
+        AtomicLongArray shared = new AtomicLongArray(employees * weeks);
+        AtomicLongArray minutes = scan(columns, new Aggregation<AtomicLongArray>() {
+            public AtomicLongArray newAccumulator() {
+                return shared;
+            }
+
+            public void accept(AtomicLongArray totals, Snapshot c, int row) {
+                if (c.start[row] >= lower && c.start[row] < upper) {
+                    int week = (int) ((c.start[row] - lower) / SECONDS_PER_WEEK);
+                    totals.addAndGet(c.employee[row] * weeks + week, (c.end[row] - c.start[row]) / 60);
+                }
+            }
+
+            public AtomicLongArray merge(AtomicLongArray left, AtomicLongArray right) {
+                return left;
+            }
+        });
+
+        long thresholdMinutes = Math.round(weeklyThresholdHours * 60);
+        List<EmployeeHours> overtime = new ArrayList<>();
+        for (int code = 0; code < employees; code++) {
+            long extra = 0;
+            for (int week = 0; week < weeks; week++) {
+                extra += Math.max(0, minutes.get(code * weeks + week) - thresholdMinutes);
+            }
+            if (extra > 0) {
+                overtime.add(new EmployeeHours(columns.employeeIds[code], extra / 60.0));
+            }
+        }
+        return overtime;
+    }
+
+    // Shift length percentiles in hours, from a per-minute histogram (exact to the minute; shifts
+    // longer than a day land in the last bucket). percentiles are fractions such as 0.5 or 0.99.
+    double[] shiftLengthPercentiles(LocalDate from, LocalDate toExclusive, double... percentiles) {
+        Snapshot columns = snapshot;
+        long lower = lowerBound(from);
+        long upper = upperBound(toExclusive);
+        long[] histogram = scan(columns, new Aggregation<long[]>() {
+            public long[] newAccumulator() {
+                return new long[MAX_HISTOGRAM_MINUTES + 1];
+            }
+
+            public void accept(long[] counts, Snapshot c, int row) {
+                if (c.start[row] >= lower && c.start[row] < upper) {
+                    counts[(int) Math.min(MAX_HISTOGRAM_MINUTES, (c.end[row] - c.start[row]) / 60)]++;
+                }
+            }
+
+            public long[] merge(long[] left, long[] right) {
+                for (int i = 0; i < left.length; i++) {
+                    left[i] += right[i];
+                }
+                return left;
+            }
+        });
+
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        double[] result = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            long rank = (long) Math.ceil(percentiles[i] * total);
+            long seen = 0;
+            int minute = 0;
+            while (minute < MAX_HISTOGRAM_MINUTES && seen + histogram[minute] < Math.max(1, rank)) {
+                seen += histogram[minute];
+                minute++;
+            }
+            result[i] = total == 0 ? 0 : minute / 60.0;
+        }
+        return result;
+    }
+
+    // What the dashboard's analytics view shows for one date range.
+    static class Summary {
+        final int rows;
+        final long memoryBytes;
+        final Map<String, Double> hoursByDepartment;
+        final List<EmployeeHours> weeklyOvertime;
+        final double[] shiftLengthPercentiles;
+
+        Summary(int rows, long memoryBytes, Map<String, Double> hoursByDepartment, List<EmployeeHours> weeklyOvertime,
+                double[] shiftLengthPercentiles) {
+            this.rows = rows;
+            this.memoryBytes = memoryBytes;
+            this.hoursByDepartment = hoursByDepartment;
+            this.weeklyOvertime = weeklyOvertime;
+            this.shiftLengthPercentiles = shiftLengthPercentiles;
+        }
+    }
+
+    static final double[] SUMMARY_PERCENTILES = {0.5, 0.9, 0.99};
+    static final double OVERTIME_HOURS_PER_WEEK = 40;
+
+    // Overtime needs a bounded range, so an open range is cut to the last twelve weeks.
+    Summary summarize(LocalDate from, LocalDate toExclusive) {
+        LocalDate overtimeTo = toExclusive != null ? toExclusive : LocalDate.now().plusDays(1);
+        LocalDate overtimeFrom = from != null ? from : overtimeTo.minusWeeks(12);
+        return new Summary(getRowCount(), memoryFootprintBytes(), hoursByDepartment(from, toExclusive),
+                weeklyOvertime(overtimeFrom, overtimeTo, OVERTIME_HOURS_PER_WEEK),
+                shiftLengthPercentiles(from, toExclusive, SUMMARY_PERCENTILES));
+    }
+
+    <A> A scan(Aggregation<A> aggregation) {
+        return scan(snapshot, aggregation);
+    }
+
+    private <A> A scan(Snapshot columns, Aggregation<A> aggregation) {
+        return ForkJoinPool.commonPool().invoke(new ScanTask<>(columns, aggregation, 0, columns.size));
+    }
+
+    private static class ScanTask<A> extends RecursiveTask<A> {
+        private final Snapshot columns;
+        private final Aggregation<A> aggregation;
+        private final int from;
+        private final int to;
+
+        ScanTask(Snapshot columns, Aggregation<A> aggregation, int from, int to) {
+            this.columns = columns;
+            this.aggregation = aggregation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= SCAN_THRESHOLD) {
+                A accumulator = aggregation.newAccumulator();
+                for (int row = from; row < to; row++) {
+                    aggregation.accept(accumulator, columns, row);
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask<A> left = new ScanTask<>(columns, aggregation, from, middle);
+            left.fork();
+            A right = new ScanTask<>(columns, aggregation, middle, to).compute();
+            return aggregation.merge(left.join(), right);
+        }
+    }
+
+    private void putRow(String employeeId, LocalDateTime startTime, LocalDateTime endTime) {
+        int code = employeeCode(employeeId);
+        long startSeconds = startTime.toEpochSecond(ZoneOffset.UTC);
+        long key = rowKey(code, startSeconds);
+        int row = rowIndex.get(key);
+        if (row >= 0) {
+            unshare();
+            end[row] = endTime.toEpochSecond(ZoneOffset.UTC);
+            return;
+        }
+        if (size == employee.length) {
+            // Readers keep scanning the old arrays until the next publish()
+            int capacity = Math.max(1024, employee.length * 2);
+            employee = Arrays.copyOf(employee, capacity);
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+            published = false;
+        }
+        employee[size] = code;
+        start[size] = startSeconds;
+        end[size] = endTime.toEpochSecond(ZoneOffset.UTC);
+        rowIndex.put(key, size);
+        size++;
+    }
+
+    // Moves the last row into the removed one's place.
+    private void removeRow(String employeeId, LocalDateTime startTime) {
+        Integer code = employeeCodes.get(employeeId);
+        int row = code == null ? -1 : rowIndex.remove(rowKey(code, startTime.toEpochSecond(ZoneOffset.UTC)));
+        if (row < 0) {
+            return;
+        }
+        unshare();
+        int last = --size;
+        if (row != last) {
+            employee[row] = employee[last];
+            start[row] = start[last];
+            end[row] = end[last];
+            rowIndex.put(rowKey(employee[row], start[row]), row);
+        }
+    }
+
+    private static long rowKey(int employeeCode, long startSeconds) {
+        return ((long) employeeCode << START_BITS) | (startSeconds + START_OFFSET);
+    }
+
+    private void unshare() {
+        if (published) {
+            employee = employee.clone();
+            start = start.clone();
+            end = end.clone();
+            published = false;
+        }
+    }
+
+    private void publish() {
+        Snapshot current = snapshot;
+        // Codes are only ever appended between reloads, so an unchanged size means unchanged arrays
+        String[] ids = !renumbered && current.employeeIds.length == employeeIds.size()
+                ? current.employeeIds : employeeIds.toArray(new String[0]);
+        String[] departments = !renumbered && current.departmentNames.length == departmentNames.size()
+                ? current.departmentNames : departmentNames.toArray(new String[0]);
+        snapshot = new Snapshot(employee, start, end, size, employeeDepartment, ids, departments);
+        published = true;
+        renumbered = false;
+    }
+
+    private void refreshDepartments() throws SQLException {
+        List<ChangeFeed.Change> changes = changeFeed.poll(employeeChanges, 10_000);
+        if (changes.isEmpty()) {
+            return;
+        }
+        // Copy, since published snapshots share the old array
+        employeeDepartment = employeeDepartment.clone();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT department FROM employees WHERE employee_id = ?")) {
+            for (ChangeFeed.Change change : changes) {
+                Integer code = employeeCodes.get(change.rowKey);
+                if (code == null) {
+                    continue;
+                }
+                stmt.setString(1, change.rowKey);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    employeeDepartment[code] = rs.next() ? departmentCode(rs.getString(1)) : -1;
+                }
+            }
+        }
+        publish();
+    }
+
+    private int employeeCode(String employeeId) {
+        Integer code = employeeCodes.get(employeeId);
+        if (code == null) {
+            code = employeeIds.size();
+            employeeCodes.put(employeeId, code);
+            employeeIds.add(employeeId);
+            if (code >= employeeDepartment.length) {
+                int previous = employeeDepartment.length;
+                employeeDepartment = Arrays.copyOf(employeeDepartment, Math.max(64, previous * 2));
+                Arrays.fill(employeeDepartment, previous, employeeDepartment.length, -1);
+            }
+        }
+        return code;
+    }
+
+    private int departmentCode(String department) {
+        Integer code = departmentCodes.get(department);
+        if (code == null) {
+            code = departmentNames.size();
+            departmentCodes.put(department, code);
+            departmentNames.add(department);
+        }
+        return code;
+    }
+
+    private static long lowerBound(LocalDate from) {
+        return from == null ? Long.MIN_VALUE : from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static long upperBound(LocalDate toExclusive) {
+        return toExclusive == null ? Long.MAX_VALUE : toExclusive.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+}
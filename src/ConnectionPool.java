@@ -0,0 +1,672 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded JDBC connection pool. Works with any JDBC URL; callers get a proxy whose close() hands the
+// physical connection back to the pool instead of closing it. Each physical connection also keeps an
+// LRU cache of its prepared statements, keyed by SQL text, so the same query is prepared once per
+// connection rather than once per call. Statements a caller forgets to close are closed (or returned
+// to the cache) when the connection goes back to the pool.
+class ConnectionPool implements AutoCloseable {
+
+    static class Config {
+        private int minIdle = 2;
+        private int maxSize = 10;
+        private long acquireTimeoutMillis = 5_000;
+        private long idleTimeoutMillis = 300_000;
+        private long maxLifetimeMillis = 1_800_000;
+        private long validationIntervalMillis = 5_000;
+        private int validationTimeoutSeconds = 2;
+        // Off by default: it captures a stack trace on every borrow. -Dtimesheet.pool.leakDetectionThresholdMillis
+        // reports connections held longer than that, with where they were borrowed.
+        private long leakDetectionThresholdMillis = 0;
+        private long housekeepingIntervalMillis = 30_000;
+        private int statementCacheSize = 64;
+
+        // Reads overrides such as -Dtimesheet.pool.maxSize=20 from the system properties.
+        static Config fromSystemProperties() {
+            Config config = new Config();
+            config.minIdle = Integer.getInteger("timesheet.pool.minIdle", config.minIdle);
+            config.maxSize = Integer.getInteger("timesheet.pool.maxSize", config.maxSize);
+            config.acquireTimeoutMillis = Long.getLong("timesheet.pool.acquireTimeoutMillis", config.acquireTimeoutMillis);
+            config.idleTimeoutMillis = Long.getLong("timesheet.pool.idleTimeoutMillis", config.idleTimeoutMillis);
+            config.maxLifetimeMillis = Long.getLong("timesheet.pool.maxLifetimeMillis", config.maxLifetimeMillis);
+            config.validationIntervalMillis = Long.getLong("timesheet.pool.validationIntervalMillis", config.validationIntervalMillis);
+            config.leakDetectionThresholdMillis = Long.getLong("timesheet.pool.leakDetectionThresholdMillis", config.leakDetectionThresholdMillis);
+            config.housekeepingIntervalMillis = Long.getLong("timesheet.pool.housekeepingIntervalMillis", config.housekeepingIntervalMillis);
+            config.statementCacheSize = Integer.getInteger("timesheet.pool.statementCacheSize", config.statementCacheSize);
+            return config;
+        }
+
+        Config minIdle(int minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        Config maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        Config acquireTimeoutMillis(long acquireTimeoutMillis) {
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+            return this;
+        }
+
+        Config idleTimeoutMillis(long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        Config maxLifetimeMillis(long maxLifetimeMillis) {
+            this.maxLifetimeMillis = maxLifetimeMillis;
+            return this;
+        }
+
+        Config validationIntervalMillis(long validationIntervalMillis) {
+            this.validationIntervalMillis = validationIntervalMillis;
+            return this;
+        }
+
+        Config leakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+            this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+            return this;
+        }
+
+        Config housekeepingIntervalMillis(long housekeepingIntervalMillis) {
+            this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+            return this;
+        }
+
+        // Prepared statements kept per connection; 0 turns the cache off.
+        Config statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        private void validate() {
+            if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+                throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+            }
+            if (statementCacheSize < 0) {
+                throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+            }
+        }
+    }
+
+    static class Stats {
+        final int total;
+        final int idle;
+        final int active;
+        final int waiting;
+        final long created;
+        final long destroyed;
+        final long acquired;
+        final long timeouts;
+        final long leaksDetected;
+        final long totalWaitNanos;
+        final long maxWaitNanos;
+        final long statementCacheHits;
+        final long statementCacheMisses;
+        final long statementsClosedOnRelease;
+
+        Stats(int total, int idle, int active, int waiting, long created, long destroyed, long acquired,
+              long timeouts, long leaksDetected, long totalWaitNanos, long maxWaitNanos,
+              long statementCacheHits, long statementCacheMisses, long statementsClosedOnRelease) {
+            this.total = total;
+            this.idle = idle;
+            this.active = active;
+            this.waiting = waiting;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.acquired = acquired;
+            this.timeouts = timeouts;
+            this.leaksDetected = leaksDetected;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementsClosedOnRelease = statementsClosedOnRelease;
+        }
+
+        double averageWaitMillis() {
+            return acquired == 0 ? 0 : totalWaitNanos / 1_000_000.0 / acquired;
+        }
+
+        double statementCacheHitRate() {
+            long lookups = statementCacheHits + statementCacheMisses;
+            return lookups == 0 ? 0 : (double) statementCacheHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "total=" + total + ", idle=" + idle + ", active=" + active + ", waiting=" + waiting
+                    + ", created=" + created + ", destroyed=" + destroyed + ", acquired=" + acquired
+                    + ", timeouts=" + timeouts + ", leaks=" + leaksDetected
+                    + String.format(", avgWaitMs=%.3f, maxWaitMs=%.3f", averageWaitMillis(), maxWaitNanos / 1_000_000.0)
+                    + String.format(", stmtCacheHitRate=%.1f%%", statementCacheHitRate() * 100)
+                    + ", unclosedStatements=" + statementsClosedOnRelease;
+        }
+    }
+
+    private final String dbUrl;
+    private final String dbUsername;
+    private final String dbPassword;
+    private final Config config;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Map<PooledConnection, Boolean> borrowedConnections = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementsClosedOnRelease = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ScheduledExecutorService housekeeper;
+
+    ConnectionPool(String dbUrl, String dbUsername, String dbPassword, Config config) {
+        config.validate();
+        this.dbUrl = dbUrl;
+        this.dbUsername = dbUsername;
+        this.dbPassword = dbPassword;
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // First run fills the pool up to minIdle in the background so startup does not wait on the database.
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, config.housekeepingIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    Connection getConnection() throws SQLException {
+        return getConnection(config.acquireTimeoutMillis);
+    }
+
+    // Waits at most acquireTimeoutMillis, rather than the configured timeout, for a free connection.
+    Connection getConnection(long acquireTimeoutMillis) throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long waitStart = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a database connection (" + getStats() + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled = takeIdleOrCreate();
+            recordWait(System.nanoTime() - waitStart);
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowTrace = config.leakDetectionThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowedConnections.put(pooled, Boolean.TRUE);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    Stats getStats() {
+        int idle = idleConnections.size();
+        int active = borrowedConnections.size();
+        return new Stats(totalConnections.get(), idle, active, waitingThreads.get(), createdCount.get(),
+                destroyedCount.get(), acquiredCount.get(), timeoutCount.get(), leakCount.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(), statementCacheHits.get(), statementCacheMisses.get(),
+                statementsClosedOnRelease.get());
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (isUsable(pooled)) {
+                return pooled;
+            }
+            destroy(pooled);
+        }
+        return create();
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.currentTimeMillis();
+        if (config.maxLifetimeMillis > 0 && now - pooled.createdAt > config.maxLifetimeMillis) {
+            return false;
+        }
+        if (now - pooled.lastReturnedAt < config.validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(config.validationTimeoutSeconds);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+        int defaultIsolation;
+        int defaultNetworkTimeout;
+        try {
+            defaultIsolation = physical.getTransactionIsolation();
+            defaultNetworkTimeout = networkTimeout(physical);
+        } catch (SQLException ex) {
+            try {
+                physical.close();
+            } catch (SQLException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw ex;
+        }
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical, defaultIsolation, defaultNetworkTimeout);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ex) {
+            // Already broken, nothing left to release
+        }
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        borrowedConnections.remove(pooled);
+        try {
+            if (!broken && !closed.get() && resetState(pooled)) {
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idleConnections.offerFirst(pooled);
+            } else {
+                destroy(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean resetState(PooledConnection pooled) {
+        try {
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            if (pooled.physical.isReadOnly()) {
+                pooled.physical.setReadOnly(false);
+            }
+            if (pooled.physical.getTransactionIsolation() != pooled.defaultIsolation) {
+                pooled.physical.setTransactionIsolation(pooled.defaultIsolation);
+            }
+            if (pooled.defaultNetworkTimeout >= 0 && pooled.physical.getNetworkTimeout() != pooled.defaultNetworkTimeout) {
+                pooled.physical.setNetworkTimeout(Runnable::run, pooled.defaultNetworkTimeout);
+            }
+            pooled.physical.clearWarnings();
+            return true;
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    // -1 when the driver has no network timeout.
+    private static int networkTimeout(Connection physical) throws SQLException {
+        try {
+            return physical.getNetworkTimeout();
+        } catch (SQLFeatureNotSupportedException ex) {
+            return -1;
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        acquiredCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private void housekeep() {
+        try {
+            evictIdle();
+            detectLeaks();
+            fillToMinIdle();
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : idleConnections) {
+            boolean idleTooLong = config.idleTimeoutMillis > 0 && now - pooled.lastReturnedAt > config.idleTimeoutMillis
+                    && totalConnections.get() > config.minIdle;
+            boolean tooOld = config.maxLifetimeMillis > 0 && now - pooled.createdAt > config.maxLifetimeMillis;
+            if ((idleTooLong || tooOld) && idleConnections.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        if (config.leakDetectionThresholdMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : borrowedConnections.keySet()) {
+            if (!pooled.leakReported && now - pooled.borrowedAt > config.leakDetectionThresholdMillis) {
+                pooled.leakReported = true;
+                leakCount.incrementAndGet();
+                System.err.println("Possible connection leak: connection held for " + (now - pooled.borrowedAt) + " ms");
+                if (pooled.borrowTrace != null) {
+                    pooled.borrowTrace.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void fillToMinIdle() {
+        while (!closed.get() && totalConnections.get() < config.minIdle && idleConnections.size() < config.minIdle) {
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                PooledConnection pooled = create();
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idleConnections.offerLast(pooled);
+            } catch (SQLException ex) {
+                System.err.println("Could not pre-open database connection: " + ex.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private class PooledConnection {
+        private final Connection physical;
+        // The driver's settings, put back when the connection is returned
+        private final int defaultIsolation;
+        private final int defaultNetworkTimeout;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastReturnedAt = createdAt;
+        private volatile long borrowedAt;
+        private volatile Throwable borrowTrace;
+        private volatile boolean leakReported;
+        // Only touched by the borrowing thread; access-ordered so the least recently used goes first.
+        private final LinkedHashMap<String, CachedStatement> statementCache = new LinkedHashMap<>(16, 0.75f, true);
+
+        PooledConnection(Connection physical, int defaultIsolation, int defaultNetworkTimeout) {
+            this.physical = physical;
+            this.defaultIsolation = defaultIsolation;
+            this.defaultNetworkTimeout = defaultNetworkTimeout;
+        }
+
+        // Null when the SQL is not cached and the cache is full of statements still in use.
+        CachedStatement checkOut(String sql) throws SQLException {
+            CachedStatement cached = statementCache.get(sql);
+            if (cached != null) {
+                if (cached.inUse) {
+                    // The same query open twice on one connection; the second copy is not cached
+                    statementCacheMisses.incrementAndGet();
+                    return null;
+                }
+                statementCacheHits.incrementAndGet();
+                cached.inUse = true;
+                return cached;
+            }
+            statementCacheMisses.incrementAndGet();
+            if (statementCache.size() >= config.statementCacheSize && !evictOne()) {
+                return null;
+            }
+            cached = new CachedStatement(sql, physical.prepareStatement(sql));
+            cached.inUse = true;
+            statementCache.put(sql, cached);
+            return cached;
+        }
+
+        void checkIn(CachedStatement cached) {
+            try {
+                // A result set the caller left open would otherwise stay open until the next execute
+                ResultSet open = cached.statement.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+                cached.statement.clearParameters();
+                cached.statement.clearWarnings();
+                cached.inUse = false;
+            } catch (SQLException ex) {
+                statementCache.remove(cached.sql);
+                closeQuietly(cached.statement);
+            }
+        }
+
+        private boolean evictOne() {
+            Iterator<CachedStatement> eldestFirst = statementCache.values().iterator();
+            while (eldestFirst.hasNext()) {
+                CachedStatement candidate = eldestFirst.next();
+                if (!candidate.inUse) {
+                    eldestFirst.remove();
+                    closeQuietly(candidate.statement);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    private static class CachedStatement {
+        final String sql;
+        final PreparedStatement statement;
+        boolean inUse;
+
+        CachedStatement(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            // Closing the physical connection releases it anyway
+        }
+    }
+
+    // One handle per borrow, so a stale reference closed twice cannot return the connection twice.
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Set<StatementHandle> openStatements = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean returned;
+        private boolean broken;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        closeOpenStatements();
+                        returned = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement") && args.length == 1 && config.statementCacheSize > 0) {
+                CachedStatement cached = pooled.checkOut((String) args[0]);
+                if (cached != null) {
+                    return track(PreparedStatement.class, cached.statement, cached, proxy);
+                }
+            }
+            Object result = invokePhysical(pooled.physical, method, args);
+            if (result instanceof Statement) {
+                return track(method.getReturnType(), (Statement) result, null, proxy);
+            }
+            return result;
+        }
+
+        private Object invokePhysical(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SQLException && isFatal((SQLException) cause)) {
+                    broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        private Object track(Class<?> type, Statement statement, CachedStatement cached, Object connectionProxy) {
+            StatementHandle handle = new StatementHandle(this, statement, cached, connectionProxy);
+            openStatements.add(handle);
+            return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, handle);
+        }
+
+        private void closeOpenStatements() {
+            for (StatementHandle handle : new ArrayList<>(openStatements)) {
+                statementsClosedOnRelease.incrementAndGet();
+                handle.closeLogically();
+            }
+        }
+
+        // SQLState class 08 means the connection itself is gone, so it must not go back to the pool.
+        private boolean isFatal(SQLException ex) {
+            String state = ex.getSQLState();
+            return state != null && state.startsWith("08");
+        }
+    }
+
+    // Closing a cached statement puts it back in the connection's cache; closing any other statement
+    // closes it for real. Either way the caller's reference is dead afterwards.
+    private class StatementHandle implements InvocationHandler {
+        private final Handle connection;
+        private final Statement statement;
+        private final CachedStatement cached;
+        private final Object connectionProxy;
+        private boolean closed;
+
+        StatementHandle(Handle connection, Statement statement, CachedStatement cached, Object connectionProxy) {
+            this.connection = connection;
+            this.statement = statement;
+            this.cached = cached;
+            this.connectionProxy = connectionProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    closeLogically();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connectionProxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledStatement[" + statement + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            return connection.invokePhysical(statement, method, args);
+        }
+
+        void closeLogically() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connection.openStatements.remove(this);
+            if (cached != null) {
+                connection.pooled.checkIn(cached);
+            } else {
+                closeQuietly(statement);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs blocking JDBC work on a bounded pool of worker threads and hands back CompletableFutures.
+// Tasks submitted with the same key while one is still running share that single execution.
+class DataAccessExecutor implements AutoCloseable {
+
+    interface SqlTask<T> {
+        T call() throws SQLException;
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final Map<String, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger coalescedCount = new AtomicInteger();
+
+    DataAccessExecutor() {
+        this(Integer.getInteger("timesheet.data.threads", 4), Integer.getInteger("timesheet.data.queueSize", 1_000));
+    }
+
+    DataAccessExecutor(int threads, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "data-access-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    <T> CompletableFuture<T> submit(SqlTask<T> task) {
+        return submit(null, task);
+    }
+
+    // A non-null key coalesces duplicate requests: while a task with that key is running, later
+    // submissions get a view of the same result instead of issuing the query again.
+    <T> CompletableFuture<T> submit(String key, SqlTask<T> task) {
+        if (key == null) {
+            return start(task, null).subscribe();
+        }
+        while (true) {
+            @SuppressWarnings("unchecked")
+            InFlight<T> existing = (InFlight<T>) inFlight.get(key);
+            if (existing != null) {
+                CompletableFuture<T> view = existing.trySubscribe();
+                if (view != null) {
+                    coalescedCount.incrementAndGet();
+                    return view;
+                }
+                inFlight.remove(key, existing);
+                continue;
+            }
+            InFlight<T> created = new InFlight<>();
+            if (inFlight.putIfAbsent(key, created) == null) {
+                return start(task, key, created).subscribe();
+            }
+        }
+    }
+
+    int getQueuedTaskCount() {
+        return workers.getQueue().size();
+    }
+
+    int getActiveTaskCount() {
+        return workers.getActiveCount();
+    }
+
+    int getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private <T> InFlight<T> start(SqlTask<T> task, String key) {
+        return start(task, key, new InFlight<>());
+    }
+
+    private <T> InFlight<T> start(SqlTask<T> task, String key, InFlight<T> flight) {
+        try {
+            flight.running = workers.submit(() -> {
+                try {
+                    flight.result.complete(task.call());
+                } catch (Throwable ex) {
+                    flight.result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            flight.result.completeExceptionally(new SQLException("Too many pending database requests", ex));
+        }
+        if (key != null) {
+            flight.result.whenComplete((value, error) -> inFlight.remove(key, flight));
+        }
+        return flight;
+    }
+
+    // Unwraps the CompletionException that CompletableFuture puts around task failures.
+    static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static class InFlight<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile Future<?> running;
+        private int subscribers;
+        private boolean abandoned;
+
+        // Every caller gets its own copy, so one window cancelling does not fail the others.
+        synchronized CompletableFuture<T> trySubscribe() {
+            if (abandoned || result.isDone()) {
+                return null;
+            }
+            return subscribe();
+        }
+
+        synchronized CompletableFuture<T> subscribe() {
+            subscribers++;
+            CompletableFuture<T> view = result.copy();
+            view.whenComplete((value, error) -> {
+                if (view.isCancelled()) {
+                    unsubscribe();
+                }
+            });
+            return view;
+        }
+
+        private synchronized void unsubscribe() {
+            if (--subscribers == 0 && !result.isDone()) {
+                abandoned = true;
+                Future<?> task = running;
+                if (task != null) {
+                    task.cancel(true);
+                }
+                result.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hands out pooled connections to the primary database and, when replica URLs are given, to read
+// replicas. Read-only work asks for getReadConnection: it goes to the least busy replica that is up
+// and no more than -Dtimesheet.db.maxReplicaLagMillis behind, else to the primary.
+//
+// Lag is measured with a heartbeat: every -Dtimesheet.db.replicaCheckMillis the primary's
+// replication_heartbeat row is stamped with the current time and each replica's copy is read back,
+// so a replica has everything committed before the stamp it returns. The same stamp gives
+// read-your-writes: writers call recordWrite(key) after committing, and reads for that key skip
+// replicas until one has caught up past the write. Stamps come from this process's clock, so
+// several application servers sharing a primary should keep their clocks in sync.
+class DatabaseManager {
+    private static final String HEARTBEAT_WRITE = "UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1";
+    private static final String HEARTBEAT_READ = "SELECT beat_at FROM replication_heartbeat WHERE id = 1";
+
+    private static class Replica {
+        final String url;
+        final ConnectionPool pool;
+        volatile boolean up;
+        // Heartbeat stamp last read from this replica; everything committed before it has arrived
+        volatile long caughtUpTo;
+        // SQLState of the last failure; the message may carry hosts and credentials, so it stays in the log
+        volatile String lastSqlState;
+        final LongAdder reads = new LongAdder();
+
+        Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Metrics metrics = new Metrics();
+    private final long maxReplicaLagMillis = Long.getLong("timesheet.db.maxReplicaLagMillis", 5_000);
+    private final long replicaCheckMillis = Long.getLong("timesheet.db.replicaCheckMillis", 1_000);
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private ScheduledExecutorService replicaMonitor;
+
+    public DatabaseManager(String dbUrl, String dbUsername, String dbPassword) {
+        this(dbUrl, dbUsername, dbPassword, ConnectionPool.Config.fromSystemProperties());
+    }
+
+    public DatabaseManager(String dbUrl, String dbUsername, String dbPassword, ConnectionPool.Config poolConfig) {
+        this(dbUrl, Collections.emptyList(), dbUsername, dbPassword, poolConfig);
+    }
+
+    // Replicas share the primary's credentials and pool settings, each with its own pool.
+    public DatabaseManager(String dbUrl, List<String> replicaUrls, String dbUsername, String dbPassword, ConnectionPool.Config poolConfig) {
+        this.pool = new ConnectionPool(dbUrl, dbUsername, dbPassword, poolConfig);
+        metrics.register("pool", pool::getStats);
+        for (String replicaUrl : replicaUrls) {
+            replicas.add(new Replica(replicaUrl, new ConnectionPool(replicaUrl, dbUsername, dbPassword, poolConfig)));
+        }
+        if (!replicas.isEmpty()) {
+            metrics.register("replicas", this::replicaStats);
+            replicaMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            replicaMonitor.scheduleWithFixedDelay(this::checkReplicas, replicaCheckMillis, replicaCheckMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Connections are pooled; closing the returned connection hands it back to the pool. The time
+    // spent waiting for one is charged to the operation running on this thread.
+    public Connection getConnection() throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return pool.getConnection();
+        } finally {
+            metrics.recordPoolWait(System.nanoTime() - started);
+        }
+    }
+
+    // For work that has somewhere else to go while the database is slow: waits at most timeoutMillis
+    // for a connection and, where the driver supports it, at most as long for any one reply, after
+    // which the driver closes the connection and fails with SQLState 08.
+    public Connection getConnection(long timeoutMillis) throws SQLException {
+        long started = System.nanoTime();
+        Connection conn;
+        try {
+            conn = pool.getConnection(timeoutMillis);
+        } finally {
+            metrics.recordPoolWait(System.nanoTime() - started);
+        }
+        try {
+            conn.setNetworkTimeout(Runnable::run, (int) Math.min(Integer.MAX_VALUE, timeoutMillis));
+        } catch (SQLFeatureNotSupportedException ex) {
+            // Only the lock wait timeout bounds it
+        } catch (SQLException | RuntimeException ex) {
+            conn.close();
+            throw ex;
+        }
+        return conn;
+    }
+
+    // A read-only connection, from a replica when one is fresh enough. With a consistency key the
+    // replica must also have caught up with the last recordWrite for that key; null accepts any
+    // replica within the lag limit. Falls back to the primary when no replica qualifies or the
+    // chosen one cannot hand out a connection.
+    public Connection getReadConnection(String consistencyKey) throws SQLException {
+        Replica replica = replicas.isEmpty() ? null : pickReplica(consistencyKey);
+        if (replica == null) {
+            primaryReads.increment();
+            return getConnection();
+        }
+        long started = System.nanoTime();
+        try {
+            Connection conn = replica.pool.getConnection();
+            try {
+                conn.setReadOnly(true);
+            } catch (SQLException ex) {
+                conn.close();
+                throw ex;
+            }
+            replica.reads.increment();
+            return conn;
+        } catch (SQLException ex) {
+            markDown(replica, ex);
+        } finally {
+            metrics.recordPoolWait(System.nanoTime() - started);
+        }
+        primaryReads.increment();
+        return getConnection();
+    }
+
+    // How far behind the primary a read from getReadConnection(null) may be right now: the oldest
+    // heartbeat among the replicas it could pick, 0 when reads go to the primary.
+    public long readLagMillis() {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (Replica replica : replicas) {
+            if (replica.up && replica.caughtUpTo >= now - maxReplicaLagMillis) {
+                lag = Math.max(lag, now - replica.caughtUpTo);
+            }
+        }
+        return lag;
+    }
+
+    // Call after committing a write that later reads under the same key must see.
+    public void recordWrite(String consistencyKey) {
+        if (!replicas.isEmpty()) {
+            lastWrites.put(consistencyKey, System.currentTimeMillis());
+        }
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    public void close() {
+        metrics.stopPeriodicDump();
+        if (replicaMonitor != null) {
+            replicaMonitor.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+        pool.close();
+    }
+
+    // Least active connections first; ties go round-robin so idle replicas share the load.
+    private Replica pickReplica(String consistencyKey) {
+        long now = System.currentTimeMillis();
+        Long written = consistencyKey == null ? null : lastWrites.get(consistencyKey);
+        long needed = Math.max(now - maxReplicaLagMillis, written == null ? 0 : written);
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        Replica best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.up || replica.caughtUpTo < needed) {
+                continue;
+            }
+            int active = replica.pool.getStats().active;
+            if (active < bestActive) {
+                best = replica;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    private void checkReplicas() {
+        long stamp = System.currentTimeMillis();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(HEARTBEAT_WRITE)) {
+            stmt.setLong(1, stamp);
+            stmt.executeUpdate();
+        } catch (SQLException ex) {
+            // Replicas are still judged by the last stamp that got through
+            System.err.println("Could not write the replication heartbeat: " + ex.getMessage());
+        }
+        for (Replica replica : replicas) {
+            try (Connection conn = replica.pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(HEARTBEAT_READ)) {
+                stmt.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(maxReplicaLagMillis)));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    replica.caughtUpTo = rs.next() ? rs.getLong(1) : 0;
+                }
+                if (!replica.up) {
+                    System.out.println("Read replica " + replica.url + " is available");
+                }
+                replica.up = true;
+                replica.lastSqlState = null;
+            } catch (SQLException ex) {
+                markDown(replica, ex);
+            }
+        }
+        // Any replica that qualifies at all has caught up past writes older than the lag limit
+        lastWrites.values().removeIf(written -> written < stamp - maxReplicaLagMillis);
+    }
+
+    private void markDown(Replica replica, SQLException ex) {
+        if (replica.up) {
+            System.err.println("Read replica " + replica.url + " is unavailable, reading from the primary: " + ex.getMessage());
+        }
+        replica.up = false;
+        replica.lastSqlState = ex.getSQLState() == null ? "unknown" : ex.getSQLState();
+    }
+
+    // Replicas by position in the configured list; their URLs are not for the metrics endpoint.
+    private String replicaStats() {
+        long now = System.currentTimeMillis();
+        StringBuilder stats = new StringBuilder("primaryReads=").append(primaryReads.sum());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            stats.append(", replica").append(i + 1).append(replica.up ? " up" : " down")
+                    .append(" lagMs=").append(replica.caughtUpTo == 0 ? "?" : String.valueOf(now - replica.caughtUpTo))
+                    .append(" reads=").append(replica.reads.sum());
+            if (replica.lastSqlState != null) {
+                stats.append(" sqlState=").append(replica.lastSqlState);
+            }
+        }
+        return stats.toString();
+    }
+}
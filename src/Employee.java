@@ -0,0 +1,23 @@
+class Employee {
+    private final String employeeId;
+    private final String name;
+    private final String department;
+
+    Employee(String employeeId, String name, String department) {
+        this.employeeId = employeeId;
+        this.name = name;
+        this.department = department;
+    }
+
+    String getEmployeeId() {
+        return employeeId;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getDepartment() {
+        return department;
+    }
+}
@@ -0,0 +1,105 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// SQL for the employees table. Methods take the caller's connection so they can share its
+// transaction; the SQL text is constant, so the pool's statement cache prepares each query once.
+class EmployeeDao {
+    static final String COLUMNS = "employee_id, name, department";
+
+    private static final String EXISTS = "SELECT 1 FROM employees WHERE employee_id = ?";
+    private static final String LOCK = "SELECT 1 FROM employees WHERE employee_id = ? FOR UPDATE";
+    private static final String FIND = "SELECT " + COLUMNS + " FROM employees WHERE employee_id = ?";
+    private static final String FIND_ALL = "SELECT " + COLUMNS + " FROM employees";
+    private static final String FIND_BY_DEPARTMENT = "SELECT " + COLUMNS + " FROM employees WHERE department = ? ORDER BY employee_id";
+    private static final String INSERT = "INSERT INTO employees (employee_id, name, department) VALUES (?, ?, ?)";
+    private static final String UPDATE = "UPDATE employees SET name = ?, department = ? WHERE employee_id = ?";
+    private static final String DELETE = "DELETE FROM employees WHERE employee_id = ?";
+
+    boolean exists(Connection conn, String employeeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(EXISTS)) {
+            stmt.setString(1, employeeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Locks the employee's row until the transaction ends, serializing that employee's punches
+    // across every connection and server. Returns false when there is no such employee.
+    boolean lock(Connection conn, String employeeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(LOCK)) {
+            stmt.setString(1, employeeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Null when no employee has that id.
+    Employee find(Connection conn, String employeeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND)) {
+            stmt.setString(1, employeeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? map(rs) : null;
+            }
+        }
+    }
+
+    List<Employee> findAll(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND_ALL);
+             ResultSet rs = stmt.executeQuery()) {
+            List<Employee> employees = new ArrayList<>();
+            while (rs.next()) {
+                employees.add(map(rs));
+            }
+            return employees;
+        }
+    }
+
+    List<Employee> findByDepartment(Connection conn, String department) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND_BY_DEPARTMENT)) {
+            stmt.setString(1, department);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<Employee> employees = new ArrayList<>();
+                while (rs.next()) {
+                    employees.add(map(rs));
+                }
+                return employees;
+            }
+        }
+    }
+
+    void insert(Connection conn, String employeeId, String name, String department) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT)) {
+            stmt.setString(1, employeeId);
+            stmt.setString(2, name);
+            stmt.setString(3, department);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Returns the number of rows changed, 0 when the employee does not exist.
+    int update(Connection conn, String employeeId, String name, String department) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(UPDATE)) {
+            stmt.setString(1, name);
+            stmt.setString(2, department);
+            stmt.setString(3, employeeId);
+            return stmt.executeUpdate();
+        }
+    }
+
+    int delete(Connection conn, String employeeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE)) {
+            stmt.setString(1, employeeId);
+            return stmt.executeUpdate();
+        }
+    }
+
+    static Employee map(ResultSet rs) throws SQLException {
+        return new Employee(rs.getString("employee_id"), rs.getString("name"), rs.getString("department"));
+    }
+}
@@ -0,0 +1,397 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide copy of the employees table: id -> employee for existence checks and lookups, and
+// department -> ids. Warmed up in the background at startup; until then, and for organisations
+// larger than -Dtimesheet.directory.maxEmployees, it is a read-through cache of at most that many
+// employees and misses go to the database. Once complete, the manager's grid is paged and searched
+// from memory through an EmployeeSearchIndex.
+//
+// The service updates it after every employee write it commits. Writes by other processes arrive
+// through the change feed every -Dtimesheet.directory.refreshMillis when that is enabled, otherwise
+// through a full reload every -Dtimesheet.directory.reloadMinutes. Only with the change feed does a
+// miss in a complete directory mean the employee does not exist; without it misses always go to the
+// database, and lookups re-read entries cached longer than -Dtimesheet.directory.entryTtlSeconds,
+// which is all that keeps an oversized directory's entries current.
+class EmployeeDirectory {
+
+    private final DatabaseManager dbManager;
+    private final EmployeeDao employees;
+    private final ChangeFeed changeFeed;
+    private final List<PageSource.SortKey<Employee>> searchColumns;
+    private final int maxEmployees = Integer.getInteger("timesheet.directory.maxEmployees", 200_000);
+    private final long refreshMillis = Long.getLong("timesheet.directory.refreshMillis", 2_000);
+    private final long reloadMinutes = Long.getLong("timesheet.directory.reloadMinutes", 10);
+    private final long entryTtlNanos = TimeUnit.SECONDS.toNanos(Long.getLong("timesheet.directory.entryTtlSeconds", 60));
+
+    private final Map<String, Employee> byId = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byDepartment = new ConcurrentHashMap<>();
+    private final Object searchIndexLock = new Object();
+    private volatile EmployeeSearchIndex searchIndex;
+    private final AtomicBoolean searchIndexRebuildQueued = new AtomicBoolean();
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder databaseReads = new LongAdder();
+    // When each entry was read, kept only without the change feed
+    private final Map<String, Long> readAt = new ConcurrentHashMap<>();
+    // Ids written while a reload was reading the table; re-read once it is done
+    private final Set<String> touchedDuringReload = ConcurrentHashMap.newKeySet();
+    private volatile boolean reloading;
+    private volatile boolean complete;
+    private boolean oversized;
+    private ChangeFeed.Cursor changes;
+    private volatile ScheduledExecutorService refresher;
+
+    // searchColumns are the columns the grid's filter prefix-matches.
+    EmployeeDirectory(DatabaseManager dbManager, EmployeeDao employees, ChangeFeed changeFeed, List<PageSource.SortKey<Employee>> searchColumns) {
+        this.dbManager = dbManager;
+        this.employees = employees;
+        this.changeFeed = changeFeed;
+        this.searchColumns = searchColumns;
+    }
+
+    synchronized void start() {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "employee-directory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.execute(this::reloadQuietly);
+        if (changeFeed.isEnabled()) {
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    applyChangeFeed();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            refresher.scheduleWithFixedDelay(this::reloadQuietly, reloadMinutes, reloadMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    // True once every employee is in memory.
+    boolean isComplete() {
+        return complete;
+    }
+
+    // Null when no employee has that id.
+    Employee find(String employeeId) throws SQLException {
+        Employee employee = byId.get(employeeId);
+        if (employee != null ? isFresh(employeeId) : complete && changeFeed.isEnabled()) {
+            hits.increment();
+            return employee;
+        }
+        databaseReads.increment();
+        try (Connection conn = dbManager.getConnection()) {
+            employee = employees.find(conn, employeeId);
+        }
+        if (employee == null) {
+            applyRemove(employeeId);
+        } else if (complete || byId.containsKey(employeeId) || byId.size() < maxEmployees) {
+            apply(employee);
+        }
+        return employee;
+    }
+
+    // The change feed keeps every entry current; without it an entry is trusted for entryTtlNanos.
+    private boolean isFresh(String employeeId) {
+        if (changeFeed.isEnabled()) {
+            return true;
+        }
+        Long at = readAt.get(employeeId);
+        return at != null && System.nanoTime() - at < entryTtlNanos;
+    }
+
+    boolean exists(String employeeId) throws SQLException {
+        return find(employeeId) != null;
+    }
+
+    // Without reading the database: false only when the directory knows the employee is gone.
+    boolean mayExist(String employeeId) {
+        return byId.containsKey(employeeId) || !(complete && changeFeed.isEnabled());
+    }
+
+    // Every employee, when complete; null otherwise so the caller reads the table itself.
+    List<Employee> all() {
+        return complete ? new ArrayList<>(byId.values()) : null;
+    }
+
+    // Employees of one department ordered by id; null unless complete.
+    List<Employee> inDepartment(String department) {
+        if (!complete) {
+            return null;
+        }
+        List<Employee> members = new ArrayList<>();
+        for (String employeeId : byDepartment.getOrDefault(department == null ? "" : department, Collections.emptySet())) {
+            Employee employee = byId.get(employeeId);
+            // A concurrent move to another department may not have left this index yet
+            if (employee != null && Objects.equals(employee.getDepartment(), department)) {
+                members.add(employee);
+            }
+        }
+        // Ignoring case, like ORDER BY employee_id under the default collation
+        members.sort(Comparator.comparing(Employee::getEmployeeId, String.CASE_INSENSITIVE_ORDER));
+        return members;
+    }
+
+    // Call after committing an insert or update.
+    void put(Employee employee) {
+        if (reloading) {
+            touchedDuringReload.add(employee.getEmployeeId());
+        }
+        apply(employee);
+    }
+
+    // Call after committing a delete.
+    void remove(String employeeId) {
+        if (reloading) {
+            touchedDuringReload.add(employeeId);
+        }
+        applyRemove(employeeId);
+    }
+
+    private void apply(Employee employee) {
+        if (!changeFeed.isEnabled()) {
+            readAt.put(employee.getEmployeeId(), System.nanoTime());
+        }
+        Employee previous = byId.put(employee.getEmployeeId(), employee);
+        if (previous != null && sameEmployee(previous, employee)) {
+            // Re-read but unchanged, like our own write coming back through the change feed: keep the search index
+            return;
+        }
+        if (previous != null && !sameDepartment(previous, employee)) {
+            removeFromDepartment(previous);
+        }
+        byDepartment.computeIfAbsent(departmentKey(employee), k -> ConcurrentHashMap.newKeySet()).add(employee.getEmployeeId());
+        version.incrementAndGet();
+        rebuildSearchIndexLater();
+    }
+
+    private void applyRemove(String employeeId) {
+        readAt.remove(employeeId);
+        Employee previous = byId.remove(employeeId);
+        if (previous != null) {
+            removeFromDepartment(previous);
+            version.incrementAndGet();
+            rebuildSearchIndexLater();
+        }
+    }
+
+    // Re-reads the given ids from the database (for changes made elsewhere) and returns what was
+    // found; ids missing from the result no longer exist.
+    Map<String, Employee> refresh(Collection<String> employeeIds) throws SQLException {
+        Map<String, Employee> found = new LinkedHashMap<>();
+        try (Connection conn = dbManager.getConnection()) {
+            for (String employeeId : employeeIds) {
+                Employee employee = employees.find(conn, employeeId);
+                if (employee == null) {
+                    applyRemove(employeeId);
+                } else {
+                    found.put(employeeId, employee);
+                    if (complete || byId.containsKey(employeeId) || byId.size() < maxEmployees) {
+                        apply(employee);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Keyset pages of the directory in the same order JdbcPageSource would give, with the filter
+    // prefix-matched against the search columns through the search index; falls back to the
+    // database source until the directory is complete.
+    PageSource<Employee> pages(PageSource<Employee> database) {
+        return new PageSource<Employee>() {
+            @Override
+            public int count(Query<Employee> query) throws SQLException {
+                return complete ? searchIndex().count(query) : database.count(query);
+            }
+
+            @Override
+            public List<Employee> fetch(Query<Employee> query, Employee after, int offset, int limit) throws SQLException {
+                return complete ? searchIndex().fetch(query, after, offset, limit) : database.fetch(query, after, offset, limit);
+            }
+
+            @Override
+            public SortKey<Employee> getUniqueKey() {
+                return database.getUniqueKey();
+            }
+
+            @Override
+            public boolean matches(Query<Employee> query, Employee row) {
+                return database.matches(query, row);
+            }
+        };
+    }
+
+    String getStats() {
+        return String.format("employees=%d departments=%d complete=%s hits=%d databaseReads=%d",
+                byId.size(), byDepartment.size(), complete, hits.sum(), databaseReads.sum());
+    }
+
+    // Rebuilt after employees changed, on the refresher thread once the index has been used, else on
+    // first use; searches in between share one snapshot.
+    private EmployeeSearchIndex searchIndex() {
+        EmployeeSearchIndex index = searchIndex;
+        if (index != null && index.version == version.get()) {
+            return index;
+        }
+        synchronized (searchIndexLock) {
+            long current = version.get();
+            index = searchIndex;
+            if (index == null || index.version != current) {
+                index = new EmployeeSearchIndex(current, byId.values(), searchColumns);
+                searchIndex = index;
+            }
+            return index;
+        }
+    }
+
+    // Keeps type-ahead from paying for the rebuild; bursts of changes share one rebuild.
+    private void rebuildSearchIndexLater() {
+        ScheduledExecutorService executor = refresher;
+        if (searchIndex == null || executor == null || !searchIndexRebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                searchIndexRebuildQueued.set(false);
+                if (complete) {
+                    searchIndex();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Stopped; the next search rebuilds it
+            searchIndexRebuildQueued.set(false);
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    // Loads the whole table when it fits under maxEmployees; otherwise leaves the read-through cache as is.
+    synchronized void reload() throws SQLException {
+        reloading = true;
+        touchedDuringReload.clear();
+        try {
+            List<Employee> loaded;
+            // Read before the table, so a change landing in between is applied again rather than missed
+            long changeId = changeFeed.isEnabled() ? changeFeed.latestChangeId() : 0;
+            try (Connection conn = dbManager.getConnection()) {
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM employees")) {
+                    rs.next();
+                    long count = rs.getLong(1);
+                    if (count > maxEmployees) {
+                        if (!oversized) {
+                            System.out.println("Employee directory: " + count + " employees exceed timesheet.directory.maxEmployees="
+                                    + maxEmployees + ", caching only recently used ones");
+                        }
+                        oversized = true;
+                        complete = false;
+                        followFrom(changeId);
+                        return;
+                    }
+                }
+                loaded = employees.findAll(conn);
+            }
+            oversized = false;
+            Set<String> loadedIds = new HashSet<>();
+            for (Employee employee : loaded) {
+                loadedIds.add(employee.getEmployeeId());
+                apply(employee);
+            }
+            for (String employeeId : byId.keySet()) {
+                if (!loadedIds.contains(employeeId)) {
+                    applyRemove(employeeId);
+                }
+            }
+            followFrom(changeId);
+            complete = true;
+        } finally {
+            reloading = false;
+        }
+        // A write committed while the table was being read may or may not be in what was loaded
+        if (!touchedDuringReload.isEmpty()) {
+            refresh(new ArrayList<>(touchedDuringReload));
+        }
+    }
+
+    private void followFrom(long changeId) throws SQLException {
+        if (changeFeed.isEnabled()) {
+            changes = changeFeed.cursor("employees", changeId);
+        }
+    }
+
+    private synchronized void applyChangeFeed() throws SQLException {
+        if (changes == null) {
+            // Not loaded yet
+            return;
+        }
+        List<ChangeFeed.Change> batch;
+        while (!(batch = changeFeed.poll(changes, 1_000)).isEmpty()) {
+            Set<String> keys = new LinkedHashSet<>();
+            for (ChangeFeed.Change change : batch) {
+                keys.add(change.rowKey);
+            }
+            refresh(keys);
+        }
+    }
+
+    private void removeFromDepartment(Employee employee) {
+        Set<String> members = byDepartment.get(departmentKey(employee));
+        if (members != null) {
+            members.remove(employee.getEmployeeId());
+        }
+    }
+
+    // ConcurrentHashMap takes no null keys; employees without a department are indexed under "".
+    private static String departmentKey(Employee employee) {
+        return employee.getDepartment() == null ? "" : employee.getDepartment();
+    }
+
+    private static boolean sameDepartment(Employee a, Employee b) {
+        return departmentKey(a).equals(departmentKey(b));
+    }
+
+    private static boolean sameEmployee(Employee a, Employee b) {
+        return Objects.equals(a.getName(), b.getName()) && Objects.equals(a.getDepartment(), b.getDepartment());
+    }
+}
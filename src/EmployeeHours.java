@@ -0,0 +1,17 @@
+class EmployeeHours {
+    private final String employeeId;
+    private final double totalHours;
+
+    EmployeeHours(String employeeId, double totalHours) {
+        this.employeeId = employeeId;
+        this.totalHours = totalHours;
+    }
+
+    String getEmployeeId() {
+        return employeeId;
+    }
+
+    double getTotalHours() {
+        return totalHours;
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Prefix search over one snapshot of the employee directory, for the manager grid's type-ahead.
+// Every employee gets a slot. Each filter column keeps the slots ordered by that column's value,
+// case-folded, so the employees whose value starts with a prefix form one run found by binary
+// search. Each sort order keeps slot -> rank, so a search turns into a bitset in display order:
+// counting is a popcount and a page is a walk over set bits from the anchor, with no sorting or
+// copying of rows per keystroke. Prefixes match the way JdbcPageSource.matches does, and rows sort
+// ignoring case, as the database's default collation does, so paging here and in SQL agree.
+//
+// Immutable apart from lazily built sort orders and the last search; the directory builds a new
+// one after employees change.
+class EmployeeSearchIndex {
+
+    // A folded column value and the slot it came from; sorts by value.
+    private static class Slotted implements Comparable<Slotted> {
+        final String folded;
+        final int slot;
+
+        Slotted(String folded, int slot) {
+            this.folded = folded;
+            this.slot = slot;
+        }
+
+        @Override
+        public int compareTo(Slotted other) {
+            return folded.compareTo(other.folded);
+        }
+    }
+
+    // A row with its sort key value read out once, so sorting does not go through the employee.
+    private static class Keyed implements Comparable<Keyed> {
+        final String key;
+        final String employeeId;
+        final int slot;
+
+        Keyed(String key, String employeeId, int slot) {
+            this.key = key;
+            this.employeeId = employeeId;
+            this.slot = slot;
+        }
+
+        // Same order as comparator()
+        @Override
+        public int compareTo(Keyed other) {
+            return compare(key, employeeId, other.key, other.employeeId);
+        }
+    }
+
+    // Employees in one sort order, and each slot's position in it.
+    private static class Order {
+        final Employee[] rows;
+        final int[] rankOfSlot;
+
+        Order(Employee[] rows, int[] rankOfSlot) {
+            this.rows = rows;
+            this.rankOfSlot = rankOfSlot;
+        }
+    }
+
+    // Ranks matching a filter under one sort order; the grid asks for the count and then for
+    // several pages of the same search.
+    private static class Match {
+        final String filter;
+        final PageSource.SortKey<Employee> sortKey;
+        final BitSet ranks;
+        final int count;
+
+        Match(String filter, PageSource.SortKey<Employee> sortKey, BitSet ranks) {
+            this.filter = filter;
+            this.sortKey = sortKey;
+            this.ranks = ranks;
+            this.count = ranks.cardinality();
+        }
+    }
+
+    final long version;
+    private final Employee[] employees;
+    private final List<PageSource.SortKey<Employee>> filterColumns;
+    // Per filter column: its non-null values, case-folded and sorted, and the slot of each
+    private final String[][] columnValues;
+    private final int[][] columnSlots;
+    private final Map<PageSource.SortKey<Employee>, Order> orders = new ConcurrentHashMap<>();
+    private volatile Match lastMatch;
+
+    EmployeeSearchIndex(long version, Collection<Employee> snapshot, List<PageSource.SortKey<Employee>> filterColumns) {
+        this.version = version;
+        this.employees = snapshot.toArray(new Employee[0]);
+        this.filterColumns = filterColumns;
+        this.columnValues = new String[filterColumns.size()][];
+        this.columnSlots = new int[filterColumns.size()][];
+        for (int column = 0; column < filterColumns.size(); column++) {
+            PageSource.SortKey<Employee> key = filterColumns.get(column);
+            Slotted[] values = new Slotted[employees.length];
+            int size = 0;
+            for (int slot = 0; slot < employees.length; slot++) {
+                Object value = key.valueOf.apply(employees[slot]);
+                if (value != null) {
+                    values[size++] = new Slotted(fold(value.toString()), slot);
+                }
+            }
+            Arrays.parallelSort(values, 0, size);
+            columnValues[column] = new String[size];
+            columnSlots[column] = new int[size];
+            for (int i = 0; i < size; i++) {
+                columnValues[column][i] = values[i].folded;
+                columnSlots[column][i] = values[i].slot;
+            }
+        }
+    }
+
+    int size() {
+        return employees.length;
+    }
+
+    int count(PageSource.Query<Employee> query) {
+        return query.filter == null ? employees.length : match(query).count;
+    }
+
+    // Same contract as PageSource.fetch.
+    List<Employee> fetch(PageSource.Query<Employee> query, Employee after, int offset, int limit) {
+        Order order = order(query.sortKey);
+        BitSet ranks = query.filter == null ? null : match(query).ranks;
+        int rank;
+        if (after == null) {
+            rank = query.ascending ? 0 : employees.length - 1;
+        } else {
+            // First rank strictly after the anchor in query order; the anchor may have been removed since
+            int position = Arrays.binarySearch(order.rows, after, comparator(query.sortKey));
+            if (position >= 0) {
+                rank = query.ascending ? position + 1 : position - 1;
+            } else {
+                int insertion = -position - 1;
+                rank = query.ascending ? insertion : insertion - 1;
+            }
+        }
+        int skip = after == null ? offset : 0;
+        List<Employee> page = new ArrayList<>(Math.min(limit, employees.length));
+        if (ranks == null) {
+            rank += query.ascending ? skip : -skip;
+            for (; rank >= 0 && rank < employees.length && page.size() < limit; rank += query.ascending ? 1 : -1) {
+                page.add(order.rows[rank]);
+            }
+            return page;
+        }
+        while (rank >= 0 && rank < employees.length && page.size() < limit) {
+            rank = query.ascending ? ranks.nextSetBit(rank) : ranks.previousSetBit(rank);
+            if (rank < 0) {
+                break;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                page.add(order.rows[rank]);
+            }
+            rank += query.ascending ? 1 : -1;
+        }
+        return page;
+    }
+
+    // Sort key value, nulls first as in SQL ascending order, then employee id, both ignoring case.
+    static Comparator<Employee> comparator(PageSource.SortKey<Employee> sortKey) {
+        return (a, b) -> compare((String) sortKey.valueOf.apply(a), a.getEmployeeId(), (String) sortKey.valueOf.apply(b), b.getEmployeeId());
+    }
+
+    // Ids equal but for case cannot both exist under a case-insensitive key; the last comparison
+    // only keeps the order total where they can.
+    private static int compare(String key, String employeeId, String otherKey, String otherEmployeeId) {
+        int result = key == null ? (otherKey == null ? 0 : -1) : otherKey == null ? 1 : String.CASE_INSENSITIVE_ORDER.compare(key, otherKey);
+        if (result == 0) {
+            result = String.CASE_INSENSITIVE_ORDER.compare(employeeId, otherEmployeeId);
+        }
+        return result != 0 ? result : employeeId.compareTo(otherEmployeeId);
+    }
+
+    private Match match(PageSource.Query<Employee> query) {
+        Match match = lastMatch;
+        if (match != null && match.filter.equals(query.filter) && match.sortKey == query.sortKey) {
+            return match;
+        }
+        Order order = order(query.sortKey);
+        BitSet ranks = new BitSet(employees.length);
+        String prefix = fold(query.filter);
+        // Every value starting with the prefix sorts between it and the prefix followed by the last char
+        String end = prefix + Character.MAX_VALUE;
+        for (int column = 0; column < filterColumns.size(); column++) {
+            String[] values = columnValues[column];
+            int[] slots = columnSlots[column];
+            for (int i = lowerBound(values, prefix), last = lowerBound(values, end); i < last; i++) {
+                ranks.set(order.rankOfSlot[slots[i]]);
+            }
+        }
+        match = new Match(query.filter, query.sortKey, ranks);
+        lastMatch = match;
+        return match;
+    }
+
+    private Order order(PageSource.SortKey<Employee> sortKey) {
+        return orders.computeIfAbsent(sortKey, key -> {
+            Keyed[] keyed = new Keyed[employees.length];
+            for (int slot = 0; slot < employees.length; slot++) {
+                keyed[slot] = new Keyed((String) key.valueOf.apply(employees[slot]), employees[slot].getEmployeeId(), slot);
+            }
+            Arrays.parallelSort(keyed);
+            Employee[] rows = new Employee[keyed.length];
+            int[] rankOfSlot = new int[keyed.length];
+            for (int rank = 0; rank < keyed.length; rank++) {
+                rows[rank] = employees[keyed[rank].slot];
+                rankOfSlot[keyed[rank].slot] = rank;
+            }
+            return new Order(rows, rankOfSlot);
+        });
+    }
+
+    // First index whose value is not before the prefix; every value starting with it follows.
+    private static int lowerBound(String[] values, String prefix) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Case folding as String.regionMatches(true, ...) applies it, char by char; most ids come back as is.
+    static String fold(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.toLowerCase(Character.toUpperCase(c)) != c) {
+                char[] folded = value.toCharArray();
+                for (int j = i; j < folded.length; j++) {
+                    folded[j] = Character.toLowerCase(Character.toUpperCase(folded[j]));
+                }
+                return new String(folded);
+            }
+        }
+        return value;
+    }
+}
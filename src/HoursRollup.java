@@ -0,0 +1,385 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Per-employee worked minutes pre-aggregated by day, week (starting Monday) and month, so reports
+// read a few rollup rows instead of summing the whole timesheet table. A shift counts towards the
+// day it started on, which keeps the totals equal to SUM(TIMESTAMPDIFF(...)) over the raw rows.
+//
+// Increments run in the punch's own transaction, after its timesheet write. A rebuild first locks the
+// day rows it recomputes with SELECT ... FOR UPDATE (on MySQL that includes the gaps where new rows
+// would go), then reads the shifts and writes the totals in the same transaction, so a punch in any
+// process either commits before the rebuild reads the shifts or waits for it to commit and adds its
+// minutes on top; neither can lose the other's.
+class HoursRollup {
+    static final String DAY = "D";
+    static final String WEEK = "W";
+    static final String MONTH = "M";
+
+    private final DatabaseManager dbManager;
+    private final int reconcileDays;
+    private final long reconcileIntervalMinutes;
+    private volatile boolean backfilled;
+    private ScheduledExecutorService scheduler;
+
+    HoursRollup(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.reconcileDays = Integer.getInteger("timesheet.rollup.reconcileDays", 2);
+        this.reconcileIntervalMinutes = Long.getLong("timesheet.rollup.reconcileMinutes", 60);
+    }
+
+    // Backfills the rollup table from existing history unless a backfill has completed before, then
+    // periodically reconciles the most recent days against the timesheet table.
+    synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hours-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> {
+            try {
+                backfillIfNeeded();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                LocalDate today = LocalDate.now();
+                rebuild(today.minusDays(reconcileDays), today.plusDays(1));
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }, reconcileIntervalMinutes, reconcileIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // True once the rollups cover all history; until then reports read the timesheet table directly.
+    boolean isReady() {
+        return backfilled;
+    }
+
+    // Adds one finished shift to its day, week and month rows, inside the caller's transaction.
+    void add(Connection conn, String employeeId, LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
+        long minutes = Duration.between(startTime, endTime).toMinutes();
+        LocalDate day = startTime.toLocalDate();
+        String sql = "INSERT INTO hours_rollup (period_type, period_start, employee_id, minutes, entries) VALUES (?, ?, ?, ?, 1) "
+                + "ON DUPLICATE KEY UPDATE minutes = minutes + VALUES(minutes), entries = entries + 1";
+        // Day, week, month: the order a rebuild locks them in
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            addBatch(stmt, DAY, day, employeeId, minutes);
+            addBatch(stmt, WEEK, weekStart(day), employeeId, minutes);
+            addBatch(stmt, MONTH, day.withDayOfMonth(1), employeeId, minutes);
+            stmt.executeBatch();
+        }
+    }
+
+    // Same as add for a batch of finished shifts: rows hitting the same period and employee are
+    // summed first, so a bulk import issues one upsert per rollup row rather than three per shift.
+    void addAll(Connection conn, List<TimesheetEntry> entries) throws SQLException {
+        Map<String, long[]> totals = new HashMap<>();
+        for (TimesheetEntry entry : entries) {
+            long minutes = Duration.between(entry.getStartTime(), entry.getEndTime()).toMinutes();
+            LocalDate day = entry.getStartTime().toLocalDate();
+            accumulate(totals, DAY, day, entry.getEmployeeId(), minutes);
+            accumulate(totals, WEEK, weekStart(day), entry.getEmployeeId(), minutes);
+            accumulate(totals, MONTH, day.withDayOfMonth(1), entry.getEmployeeId(), minutes);
+        }
+        String sql = "INSERT INTO hours_rollup (period_type, period_start, employee_id, minutes, entries) VALUES (?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE minutes = minutes + VALUES(minutes), entries = entries + VALUES(entries)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, long[]> total : totals.entrySet()) {
+                String[] key = total.getKey().split("\\|", 3);
+                stmt.setString(1, key[0]);
+                stmt.setObject(2, LocalDate.parse(key[1]));
+                stmt.setString(3, key[2]);
+                stmt.setLong(4, total.getValue()[0]);
+                stmt.setLong(5, total.getValue()[1]);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void accumulate(Map<String, long[]> totals, String periodType, LocalDate periodStart, String employeeId, long minutes) {
+        long[] total = totals.computeIfAbsent(periodType + "|" + periodStart + "|" + employeeId, k -> new long[2]);
+        total[0] += minutes;
+        total[1]++;
+    }
+
+    // Total hours per employee for shifts starting between from and to (both inclusive, either may be
+    // null for an open range), optionally limited to one department. Whole months inside the range
+    // are read from month rows and only the ragged ends from day rows.
+    List<EmployeeHours> report(LocalDate from, LocalDate to, String department) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT r.employee_id, SUM(r.minutes) / 60.0 AS total_hours FROM hours_rollup r");
+        List<Object> parameters = new ArrayList<>();
+        if (department != null) {
+            sql.append(" JOIN employees e ON e.employee_id = r.employee_id AND e.department = ?");
+            parameters.add(department);
+        }
+
+        LocalDate firstDay = from;
+        LocalDate endExclusive = to == null ? null : to.plusDays(1);
+        LocalDate firstFullMonth = from == null ? null : (from.getDayOfMonth() == 1 ? from : from.with(TemporalAdjusters.firstDayOfNextMonth()));
+        LocalDate afterLastFullMonth = endExclusive == null ? null : endExclusive.withDayOfMonth(1);
+        if (firstFullMonth != null && afterLastFullMonth != null && firstFullMonth.isAfter(afterLastFullMonth)) {
+            // Range lies inside a single month: day rows only
+            firstFullMonth = afterLastFullMonth;
+        }
+
+        List<String> ranges = new ArrayList<>();
+        ranges.add("(r.period_type = 'M'" + bounds(firstFullMonth, afterLastFullMonth, parameters) + ")");
+        if (firstDay != null && firstFullMonth != null && firstDay.isBefore(firstFullMonth)) {
+            ranges.add("(r.period_type = 'D'" + bounds(firstDay, firstFullMonth, parameters) + ")");
+        }
+        if (endExclusive != null && afterLastFullMonth != null && afterLastFullMonth.isBefore(endExclusive)) {
+            LocalDate tailStart = firstDay != null && firstDay.isAfter(afterLastFullMonth) ? firstDay : afterLastFullMonth;
+            ranges.add("(r.period_type = 'D'" + bounds(tailStart, endExclusive, parameters) + ")");
+        }
+        sql.append(" WHERE (").append(String.join(" OR ", ranges)).append(") GROUP BY r.employee_id ORDER BY r.employee_id");
+
+        try (Connection conn = dbManager.getReadConnection(null)) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    stmt.setObject(i + 1, parameters.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    List<EmployeeHours> report = new ArrayList<>();
+                    while (rs.next()) {
+                        report.add(new EmployeeHours(rs.getString("employee_id"), rs.getDouble("total_hours")));
+                    }
+                    return report;
+                }
+            }
+        }
+    }
+
+    // Recomputes the day rows for shifts starting in [from, toExclusive) from the timesheet table, then
+    // the week and month rows that contain those days. Runs one month per transaction to bound memory,
+    // and so a long backfill only briefly holds up punches.
+    void rebuild(LocalDate from, LocalDate toExclusive) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                LocalDate chunkStart = from;
+                while (chunkStart.isBefore(toExclusive)) {
+                    LocalDate nextMonth = chunkStart.with(TemporalAdjusters.firstDayOfNextMonth());
+                    LocalDate chunkEnd = nextMonth.isBefore(toExclusive) ? nextMonth : toExclusive;
+                    rebuildDays(conn, chunkStart, chunkEnd);
+                    rebuildFromDays(conn, WEEK, weekStart(chunkStart), weekStart(chunkEnd.minusDays(1)).plusWeeks(1));
+                    rebuildFromDays(conn, MONTH, chunkStart.withDayOfMonth(1), nextMonth);
+                    conn.commit();
+                    chunkStart = chunkEnd;
+                }
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Rows in hours_rollup prove nothing: punches add them from the start, and a backfill interrupted
+    // half way leaves some behind. Only the marker written after the last month says it is complete.
+    private void backfillIfNeeded() throws SQLException {
+        LocalDate first;
+        LocalDate last;
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                ResultSet state = stmt.executeQuery("SELECT backfilled_at FROM hours_rollup_state WHERE id = 1");
+                if (state.next() && state.getTimestamp(1) != null) {
+                    backfilled = true;
+                    return;
+                }
+                ResultSet range = stmt.executeQuery("SELECT MIN(first_start), MAX(last_start) FROM ("
+                        + "SELECT MIN(start_time) AS first_start, MAX(start_time) AS last_start FROM timesheet WHERE end_time IS NOT NULL "
+                        + "UNION ALL SELECT MIN(start_time), MAX(start_time) FROM " + PayPeriodArchive.ARCHIVE_TABLE + ") r");
+                range.next();
+                Timestamp min = range.getTimestamp(1);
+                Timestamp max = range.getTimestamp(2);
+                if (min == null) {
+                    markBackfilled();
+                    return;
+                }
+                first = min.toLocalDateTime().toLocalDate();
+                last = max.toLocalDateTime().toLocalDate();
+            }
+        }
+        rebuild(first, last.plusDays(1));
+        markBackfilled();
+    }
+
+    private void markBackfilled() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE hours_rollup_state SET backfilled_at = CURRENT_TIMESTAMP WHERE id = 1");
+        }
+        backfilled = true;
+    }
+
+    private void rebuildDays(Connection conn, LocalDate from, LocalDate toExclusive) throws SQLException {
+        // Locked before the shifts are read: a punch still holding one of these rows commits first and
+        // is read, any later one waits. Archived pay periods count too, or a rebuild of old days would drop them.
+        Map<String, long[]> existing = lockRows(conn, DAY, from, toExclusive);
+        Map<String, long[]> totals = new HashMap<>();
+        sumShifts(conn, "SELECT employee_id, start_time, end_time FROM timesheet "
+                + "WHERE start_time >= ? AND start_time < ? AND end_time IS NOT NULL", from, toExclusive, totals);
+        sumShifts(conn, "SELECT employee_id, start_time, end_time FROM " + PayPeriodArchive.ARCHIVE_TABLE
+                + " WHERE start_time >= ? AND start_time < ?", from, toExclusive, totals);
+        replace(conn, DAY, existing, totals);
+    }
+
+    private static void sumShifts(Connection conn, String select, LocalDate from, LocalDate toExclusive, Map<String, long[]> totals) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(select)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+            stmt.setTimestamp(2, Timestamp.valueOf(toExclusive.atStartOfDay()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDateTime start = rs.getTimestamp("start_time").toLocalDateTime();
+                    LocalDateTime end = rs.getTimestamp("end_time").toLocalDateTime();
+                    long[] total = totals.computeIfAbsent(rs.getString("employee_id") + "|" + start.toLocalDate(), k -> new long[2]);
+                    total[0] += Duration.between(start, end).toMinutes();
+                    total[1]++;
+                }
+            }
+        }
+    }
+
+    private void rebuildFromDays(Connection conn, String periodType, LocalDate from, LocalDate toExclusive) throws SQLException {
+        Map<String, long[]> totals = new HashMap<>();
+        // A week can reach into days outside the range being rebuilt; locking them holds off punches there too
+        String select = "SELECT employee_id, period_start, minutes, entries FROM hours_rollup "
+                + "WHERE period_type = 'D' AND period_start >= ? AND period_start < ? FOR UPDATE";
+        try (PreparedStatement stmt = conn.prepareStatement(select)) {
+            stmt.setObject(1, from);
+            stmt.setObject(2, toExclusive);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate day = rs.getObject("period_start", LocalDate.class);
+                    LocalDate periodStart = periodType.equals(WEEK) ? weekStart(day) : day.withDayOfMonth(1);
+                    long[] total = totals.computeIfAbsent(rs.getString("employee_id") + "|" + periodStart, k -> new long[2]);
+                    total[0] += rs.getLong("minutes");
+                    total[1] += rs.getLong("entries");
+                }
+            }
+        }
+        replace(conn, periodType, lockRows(conn, periodType, from, toExclusive), totals);
+    }
+
+    // Current rows of one period type in [from, toExclusive) by "employeeId|periodStart", locked until the commit.
+    private static Map<String, long[]> lockRows(Connection conn, String periodType, LocalDate from, LocalDate toExclusive) throws SQLException {
+        Map<String, long[]> rows = new HashMap<>();
+        try (PreparedStatement select = conn.prepareStatement("SELECT employee_id, period_start, minutes, entries FROM hours_rollup "
+                + "WHERE period_type = ? AND period_start >= ? AND period_start < ? FOR UPDATE")) {
+            select.setString(1, periodType);
+            select.setObject(2, from);
+            select.setObject(3, toExclusive);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getString("employee_id") + "|" + rs.getObject("period_start", LocalDate.class),
+                            new long[]{rs.getLong("minutes"), rs.getLong("entries")});
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Brings the locked rows of one period type in line with the given totals. Rows are updated in
+    // place rather than deleted and re-inserted, so a punch waiting on one of them adds its minutes to
+    // the rebuilt total once the rebuild commits.
+    private static void replace(Connection conn, String periodType, Map<String, long[]> existing, Map<String, long[]> totals) throws SQLException {
+        Map<String, long[]> changed = new HashMap<>(totals);
+        List<String> stale = new ArrayList<>();
+        for (Map.Entry<String, long[]> row : existing.entrySet()) {
+            long[] total = changed.get(row.getKey());
+            if (total == null) {
+                stale.add(row.getKey());
+            } else if (Arrays.equals(total, row.getValue())) {
+                changed.remove(row.getKey());
+            }
+        }
+        try (PreparedStatement delete = conn.prepareStatement(
+                "DELETE FROM hours_rollup WHERE period_type = ? AND period_start = ? AND employee_id = ?")) {
+            for (String key : stale) {
+                setKey(delete, 1, periodType, key);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+        // Upserts, since a row may have been added after it was read where the database takes no range locks
+        try (PreparedStatement upsert = conn.prepareStatement(
+                "INSERT INTO hours_rollup (period_type, period_start, employee_id, minutes, entries) VALUES (?, ?, ?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE minutes = VALUES(minutes), entries = VALUES(entries)")) {
+            int batched = 0;
+            for (Map.Entry<String, long[]> entry : changed.entrySet()) {
+                setKey(upsert, 1, periodType, entry.getKey());
+                upsert.setLong(4, entry.getValue()[0]);
+                upsert.setLong(5, entry.getValue()[1]);
+                upsert.addBatch();
+                if (++batched % 500 == 0) {
+                    upsert.executeBatch();
+                }
+            }
+            upsert.executeBatch();
+        }
+    }
+
+    // Binds period_type, period_start and employee_id from an "employeeId|periodStart" key.
+    private static void setKey(PreparedStatement stmt, int index, String periodType, String key) throws SQLException {
+        int separator = key.lastIndexOf('|');
+        stmt.setString(index, periodType);
+        stmt.setObject(index + 1, LocalDate.parse(key.substring(separator + 1)));
+        stmt.setString(index + 2, key.substring(0, separator));
+    }
+
+    private static void addBatch(PreparedStatement stmt, String periodType, LocalDate periodStart, String employeeId, long minutes) throws SQLException {
+        stmt.setString(1, periodType);
+        stmt.setObject(2, periodStart);
+        stmt.setString(3, employeeId);
+        stmt.setLong(4, minutes);
+        stmt.addBatch();
+    }
+
+    private static String bounds(LocalDate from, LocalDate toExclusive, List<Object> parameters) {
+        StringBuilder sql = new StringBuilder();
+        if (from != null) {
+            sql.append(" AND r.period_start >= ?");
+            parameters.add(from);
+        }
+        if (toExclusive != null) {
+            sql.append(" AND r.period_start < ?");
+            parameters.add(toExclusive);
+        }
+        return sql.toString();
+    }
+
+    static LocalDate weekStart(LocalDate day) {
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+}
@@ -0,0 +1,184 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Keyset-paginated reads from one table: each page continues after the last row of the previous
+// one, so the database seeks on the index instead of skipping over OFFSET rows. When the unique key
+// is unique only in practice, a tie-breaker column (normally the primary key) makes the order total,
+// so rows sharing a key value are neither skipped nor repeated at a page boundary.
+class JdbcPageSource<R> implements PageSource<R> {
+
+    interface RowMapper<R> {
+        R map(ResultSet rs) throws SQLException;
+    }
+
+    private final DatabaseManager dbManager;
+    private final String consistencyKey;
+    private final String selectList;
+    private final String table;
+    private final String baseCondition;
+    private final List<Object> baseParameters;
+    private final SortKey<R> uniqueKey;
+    private final SortKey<R> tieBreaker;
+    private final List<SortKey<R>> filterColumns;
+    private final RowMapper<R> rowMapper;
+    private final Metrics.Operation metrics;
+
+    // baseCondition may be null; filter text is prefix-matched against every filterColumn. Counts and
+    // pages are recorded under the given metrics operation. Reads may be served by a replica that has
+    // caught up with the last write recorded under consistencyKey.
+    JdbcPageSource(DatabaseManager dbManager, String consistencyKey, String selectList, String table, String baseCondition, List<Object> baseParameters,
+                   SortKey<R> uniqueKey, List<SortKey<R>> filterColumns, RowMapper<R> rowMapper, Metrics.Operation metrics) {
+        this(dbManager, consistencyKey, selectList, table, baseCondition, baseParameters, uniqueKey, null, filterColumns, rowMapper, metrics);
+    }
+
+    // tieBreaker may be null when uniqueKey is enforced by the table.
+    JdbcPageSource(DatabaseManager dbManager, String consistencyKey, String selectList, String table, String baseCondition, List<Object> baseParameters,
+                   SortKey<R> uniqueKey, SortKey<R> tieBreaker, List<SortKey<R>> filterColumns, RowMapper<R> rowMapper, Metrics.Operation metrics) {
+        this.dbManager = dbManager;
+        this.consistencyKey = consistencyKey;
+        this.selectList = selectList;
+        this.table = table;
+        this.baseCondition = baseCondition;
+        this.baseParameters = baseParameters;
+        this.uniqueKey = uniqueKey;
+        this.tieBreaker = tieBreaker;
+        this.filterColumns = filterColumns;
+        this.rowMapper = rowMapper;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SortKey<R> getUniqueKey() {
+        return uniqueKey;
+    }
+
+    @Override
+    public boolean matches(Query<R> query, R row) {
+        if (query.filter == null || filterColumns.isEmpty()) {
+            return true;
+        }
+        for (SortKey<R> column : filterColumns) {
+            Object value = column.valueOf.apply(row);
+            if (value != null && value.toString().regionMatches(true, 0, query.filter, 0, query.filter.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int count(Query<R> query) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM " + table + where(query, null, parameters);
+        long started = metrics.begin();
+        try (Connection conn = dbManager.getReadConnection(consistencyKey);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                int count = rs.getInt(1);
+                metrics.end(started, 0);
+                return count;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            metrics.fail(started);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<R> fetch(Query<R> query, R after, int offset, int limit) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        String direction = query.ascending ? " ASC" : " DESC";
+        StringBuilder sql = new StringBuilder("SELECT ").append(selectList).append(" FROM ").append(table)
+                .append(where(query, after, parameters))
+                .append(" ORDER BY ");
+        if (query.sortKey != uniqueKey) {
+            sql.append(query.sortKey.expression).append(direction).append(", ");
+        }
+        sql.append(uniqueKey.expression).append(direction);
+        if (tieBreaker != null) {
+            sql.append(", ").append(tieBreaker.expression).append(direction);
+        }
+        sql.append(" LIMIT ?");
+        parameters.add(limit);
+        if (after == null && offset > 0) {
+            sql.append(" OFFSET ?");
+            parameters.add(offset);
+        }
+
+        long started = metrics.begin();
+        try (Connection conn = dbManager.getReadConnection(consistencyKey);
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<R> rows = new ArrayList<>(limit);
+                while (rs.next()) {
+                    rows.add(rowMapper.map(rs));
+                }
+                metrics.end(started, rows.size());
+                return rows;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            metrics.fail(started);
+            throw ex;
+        }
+    }
+
+    private String where(Query<R> query, R after, List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (baseCondition != null) {
+            conditions.add(baseCondition);
+            parameters.addAll(baseParameters);
+        }
+        if (query.filter != null && !filterColumns.isEmpty()) {
+            String pattern = escapeLike(query.filter) + "%";
+            List<String> alternatives = new ArrayList<>();
+            for (SortKey<R> column : filterColumns) {
+                alternatives.add(column.expression + " LIKE ?");
+                parameters.add(pattern);
+            }
+            conditions.add("(" + String.join(" OR ", alternatives) + ")");
+        }
+        if (after != null) {
+            String comparison = query.ascending ? " > ?" : " < ?";
+            Object keyValue = uniqueKey.valueOf.apply(after);
+            // An anchor built in memory has no tie-breaker value; it continues after its key value
+            Object tieValue = tieBreaker == null ? null : tieBreaker.valueOf.apply(after);
+            List<Object> keyParameters = new ArrayList<>();
+            String afterKey;
+            if (tieValue == null) {
+                afterKey = uniqueKey.expression + comparison;
+                keyParameters.add(keyValue);
+            } else {
+                afterKey = "(" + uniqueKey.expression + comparison + " OR (" + uniqueKey.expression + " = ? AND "
+                        + tieBreaker.expression + comparison + "))";
+                keyParameters.addAll(Arrays.asList(keyValue, keyValue, tieValue));
+            }
+            if (query.sortKey == uniqueKey) {
+                conditions.add(afterKey);
+            } else {
+                Object sortValue = query.sortKey.valueOf.apply(after);
+                conditions.add("(" + query.sortKey.expression + comparison + " OR (" + query.sortKey.expression + " = ? AND " + afterKey + "))");
+                parameters.addAll(Arrays.asList(sortValue, sortValue));
+            }
+            parameters.addAll(keyParameters);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            stmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
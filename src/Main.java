@@ -1,34 +1,44 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
-import java.sql.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.Duration;
-
-class DatabaseManager {
-    private final String dbUrl;
-    private final String dbUsername;
-    private final String dbPassword;
-
-    public DatabaseManager(String dbUrl, String dbUsername, String dbPassword) {
-        this.dbUrl = dbUrl;
-        this.dbUsername = dbUsername;
-        this.dbPassword = dbPassword;
-    }
-
-    public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
-    }
-}
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 class EmployeeTimesheetApp extends JFrame {
     private JTextField usernameField;
     private JPasswordField passwordField;
     private JButton loginButton, signUpButton;
     private final DatabaseManager dbManager;
+    private final TimesheetDataService dataService;
+    private final SwingTasks tasks;
+    private final ClientStartup startup;
 
     public EmployeeTimesheetApp(DatabaseManager dbManager) {
         this.dbManager = dbManager;
+        this.dataService = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        this.tasks = new SwingTasks(this, dataService.getExecutor());
+        // The database warms up while the form below is built and shown
+        this.startup = new ClientStartup(dataService);
+        startup.start();
 
         setTitle("Employee Timesheet App");
         setSize(500, 300);
@@ -68,6 +78,7 @@ class EmployeeTimesheetApp extends JFrame {
         loginPanel.add(buttonPanel);
 
         add(loginPanel, BorderLayout.CENTER);
+        add(tasks.getBusyIndicator(), BorderLayout.SOUTH);
 
         loginButton.addActionListener(e -> {
             String username = usernameField.getText();
@@ -77,89 +88,64 @@ class EmployeeTimesheetApp extends JFrame {
 
         signUpButton.addActionListener(e -> showSignUpScreen());
 
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                startup.loginFormShown();
+            }
+        });
         setVisible(true);
     }
 
     private void authenticate(String username, String password) {
-        try {
-            Connection conn = dbManager.getConnection();
-            String sql = "SELECT role FROM users WHERE username = ? AND password = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                String role = rs.getString("role");
-                System.out.println("Retrieved role: " + role); // Debug statement
-                switch (role.toLowerCase()) { // Convert to lower case for case-insensitive comparison
-                    case "employee":
-                        // Check if the employee record exists in the employees table
-                        String checkEmployeeQuery = "SELECT COUNT(*) FROM employees WHERE employee_id = ?";
-                        PreparedStatement checkEmployeeStmt = conn.prepareStatement(checkEmployeeQuery);
-                        checkEmployeeStmt.setString(1, username);
-                        ResultSet employeeRS = checkEmployeeStmt.executeQuery();
-                        employeeRS.next();
-                        int employeeCount = employeeRS.getInt(1);
-
-                        if (employeeCount == 0) {
-                            // Employee record does not exist, add it to the employees table
-                            String addEmployeeQuery = "INSERT INTO employees (employee_id, name, department) VALUES (?, 'Default Name', 'Default Department')";
-                            PreparedStatement addEmployeeStmt = conn.prepareStatement(addEmployeeQuery);
-                            addEmployeeStmt.setString(1, username);
-                            addEmployeeStmt.executeUpdate();
-                        }
-
-                        new EmployeeTimesheet(dbManager, username).setVisible(true);
-                        break;
-                    case "manager":
-                        new ManagerDashboard(dbManager).setVisible(true);
-                        break;
-                    default:
-                        JOptionPane.showMessageDialog(this, "Unknown role: " + role, "Error", JOptionPane.ERROR_MESSAGE);
-                        break;
-                }
-                this.dispose();
-            } else {
+        tasks.run("login", () -> {
+            startup.awaitReady();
+            return dataService.authenticate(username, password);
+        }, role -> {
+            if (role == null) {
                 JOptionPane.showMessageDialog(this, "Invalid login credentials.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
-
-            conn.close();
-        } catch (SQLException ex) {
+            switch (role.toLowerCase()) { // Convert to lower case for case-insensitive comparison
+                case "employee":
+                    new EmployeeTimesheet(dataService, username).setVisible(true);
+                    break;
+                case "manager":
+                    startup.startManagerServices();
+                    new ManagerDashboard(dataService).setVisible(true);
+                    break;
+                default:
+                    JOptionPane.showMessageDialog(this, "Unknown role: " + role, "Error", JOptionPane.ERROR_MESSAGE);
+                    break;
+            }
+            this.dispose();
+        }, ex -> {
             ex.printStackTrace();
             JOptionPane.showMessageDialog(this, "Database error during authentication.", "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        });
     }
 
     private void showSignUpScreen() {
-        new SignUpScreen(dbManager, this);
-    }
-    private void addEmployeeToDatabase (String username, String name, String department){
-        try {
-            Connection conn = dbManager.getConnection();
-            String sql = "INSERT INTO employees (employee_id, name, department) VALUES (?, ?, ?)";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, username);
-            stmt.setString(2, name);
-            stmt.setString(3, department);
-            stmt.executeUpdate();
-            conn.close();
-        } catch (SQLException ex) {
+        tasks.run("open-sign-up", () -> {
+            startup.awaitReady();
+            return null;
+        }, ready -> new SignUpScreen(dataService), ex -> {
             ex.printStackTrace();
-            // Handle the error
-        }
+            JOptionPane.showMessageDialog(this, "Could not reach the database.", "Error", JOptionPane.ERROR_MESSAGE);
+        });
     }
 
     class EmployeeTimesheet extends JFrame {
-        private final DatabaseManager dbManager;
+        private final TimesheetDataService dataService;
+        private final SwingTasks tasks;
         private final String employeeUsername;
         private JTable timesheetTable;
+        private PagedTableModel<TimesheetEntry> timesheetModel;
         private JButton addTimeEntryButton, startTimeButton, endTimeButton;
-        private LocalDateTime startTime;
-        private LocalDateTime endTime;
 
-        public EmployeeTimesheet(DatabaseManager dbManager, String employeeUsername) {
-            this.dbManager = dbManager;
+        public EmployeeTimesheet(TimesheetDataService dataService, String employeeUsername) {
+            this.dataService = dataService;
+            this.tasks = new SwingTasks(this, dataService.getExecutor());
             this.employeeUsername = employeeUsername;
 
             setTitle("Employee Timesheet");
@@ -168,14 +154,24 @@ class EmployeeTimesheetApp extends JFrame {
             setLocationRelativeTo(null);
             setLayout(new BorderLayout(10, 10));
 
-            timesheetTable = new JTable();
+            timesheetModel = new PagedTableModel<>(dataService.timesheetPages(employeeUsername), Arrays.asList(
+                    new PagedTableModel.Column<>("Start Time", String.class, entry -> formatTime(entry.getStartTime()), TimesheetDataService.ENTRY_START_TIME),
+                    new PagedTableModel.Column<>("End Time", String.class, entry -> formatTime(entry.getEndTime()), null),
+                    new PagedTableModel.Column<>("Duration (hours)", Double.class, TimesheetEntry::getDurationHours, null)
+            ), tasks, ex -> {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error loading timesheet data.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
+            timesheetTable = new JTable(timesheetModel);
+            PagedTableModel.installHeaderSorting(timesheetTable, timesheetModel);
             JScrollPane scrollPane = new JScrollPane(timesheetTable);
             add(scrollPane, BorderLayout.CENTER);
+            add(tasks.getBusyIndicator(), BorderLayout.NORTH);
 
             addTimeEntryButton = new JButton("Add Time Entry");
 
             double durationHours=0;
-            addTimeEntryButton.addActionListener(e -> addTimeEntry(startTime, endTime, durationHours));
+            addTimeEntryButton.addActionListener(e -> addTimeEntry(dataService.openShiftStart(employeeUsername), LocalDateTime.now(), durationHours));
 
             startTimeButton = new JButton("Start Time");
             endTimeButton = new JButton("End Time");
@@ -192,103 +188,94 @@ class EmployeeTimesheetApp extends JFrame {
         }
 
         private void loadTimesheetData() {
-            try {
-                Connection conn = dbManager.getConnection();
-                String sql = "SELECT start_time, end_time, TIMESTAMPDIFF(MINUTE, start_time, end_time) / 60.0 AS duration FROM timesheet WHERE employee_id = ?";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setString(1, employeeUsername);
-                ResultSet rs = stmt.executeQuery();
-
-                DefaultTableModel model = new DefaultTableModel();
-                model.addColumn("Start Time");
-                model.addColumn("End Time");
-                model.addColumn("Duration (hours)");
-
-                while (rs.next()) {
-                    String startTime = rs.getString("start_time");
-                    String endTime = rs.getString("end_time");
-                    double duration = rs.getDouble("duration");
-                    model.addRow(new Object[]{startTime, endTime, duration});
-                }
-
-                timesheetTable.setModel(model);
-                conn.close();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error loading timesheet data.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            timesheetModel.refresh();
         }
 
+        // The punch goes to the data service, which records the open shift in the database, so closing
+        // this window, restarting the app or punching from another device does not lose it.
         private void startTimeButtonClicked() {
-            if (startTime == null) {
-                startTime = LocalDateTime.now();
-                JOptionPane.showMessageDialog(this, "Start time recorded: " + startTime, "Start Time", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, "Start time has already been recorded.", "Start Time", JOptionPane.WARNING_MESSAGE);
-            }
+            // DATETIME columns keep whole seconds; truncate so the row shown matches the row stored
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            tasks.runWrite("clock-in", () -> {
+                try {
+                    return dataService.clockIn(employeeUsername, now);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, result -> {
+                switch (result) {
+                    case RECORDED:
+                        timesheetModel.upsert(new TimesheetEntry(employeeUsername, now, null, 0));
+                        JOptionPane.showMessageDialog(this, "Start time recorded: " + now, "Start Time", JOptionPane.INFORMATION_MESSAGE);
+                        break;
+                    case ALREADY_CLOCKED_IN:
+                        JOptionPane.showMessageDialog(this, "Start time has already been recorded.", "Start Time", JOptionPane.WARNING_MESSAGE);
+                        break;
+                    default:
+                        JOptionPane.showMessageDialog(this, "Employee does not exist. Cannot record start time.", "Error", JOptionPane.ERROR_MESSAGE);
+                        break;
+                }
+            }, ex -> {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error recording start time.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
         }
 
+        // Whether there is an open shift is decided by the database, since it may have been started
+        // in another window or on another device.
         private void endTimeButtonClicked() {
-            if (startTime != null && endTime == null) {
-                endTime = LocalDateTime.now();
-                Duration duration = Duration.between(startTime, endTime);
-                double durationHours = (double) duration.toMinutes() / 60;
-                JOptionPane.showMessageDialog(this, "End time recorded: " + endTime + "\nDuration: " + durationHours + " hours", "End Time", JOptionPane.INFORMATION_MESSAGE);
-                addTimeEntry(startTime, endTime, durationHours);
-                startTime = null;
-                endTime = null;
-            } else if (startTime == null) {
-                JOptionPane.showMessageDialog(this, "Start time has not been recorded yet.", "End Time", JOptionPane.WARNING_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, "End time has already been recorded.", "End Time", JOptionPane.WARNING_MESSAGE);
-            }
+            LocalDateTime endTime = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            tasks.runWrite("clock-out", () -> {
+                try {
+                    return dataService.clockOut(employeeUsername, endTime);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, clockOut -> {
+                switch (clockOut.result) {
+                    case RECORDED:
+                        timesheetModel.upsert(clockOut.shift);
+                        JOptionPane.showMessageDialog(this, "End time recorded: " + endTime + "\nDuration: " + clockOut.shift.getDurationHours() + " hours", "End Time", JOptionPane.INFORMATION_MESSAGE);
+                        break;
+                    case NOT_CLOCKED_IN:
+                        JOptionPane.showMessageDialog(this, "Start time has not been recorded yet.", "End Time", JOptionPane.WARNING_MESSAGE);
+                        break;
+                    default:
+                        // Employee does not exist, display an error message
+                        JOptionPane.showMessageDialog(this, "Employee does not exist. Cannot add time entry.", "Error", JOptionPane.ERROR_MESSAGE);
+                        break;
+                }
+            }, ex -> {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error adding time entry.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
         }
-        private void addTimeEntry(LocalDateTime startTime, LocalDateTime endTime, double durationHours) {
-            try {
-                Connection conn = dbManager.getConnection();
-
-                // Check if the employee exists
-                String checkEmployeeQuery = "SELECT COUNT(*) FROM employees WHERE employee_id = ?";
-                PreparedStatement checkEmployeeStmt = conn.prepareStatement(checkEmployeeQuery);
-                checkEmployeeStmt.setString(1, employeeUsername);
-                ResultSet rs = checkEmployeeStmt.executeQuery();
-                rs.next();
-                int employeeCount = rs.getInt(1);
-
-                if (employeeCount > 0) {
-                    // Employee exists, proceed with adding the time entry
-                    String sql = "INSERT INTO timesheet (employee_id, start_time, end_time) VALUES (?, ?, ?)";
-                    PreparedStatement stmt = conn.prepareStatement(sql);
-
-                    stmt.setString(1, employeeUsername);
-                    stmt.setString(2, startTime.toString());
-                    stmt.setString(3, endTime.toString());
-
-                    stmt.executeUpdate();
-                    conn.close();
 
-                    loadTimesheetData();
+        private void addTimeEntry(LocalDateTime startTime, LocalDateTime endTime, double durationHours) {
+            tasks.run(() -> dataService.addTimeEntry(employeeUsername, startTime, endTime), added -> {
+                if (added) {
+                    timesheetModel.upsert(new TimesheetEntry(employeeUsername, startTime, endTime, durationHours));
                     JOptionPane.showMessageDialog(this, "Time entry added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
                 } else {
                     // Employee does not exist, display an error message
                     JOptionPane.showMessageDialog(this, "Employee does not exist. Cannot add time entry.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (SQLException ex) {
+            }, ex -> {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(this, "Error adding time entry.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }
     class SignUpScreen extends JFrame {
-        private final DatabaseManager dbManager;
-        private final EmployeeTimesheetApp employeeTimesheetApp;
+        private final TimesheetDataService dataService;
+        private final SwingTasks tasks;
         private JTextField usernameField, nameField, departmentField;
         private JPasswordField passwordField;
         private JComboBox<String> roleComboBox;
 
-        public SignUpScreen(DatabaseManager dbManager, EmployeeTimesheetApp employeeTimesheetApp) {
-            this.dbManager = dbManager;
-            this.employeeTimesheetApp = employeeTimesheetApp;
+        public SignUpScreen(TimesheetDataService dataService) {
+            this.dataService = dataService;
+            this.tasks = new SwingTasks(this, dataService.getExecutor());
 
             setTitle("Sign Up");
             setSize(400, 300); // Increase size if needed
@@ -320,6 +307,7 @@ class EmployeeTimesheetApp extends JFrame {
             signUpPanel.add(signUpButton); // Ensure it's added to the correct panel
 
             add(signUpPanel, BorderLayout.CENTER);
+            add(tasks.getBusyIndicator(), BorderLayout.SOUTH);
             setVisible(true); // Ensure the frame is visible
         }
 
@@ -343,50 +331,33 @@ class EmployeeTimesheetApp extends JFrame {
                 return;
             }
 
-            try {
-                Connection conn = dbManager.getConnection();
-                // Check if the username already exists
-                String checkQuery = "SELECT COUNT(*) FROM users WHERE username = ?";
-                PreparedStatement checkStmt = conn.prepareStatement(checkQuery);
-                checkStmt.setString(1, username);
-                ResultSet rs = checkStmt.executeQuery();
-                rs.next();
-                int count = rs.getInt(1);
-
-                if (count > 0) {
+            tasks.runWrite("submit-sign-up", () -> dataService.signUp(username, name, password, role, department), result -> {
+                if (result == TimesheetDataService.SignUpResult.USERNAME_TAKEN) {
                     JOptionPane.showMessageDialog(this, "Username already exists.", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-
-                // Insert into users table
-                String insertQuery = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
-                PreparedStatement insertStmt = conn.prepareStatement(insertQuery);
-                insertStmt.setString(1, username);
-                insertStmt.setString(2, password);
-                insertStmt.setString(3, role);
-                insertStmt.executeUpdate();
-
-                if (role.equals("Employee")) {
-                    employeeTimesheetApp.addEmployeeToDatabase(username, name, department); // Add employee to the database
-                }
-
-                conn.close();
                 JOptionPane.showMessageDialog(this, "Sign-up successful.", "Success", JOptionPane.INFORMATION_MESSAGE);
                 dispose();
-            } catch (SQLException ex) {
+            }, ex -> {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(this, "Error during sign-up.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            });
         }
     }
 
     class ManagerDashboard extends JFrame {
-        private final DatabaseManager dbManager;
+        private final TimesheetDataService dataService;
+        private final SwingTasks tasks;
         private JTable employeeTable;
+        private PagedTableModel<Employee> employeeModel;
+        private Timer changePoller;
+        private ChangeFeed.Cursor employeeChanges;
+        private final Set<String> locallyDeleted = new HashSet<>();
         private JButton addEmployeeButton, deleteEmployeeButton, updateEmployeeButton, generateReportButton;
 
-        public ManagerDashboard(DatabaseManager dbManager) {
-            this.dbManager = dbManager;
+        public ManagerDashboard(TimesheetDataService dataService) {
+            this.dataService = dataService;
+            this.tasks = new SwingTasks(this, dataService.getExecutor());
 
             setTitle("Manager Dashboard");
             setSize(500, 400);
@@ -394,10 +365,48 @@ class EmployeeTimesheetApp extends JFrame {
             setLocationRelativeTo(null);
             setLayout(new BorderLayout(10, 10));
 
-            employeeTable = new JTable();
+            employeeModel = new PagedTableModel<>(dataService.employeePages(), Arrays.asList(
+                    new PagedTableModel.Column<>("Employee ID", String.class, Employee::getEmployeeId, TimesheetDataService.EMPLOYEE_ID),
+                    new PagedTableModel.Column<>("Name", String.class, Employee::getName, TimesheetDataService.EMPLOYEE_NAME),
+                    new PagedTableModel.Column<>("Department", String.class, Employee::getDepartment, TimesheetDataService.EMPLOYEE_DEPARTMENT)
+            ), tasks, ex -> {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error loading employee data.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
+            employeeTable = new JTable(employeeModel);
+            PagedTableModel.installHeaderSorting(employeeTable, employeeModel);
             JScrollPane scrollPane = new JScrollPane(employeeTable);
             add(scrollPane, BorderLayout.CENTER);
 
+            // Type-ahead: the grid refilters by id, name or department prefix once typing pauses
+            JTextField searchField = new JTextField(20);
+            Timer searchDebounce = new Timer(Integer.getInteger("timesheet.search.debounceMillis", 250), e -> {
+                String text = searchField.getText().trim();
+                employeeModel.setFilter(text.isEmpty() ? null : text);
+            });
+            searchDebounce.setRepeats(false);
+            searchField.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    searchDebounce.restart();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    searchDebounce.restart();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    searchDebounce.restart();
+                }
+            });
+            JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+            searchPanel.add(new JLabel("Search:"), BorderLayout.WEST);
+            searchPanel.add(searchField, BorderLayout.CENTER);
+            searchPanel.add(tasks.getBusyIndicator(), BorderLayout.EAST);
+            add(searchPanel, BorderLayout.NORTH);
+
             JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
             addEmployeeButton = new JButton("Add Employee");
             updateEmployeeButton = new JButton("Update Employee");
@@ -408,6 +417,14 @@ class EmployeeTimesheetApp extends JFrame {
             buttonPanel.add(updateEmployeeButton);
             buttonPanel.add(deleteEmployeeButton);
             buttonPanel.add(generateReportButton);
+            JButton exportReportButton = new JButton("Export Report");
+            exportReportButton.addActionListener(e -> exportReport());
+            buttonPanel.add(exportReportButton);
+            if (dataService.getColumnarStore() != null) {
+                JButton analyticsButton = new JButton("Analytics");
+                analyticsButton.addActionListener(e -> showAnalytics());
+                buttonPanel.add(analyticsButton);
+            }
 
             add(buttonPanel, BorderLayout.SOUTH);
 
@@ -418,33 +435,44 @@ class EmployeeTimesheetApp extends JFrame {
             generateReportButton.addActionListener(e -> generateReport());
 
             loadEmployeeData();
+            followChanges();
         }
 
         private void loadEmployeeData() {
-            try {
-                Connection conn = dbManager.getConnection();
-                String sql = "SELECT * FROM employees";
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql);
-
-                DefaultTableModel model = new DefaultTableModel();
-                model.addColumn("Employee ID");
-                model.addColumn("Name");
-                model.addColumn("Department");
-
-                while (rs.next()) {
-                    String employeeId = rs.getString("employee_id");
-                    String name = rs.getString("name");
-                    String department = rs.getString("department");
-                    model.addRow(new Object[]{employeeId, name, department});
-                }
+            employeeModel.refresh();
+        }
 
-                employeeTable.setModel(model);
-                conn.close();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error loading employee data.", "Error", JOptionPane.ERROR_MESSAGE);
+        // With the change feed enabled, picks up employees other dashboards changed since our last poll.
+        private void followChanges() {
+            ChangeFeed changeFeed = dataService.getChangeFeed();
+            if (!changeFeed.isEnabled()) {
+                return;
             }
+            changePoller = new Timer(Integer.getInteger("timesheet.changeFeed.pollMillis", 5_000), e -> pollChanges());
+            addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    changePoller.stop();
+                }
+            });
+            tasks.runInBackground("change-feed-start", () -> changeFeed.cursor("employees"), cursor -> {
+                employeeChanges = cursor;
+                changePoller.start();
+            }, Throwable::printStackTrace);
+        }
+
+        private void pollChanges() {
+            tasks.runInBackground("change-feed-poll", () -> dataService.employeeChanges(employeeChanges, 500), delta -> {
+                for (String key : delta.removedKeys) {
+                    // Our own deletes were already applied; removing them again would force a reload
+                    if (!locallyDeleted.remove(key)) {
+                        employeeModel.removeByKey(key);
+                    }
+                }
+                for (Employee employee : delta.upserts) {
+                    employeeModel.upsert(employee);
+                }
+            }, Throwable::printStackTrace);
         }
 
         private void addEmployee() {
@@ -453,23 +481,16 @@ class EmployeeTimesheetApp extends JFrame {
             String employeeDepartment = JOptionPane.showInputDialog(this, "Enter Employee Department:");
 
             if (employeeId != null && employeeName != null && employeeDepartment != null) {
-                try {
-                    Connection conn = dbManager.getConnection();
-                    String sql = "INSERT INTO employees (employee_id, name, department) VALUES (?, ?, ?)";
-                    PreparedStatement stmt = conn.prepareStatement(sql);
-                    stmt.setString(1, employeeId);
-                    stmt.setString(2, employeeName);
-                    stmt.setString(3, employeeDepartment);
-                    stmt.executeUpdate();
-
-                    conn.close();
-
-                    loadEmployeeData();
+                tasks.run(() -> {
+                    dataService.addEmployee(employeeId, employeeName, employeeDepartment);
+                    return null;
+                }, ignored -> {
+                    employeeModel.upsert(new Employee(employeeId, employeeName, employeeDepartment));
                     JOptionPane.showMessageDialog(this, "Employee added successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                } catch (SQLException ex) {
+                }, ex -> {
                     ex.printStackTrace();
                     JOptionPane.showMessageDialog(this, "Error adding employee.", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             } else {
                 JOptionPane.showMessageDialog(this, "Invalid input. Please provide all employee details.", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -499,23 +520,18 @@ class EmployeeTimesheetApp extends JFrame {
                 );
 
                 if (result == JOptionPane.OK_OPTION) {
-                    try {
-                        Connection conn = dbManager.getConnection();
-                        String sql = "UPDATE employees SET name = ?, department = ? WHERE employee_id = ?";
-                        PreparedStatement stmt = conn.prepareStatement(sql);
-                        stmt.setString(1, nameField.getText());
-                        stmt.setString(2, departmentField.getText());
-                        stmt.setString(3, employeeId);
-                        stmt.executeUpdate();
-
-                        loadEmployeeData(); // Refresh the table with updated data
+                    String name = nameField.getText();
+                    String department = departmentField.getText();
+                    tasks.run(() -> {
+                        dataService.updateEmployee(employeeId, name, department);
+                        return null;
+                    }, ignored -> {
+                        employeeModel.upsert(new Employee(employeeId, name, department)); // Refresh just the updated row
                         JOptionPane.showMessageDialog(this, "Employee updated successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-
-                        conn.close();
-                    } catch (SQLException ex) {
+                    }, ex -> {
                         ex.printStackTrace();
                         JOptionPane.showMessageDialog(this, "Error updating employee.", "Error", JOptionPane.ERROR_MESSAGE);
-                    }
+                    });
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "No employee selected.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -536,66 +552,324 @@ class EmployeeTimesheetApp extends JFrame {
                 );
 
                 if (confirm == JOptionPane.YES_OPTION) {
-                    try {
-                        Connection conn = dbManager.getConnection();
-                        String sql = "DELETE FROM employees WHERE employee_id = ?";
-                        PreparedStatement stmt = conn.prepareStatement(sql);
-                        stmt.setString(1, employeeId);
-                        stmt.executeUpdate();
-
-                        conn.close();
-
-                        loadEmployeeData();
+                    tasks.run(() -> {
+                        dataService.deleteEmployee(employeeId);
+                        return null;
+                    }, ignored -> {
+                        if (dataService.getChangeFeed().isEnabled()) {
+                            locallyDeleted.add(employeeId);
+                        }
+                        employeeModel.removeByKey(employeeId);
                         JOptionPane.showMessageDialog(this, "Employee deleted successfully.", "Success", JOptionPane.INFORMATION_MESSAGE);
-                    } catch (SQLException ex) {
+                    }, ex -> {
                         ex.printStackTrace();
                         JOptionPane.showMessageDialog(this, "Error deleting employee.", "Error", JOptionPane.ERROR_MESSAGE);
-                    }
+                    });
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "No employee selected.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
 
-        private void generateReport() {
+        private class ReportFilter {
+            final LocalDate from;
+            final LocalDate to;
+            final String department;
+
+            ReportFilter(LocalDate from, LocalDate to, String department) {
+                this.from = from;
+                this.to = to;
+                this.department = department;
+            }
+        }
+
+        // Asks for an optional date range and department; returns null if cancelled or invalid.
+        private ReportFilter promptReportFilter(boolean withDepartment) {
+            JPanel filterPanel = new JPanel(new GridLayout(withDepartment ? 3 : 2, 2));
+            JTextField fromField = new JTextField();
+            JTextField toField = new JTextField();
+            JTextField departmentField = new JTextField();
+            filterPanel.add(new JLabel("From (yyyy-MM-dd):"));
+            filterPanel.add(fromField);
+            filterPanel.add(new JLabel("To (yyyy-MM-dd):"));
+            filterPanel.add(toField);
+            if (withDepartment) {
+                filterPanel.add(new JLabel("Department:"));
+                filterPanel.add(departmentField);
+            }
+
+            int result = JOptionPane.showConfirmDialog(this, filterPanel, "Report Filters (leave blank for all)", JOptionPane.OK_CANCEL_OPTION);
+            if (result != JOptionPane.OK_OPTION) {
+                return null;
+            }
+
             try {
-                Connection conn = dbManager.getConnection();
-                String sql = "SELECT employee_id, SUM(TIMESTAMPDIFF(MINUTE, start_time, end_time)) / 60.0 AS total_hours "
-                        + "FROM timesheet "
-                        + "WHERE end_time IS NOT NULL "
-                        + "GROUP BY employee_id";
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sql);
-
-                if (!rs.isBeforeFirst()) { // No data found
-                    JOptionPane.showMessageDialog(this, "No report data available.", "Info", JOptionPane.INFORMATION_MESSAGE);
-                    return;
-                }
+                return new ReportFilter(
+                        fromField.getText().isBlank() ? null : LocalDate.parse(fromField.getText().trim()),
+                        toField.getText().isBlank() ? null : LocalDate.parse(toField.getText().trim()),
+                        departmentField.getText().isBlank() ? null : departmentField.getText().trim());
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "Dates must be in yyyy-MM-dd format.", "Error", JOptionPane.ERROR_MESSAGE);
+                return null;
+            }
+        }
 
-                StringBuilder report = new StringBuilder("Employee Timesheet Report:\n");
-                while (rs.next()) {
-                    String employeeId = rs.getString("employee_id");
-                    double totalHours = rs.getDouble("total_hours");
-                    report.append("Employee ID: ").append(employeeId).append(", Total Hours Worked: ").append(totalHours).append("\n");
+        private void generateReport() {
+            ReportFilter filter = promptReportFilter(true);
+            if (filter == null) {
+                return;
+            }
+            showReport(filter, false);
+        }
+
+        // Shows the cached snapshot when there is one; Refresh recomputes it from the database.
+        private void showReport(ReportFilter filter, boolean refresh) {
+            LocalDate from = filter.from;
+            LocalDate to = filter.to;
+            String department = filter.department;
+
+            tasks.run("report|" + from + "|" + to + "|" + department + "|" + refresh, () -> dataService.cachedReport(from, to, department, refresh), snapshot -> {
+                String asOf = "As of " + formatTime(snapshot.asOf);
+                StringBuilder report = new StringBuilder();
+                if (snapshot.lines.isEmpty()) { // No data found
+                    report.append("No report data available.\n");
+                } else {
+                    report.append("Employee Timesheet Report:\n");
+                    for (EmployeeHours line : snapshot.lines) {
+                        report.append("Employee ID: ").append(line.getEmployeeId()).append(", Total Hours Worked: ").append(line.getTotalHours()).append("\n");
+                    }
                 }
+                report.append("\n").append(asOf);
 
-                JOptionPane.showMessageDialog(this, report.toString(), "Timesheet Report", JOptionPane.INFORMATION_MESSAGE);
-                conn.close();
-            } catch (SQLException ex) {
+                Object[] options = {"OK", "Refresh"};
+                int choice = JOptionPane.showOptionDialog(this, report.toString(), "Timesheet Report", JOptionPane.DEFAULT_OPTION,
+                        JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
+                if (choice == 1) {
+                    showReport(filter, true);
+                }
+            }, ex -> {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(this, "Error generating report.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }
+
+        // Streams the report's shifts to a .csv or .jsonl file chosen by the user, with a cancellable progress dialog.
+        private void exportReport() {
+            ReportFilter filter = promptReportFilter(true);
+            if (filter == null) {
+                return;
+            }
+
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Export Report");
+            chooser.setSelectedFile(new File("timesheet-report.csv"));
+            chooser.addChoosableFileFilter(new FileNameExtensionFilter("JSON Lines (*.jsonl)", "jsonl"));
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV (*.csv)", "csv"));
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            Path target = chooser.getSelectedFile().toPath();
+            ReportExporter.Format format = target.getFileName().toString().toLowerCase().endsWith(".jsonl")
+                    ? ReportExporter.Format.JSONL : ReportExporter.Format.CSV;
+
+            // The exporting thread only touches these atomics; the timer moves them to and from the monitor on the EDT.
+            ProgressMonitor monitor = new ProgressMonitor(this, "Exporting " + target.getFileName(), "Counting rows...", 0, 100);
+            monitor.setMillisToDecideToPopup(200);
+            AtomicLong written = new AtomicLong();
+            AtomicLong total = new AtomicLong(-1);
+            AtomicBoolean cancelled = new AtomicBoolean();
+            Timer progressTimer = new Timer(200, null);
+            progressTimer.addActionListener(e -> {
+                if (monitor.isCanceled()) {
+                    cancelled.set(true);
+                    progressTimer.stop();
+                    monitor.close();
+                    return;
+                }
+                if (total.get() > 0) {
+                    monitor.setProgress((int) Math.min(99, written.get() * 100 / total.get()));
+                    monitor.setNote(written.get() + " of " + total.get() + " rows");
+                }
+            });
+            progressTimer.start();
+
+            ReportExporter.Progress progress = new ReportExporter.Progress() {
+                @Override
+                public void update(long rowsWritten, long totalRows) {
+                    written.set(rowsWritten);
+                    total.set(totalRows);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled.get();
+                }
+            };
+            tasks.run("export|" + target, () -> {
+                try {
+                    return dataService.exportReport(target, format, filter.from, filter.to, filter.department, progress);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, rows -> {
+                progressTimer.stop();
+                monitor.close();
+                JOptionPane.showMessageDialog(this, "Exported " + rows + " rows to " + target + ".", "Success", JOptionPane.INFORMATION_MESSAGE);
+            }, ex -> {
+                progressTimer.stop();
+                monitor.close();
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error exporting report.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
+        }
+
+        private void showAnalytics() {
+            ReportFilter filter = promptReportFilter(false);
+            if (filter == null) {
+                return;
             }
+
+            tasks.run("analytics|" + filter.from + "|" + filter.to, () -> dataService.analyticsSummary(filter.from, filter.to), summary -> {
+                StringBuilder report = new StringBuilder("Hours by Department:\n");
+                summary.hoursByDepartment.forEach((department, hours) ->
+                        report.append(department).append(": ").append(String.format("%.2f", hours)).append("\n"));
+
+                report.append("\nOvertime (over ").append((int) ColumnarTimesheetStore.OVERTIME_HOURS_PER_WEEK).append(" hours/week):\n");
+                if (summary.weeklyOvertime.isEmpty()) {
+                    report.append("None\n");
+                }
+                for (EmployeeHours line : summary.weeklyOvertime) {
+                    report.append("Employee ID: ").append(line.getEmployeeId()).append(", Overtime Hours: ")
+                            .append(String.format("%.2f", line.getTotalHours())).append("\n");
+                }
+
+                report.append("\nShift Length (hours):\n");
+                for (int i = 0; i < ColumnarTimesheetStore.SUMMARY_PERCENTILES.length; i++) {
+                    report.append("p").append(Math.round(ColumnarTimesheetStore.SUMMARY_PERCENTILES[i] * 100)).append(": ")
+                            .append(String.format("%.2f", summary.shiftLengthPercentiles[i])).append("\n");
+                }
+
+                report.append("\n").append(summary.rows).append(" shifts in memory, ")
+                        .append(summary.memoryBytes / 1024).append(" KB");
+                JOptionPane.showMessageDialog(this, report.toString(), "Timesheet Analytics", JOptionPane.INFORMATION_MESSAGE);
+            }, ex -> {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error computing analytics.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
         }
     }
 
+    // Renders timestamps the way MySQL returns them as strings
+    private static String formatTime(LocalDateTime time) {
+        return time == null ? null : time.format(TIME_FORMAT);
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
         public static void main(String[] args) {
+        // Optional read replicas for reports and dashboards, comma separated JDBC URLs
+        String replicas = System.getProperty("timesheet.db.replicas", "").trim();
         DatabaseManager dbManager = new DatabaseManager(
                 "jdbc:mysql://localhost:3306/timesheet_db",
+                replicas.isEmpty() ? Collections.emptyList() : Arrays.asList(replicas.split("\\s*,\\s*")),
                 "username",
-                "your_password");
+                "your_password",
+                ConnectionPool.Config.fromSystemProperties());
 
-        new EmployeeTimesheetApp(dbManager); // Pass DatabaseManager to the app
+        Runtime.getRuntime().addShutdownHook(new Thread(dbManager::close));
+
+        String command = args.length > 0 ? args[0] : "";
+        if (!command.equals("--import") && !command.equals("--payroll") && !command.equals("--server")) {
+            // The login form comes up at once; ClientStartup migrates the schema behind it
+            SwingUtilities.invokeLater(() -> new EmployeeTimesheetApp(dbManager));
+            return;
+        }
+
+        try {
+            new SchemaMigrator(dbManager).migrate();
+        } catch (SQLException ex) {
+            System.err.println("Could not bring the database schema up to date: " + ex.getMessage());
+            System.exit(1);
+        }
+
+        if (command.equals("--import")) {
+            System.exit(importFiles(dbManager, Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (command.equals("--payroll")) {
+            System.exit(runPayroll(dbManager, Arrays.copyOfRange(args, 1, args.length)));
+        }
+        startServer(dbManager, args.length > 1 ? Integer.parseInt(args[1]) : 8080);
 }
 
+    // Headless mode: serves the HTTP API instead of opening a window. The server's threads keep the JVM running.
+    private static void startServer(DatabaseManager dbManager, int port) {
+        TimesheetDataService dataService = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        dataService.getHoursRollup().start();
+        dataService.getPayPeriods().start();
+        dataService.getDirectory().start();
+        dataService.getReportCache().start();
+        dataService.getChangeFeed().start();
+        dataService.openPunchJournal();
+        dataService.getDatabaseManager().getMetrics().startPeriodicDump();
+        try {
+            TimesheetApiServer server = new TimesheetApiServer(dataService, port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            System.out.println("Timesheet API listening on port " + server.getPort());
+        } catch (IOException ex) {
+            System.err.println("Could not start the HTTP server: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Command line bulk import: --import <file.csv|file.jsonl>...; returns the process exit code.
+    private static int importFiles(DatabaseManager dbManager, String[] files) {
+        if (files.length == 0) {
+            System.err.println("Usage: --import <file.csv|file.jsonl>...");
+            return 2;
+        }
+        TimesheetDataService dataService = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        int exitCode = 0;
+        for (String file : files) {
+            long started = System.nanoTime();
+            try {
+                BulkTimesheetImporter.Result result = dataService.importTimesheet(Paths.get(file), rows ->
+                        System.out.printf("%s: %d rows read, %.0f rows/s%n", file, rows, rows * 1e9 / Math.max(1, System.nanoTime() - started)));
+                System.out.println(file + ": " + result);
+                result.errors.forEach(error -> System.out.println("  " + error));
+                if (result.rowsRejected > 0) {
+                    exitCode = 1;
+                }
+            } catch (Exception ex) {
+                System.err.println(file + ": import failed: " + ex.getMessage());
+                ex.printStackTrace();
+                return 1;
+            }
+        }
+        return exitCode;
+    }
+
+    // Command line payroll: --payroll <yyyy-MM-dd> [--recompute] computes the pay period containing
+    // that day; returns the process exit code.
+    private static int runPayroll(DatabaseManager dbManager, String[] args) {
+        if (args.length == 0 || args.length > 2 || (args.length == 2 && !args[1].equals("--recompute"))) {
+            System.err.println("Usage: --payroll <yyyy-MM-dd> [--recompute]");
+            return 2;
+        }
+        TimesheetDataService dataService = new TimesheetDataService(dbManager, new DataAccessExecutor());
+        try {
+            PayrollEngine.Result result = dataService.runPayroll(LocalDate.parse(args[0]), args.length == 2);
+            System.out.println("Payroll " + result);
+            return 0;
+        } catch (DateTimeParseException ex) {
+            System.err.println("Dates must be in yyyy-MM-dd format.");
+            return 2;
+        } catch (Exception ex) {
+            System.err.println("Payroll failed: " + ex.getMessage());
+            ex.printStackTrace();
+            return 1;
+        }
+    }
+
 
 }
@@ -0,0 +1,300 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Per-operation latency histograms, counts, errors, rows and connection pool wait. Recording
+// allocates nothing: operations are looked up once and kept in fields, and the histograms are
+// fixed arrays of counters. Each finished operation is also a JFR event (timesheet.DatabaseOperation)
+// while a recording has it enabled.
+//
+// Callers bracket the work with begin/end:
+//
+//     long started = LOGIN.begin();
+//     try {
+//         ...
+//         LOGIN.end(started, rows);
+//     } catch (SQLException | RuntimeException ex) {
+//         LOGIN.fail(started);
+//         throw ex;
+//     }
+class Metrics {
+
+    // Log-linear buckets in the style of HdrHistogram: exact below 32, then 16 buckets per power of
+    // two, so any recorded value is reported within about 6% of its true value.
+    static class Histogram {
+        private static final int LINEAR_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << (LINEAR_BITS - 1);
+        private static final int BUCKETS = (64 - LINEAR_BITS) * SUB_BUCKETS + SUB_BUCKETS * 2;
+        private static final AtomicLongFieldUpdater<Histogram> MAX = AtomicLongFieldUpdater.newUpdater(Histogram.class, "max");
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private volatile long max;
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts.incrementAndGet(bucketOf(value));
+            total.increment();
+            sum.add(value);
+            long seen = max;
+            while (value > seen && !MAX.compareAndSet(this, seen, value)) {
+                seen = max;
+            }
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        long max() {
+            return max;
+        }
+
+        double mean() {
+            long count = total.sum();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        // Upper bound of the bucket holding the given quantile (0..1), so never an underestimate.
+        long percentile(double quantile) {
+            long count = total.sum();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(bucket), max);
+                }
+            }
+            return max;
+        }
+
+        static int bucketOf(long value) {
+            if (value < (1 << LINEAR_BITS)) {
+                return (int) value;
+            }
+            int shift = 64 - Long.numberOfLeadingZeros(value) - LINEAR_BITS;
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        static long highestValueIn(int bucket) {
+            if (bucket < (1 << LINEAR_BITS)) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long top = bucket - (long) shift * SUB_BUCKETS;
+            return ((top + 1) << shift) - 1;
+        }
+    }
+
+    @Name("timesheet.DatabaseOperation")
+    @Label("Database Operation")
+    @Category("Timesheet")
+    @Description("One named data access operation, such as a login or a report")
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+
+        @Label("Pool Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long poolWait;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    private static final EventType OPERATION_EVENT = EventType.getEventType(OperationEvent.class);
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PERCENTILE_NAMES = {"p50Ms", "p90Ms", "p99Ms", "p999Ms"};
+
+    class Operation {
+        final String name;
+        private final Histogram latency = new Histogram();
+        private final Histogram poolWait = new Histogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        // Returns the start time to hand to end or fail. Connection waits until then count
+        // towards this operation unless an enclosing operation is already running on the thread.
+        long begin() {
+            Scope scope = current.get();
+            if (scope.operation == null) {
+                scope.operation = this;
+                scope.poolWaitNanos = 0;
+            }
+            return System.nanoTime();
+        }
+
+        void end(long started, long rowCount) {
+            finish(started, rowCount, false);
+        }
+
+        void fail(long started) {
+            finish(started, 0, true);
+        }
+
+        private void finish(long started, long rowCount, boolean failed) {
+            long elapsed = System.nanoTime() - started;
+            long waited = 0;
+            Scope scope = current.get();
+            if (scope.operation == this) {
+                waited = scope.poolWaitNanos;
+                scope.operation = null;
+                poolWait.record(waited);
+            }
+            latency.record(elapsed);
+            rows.add(rowCount);
+            if (failed) {
+                errors.increment();
+            }
+            if (OPERATION_EVENT.isEnabled()) {
+                OperationEvent event = new OperationEvent();
+                event.operation = name;
+                event.elapsed = elapsed;
+                event.poolWait = waited;
+                event.rows = rowCount;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            long count = latency.count();
+            json.put("count", count);
+            json.put("errors", errors.sum());
+            json.put("errorRate", count == 0 ? 0.0 : (double) errors.sum() / count);
+            json.put("rows", rows.sum());
+            json.put("meanMs", latency.mean() / 1e6);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                json.put(PERCENTILE_NAMES[i], latency.percentile(PERCENTILES[i]) / 1e6);
+            }
+            json.put("maxMs", latency.max() / 1e6);
+            json.put("poolWaitMeanMs", poolWait.mean() / 1e6);
+            json.put("poolWaitP99Ms", poolWait.percentile(0.99) / 1e6);
+            return json;
+        }
+    }
+
+    // The operation running on a thread and the connection wait it has accumulated so far.
+    private static class Scope {
+        Operation operation;
+        long poolWaitNanos;
+    }
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Object>> components = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scope> current = ThreadLocal.withInitial(Scope::new);
+    private ScheduledExecutorService dumper;
+
+    Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    // Adds the stats of a component (pool, auth cache, journal) to every dump, under the given name.
+    void register(String name, Supplier<Object> stats) {
+        components.put(name, stats);
+    }
+
+    // Called by DatabaseManager for every connection it hands out.
+    void recordPoolWait(long nanos) {
+        Scope scope = current.get();
+        if (scope.operation != null) {
+            scope.poolWaitNanos += nanos;
+        }
+    }
+
+    // Prints the text dump every -Dtimesheet.metrics.dumpSeconds seconds; off when unset or 0.
+    synchronized void startPeriodicDump() {
+        long seconds = Long.getLong("timesheet.metrics.dumpSeconds", 0);
+        if (seconds <= 0 || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.print(toText()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    synchronized void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        Map<String, Object> byName = new LinkedHashMap<>();
+        for (Operation operation : sortedOperations()) {
+            byName.put(operation.name, operation.toJson());
+        }
+        json.put("operations", byName);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        components.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> stats.put(entry.getKey(), String.valueOf(entry.getValue().get())));
+        json.put("components", stats);
+        return json;
+    }
+
+    // One line per operation, then one per component.
+    String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-20s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "rows", "p50 ms", "p99 ms", "max ms", "wait ms", "wait p99"));
+        for (Operation operation : sortedOperations()) {
+            Histogram latency = operation.latency;
+            text.append(String.format("%-20s %9d %7d %9d %9.2f %9.2f %9.2f %9.3f %9.3f%n",
+                    operation.name, latency.count(), operation.errors.sum(), operation.rows.sum(),
+                    latency.percentile(0.5) / 1e6, latency.percentile(0.99) / 1e6, latency.max() / 1e6,
+                    operation.poolWait.mean() / 1e6, operation.poolWait.percentile(0.99) / 1e6));
+        }
+        components.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> text.append(entry.getKey()).append(": ").append(entry.getValue().get()).append('\n'));
+        return text.toString();
+    }
+
+    private List<Operation> sortedOperations() {
+        List<Operation> sorted = new ArrayList<>(operations.values());
+        sorted.sort((a, b) -> a.name.compareTo(b.name));
+        return sorted;
+    }
+}
@@ -0,0 +1,41 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Function;
+
+// Where a PagedTableModel reads its rows from. Implementations must return rows in the order given
+// by the query's sort key, ties broken by the source's unique key, so keyset paging is stable.
+interface PageSource<R> {
+
+    int count(Query<R> query) throws SQLException;
+
+    // Rows strictly after the anchor row in query order, or starting at offset when there is no anchor.
+    List<R> fetch(Query<R> query, R after, int offset, int limit) throws SQLException;
+
+    SortKey<R> getUniqueKey();
+
+    // Whether a row changed in memory would still be returned under the query's filter.
+    boolean matches(Query<R> query, R row);
+
+    class SortKey<R> {
+        final String expression;
+        final Function<R, Object> valueOf;
+
+        // expression is the SQL used in ORDER BY; valueOf reads the same value back from a row.
+        SortKey(String expression, Function<R, Object> valueOf) {
+            this.expression = expression;
+            this.valueOf = valueOf;
+        }
+    }
+
+    class Query<R> {
+        final SortKey<R> sortKey;
+        final boolean ascending;
+        final String filter;
+
+        Query(SortKey<R> sortKey, boolean ascending, String filter) {
+            this.sortKey = sortKey;
+            this.ascending = ascending;
+            this.filter = filter == null || filter.isEmpty() ? null : filter;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Table model that loads rows a page at a time as the table asks for them and keeps only a
+// bounded number of pages in memory. Sorting and filtering happen in the PageSource, not in Swing.
+// All methods must be called on the EDT.
+class PagedTableModel<R> extends AbstractTableModel {
+
+    static class Column<R> {
+        final String name;
+        final Class<?> type;
+        final Function<R, Object> valueOf;
+        final PageSource.SortKey<R> sortKey;
+
+        // sortKey is null for columns the source cannot sort on.
+        Column(String name, Class<?> type, Function<R, Object> valueOf, PageSource.SortKey<R> sortKey) {
+            this.name = name;
+            this.type = type;
+            this.valueOf = valueOf;
+            this.sortKey = sortKey;
+        }
+    }
+
+    private static final int DEFAULT_PAGE_SIZE = 200;
+    private static final int DEFAULT_MAX_CACHED_PAGES = 20;
+
+    private final PageSource<R> source;
+    private final List<Column<R>> columns;
+    private final SwingTasks tasks;
+    private final Consumer<Throwable> errorHandler;
+    private final int pageSize;
+    private final Map<Integer, List<R>> pages;
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private final String taskPrefix = "page-" + System.identityHashCode(this) + "-";
+
+    private int rowCount;
+    private boolean countLoading;
+    private int generation;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private String filter;
+
+    PagedTableModel(PageSource<R> source, List<Column<R>> columns, SwingTasks tasks, Consumer<Throwable> errorHandler) {
+        this(source, columns, tasks, errorHandler, DEFAULT_PAGE_SIZE, DEFAULT_MAX_CACHED_PAGES);
+    }
+
+    PagedTableModel(PageSource<R> source, List<Column<R>> columns, SwingTasks tasks, Consumer<Throwable> errorHandler,
+                    int pageSize, int maxCachedPages) {
+        this.source = source;
+        this.columns = columns;
+        this.tasks = tasks;
+        this.errorHandler = errorHandler;
+        this.pageSize = pageSize;
+        // Access-ordered, so the least recently painted page is dropped first.
+        this.pages = new LinkedHashMap<Integer, List<R>>(maxCachedPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<R>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+    }
+
+    // Drops every cached page and re-reads the row count; visible pages reload as they are painted.
+    void refresh() {
+        int requestGeneration = ++generation;
+        pages.clear();
+        loadingPages.clear();
+        countLoading = true;
+        PageSource.Query<R> query = currentQuery();
+        tasks.run(taskPrefix + requestGeneration + "-count", () -> source.count(query), count -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            countLoading = false;
+            rowCount = count;
+            fireTableDataChanged();
+        }, errorHandler);
+    }
+
+    // Applies an inserted or changed row to the cached pages without re-reading the table. Falls
+    // back to refresh() only when the row's position lies in a part of the table that is not cached.
+    void upsert(R row) {
+        if (countLoading) {
+            refresh();
+            return;
+        }
+        int existing = indexOfKey(source.getUniqueKey().valueOf.apply(row));
+        PageSource.Query<R> query = currentQuery();
+        if (existing >= 0) {
+            R current = getRow(existing);
+            if (source.matches(query, row) && compare(query, current, row) == 0) {
+                setRow(existing, row);
+                fireTableRowsUpdated(existing, existing);
+                return;
+            }
+            // Its sort position or filter membership changed, so move it.
+            removeAt(existing);
+            fireTableRowsDeleted(existing, existing);
+        }
+        if (!source.matches(query, row)) {
+            return;
+        }
+        int index = locate(query, row);
+        if (index < 0) {
+            refresh();
+            return;
+        }
+        insertAt(index, row);
+        fireTableRowsInserted(index, index);
+    }
+
+    void removeByKey(Object key) {
+        if (countLoading) {
+            refresh();
+            return;
+        }
+        int index = indexOfKey(key);
+        if (index < 0) {
+            // Not cached: we cannot tell which rows shifted, so reload.
+            refresh();
+            return;
+        }
+        removeAt(index);
+        fireTableRowsDeleted(index, index);
+    }
+
+    void setFilter(String filter) {
+        this.filter = filter;
+        refresh();
+    }
+
+    // Clicking the same column again flips the direction.
+    void toggleSort(int column) {
+        if (columns.get(column).sortKey == null) {
+            return;
+        }
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        fireTableStructureChanged();
+        refresh();
+    }
+
+    // Returns the row if its page is cached, otherwise schedules the page and returns null.
+    R getRow(int rowIndex) {
+        int page = rowIndex / pageSize;
+        List<R> rows = pages.get(page);
+        if (rows == null) {
+            loadPage(page);
+            return null;
+        }
+        int offset = rowIndex - page * pageSize;
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = columns.get(column).name;
+        if (column == sortColumn) {
+            return name + (ascending ? " \u25B2" : " \u25BC");
+        }
+        return name;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return columns.get(column).type;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        R row = getRow(rowIndex);
+        return row == null ? null : columns.get(columnIndex).valueOf.apply(row);
+    }
+
+    private void loadPage(int page) {
+        if (!loadingPages.add(page)) {
+            return;
+        }
+        int requestGeneration = generation;
+        PageSource.Query<R> query = currentQuery();
+        // Continue from the previous page's last row when we have it; only a jump into the
+        // middle of the table falls back to an OFFSET read.
+        List<R> previous = page > 0 ? pages.get(page - 1) : null;
+        R after = previous != null && !previous.isEmpty() ? previous.get(previous.size() - 1) : null;
+        int offset = after == null ? page * pageSize : 0;
+
+        tasks.run(taskPrefix + requestGeneration + "-" + page, () -> source.fetch(query, after, offset, pageSize), rows -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            loadingPages.remove(page);
+            pages.put(page, rows);
+            int first = page * pageSize;
+            int last = Math.min(rowCount, first + rows.size()) - 1;
+            if (last >= first) {
+                fireTableRowsUpdated(first, last);
+            }
+        }, error -> {
+            // The page stays marked as loading so repaints do not retry it in a loop; refresh() clears it.
+            errorHandler.accept(error);
+        });
+    }
+
+    private int indexOfKey(Object key) {
+        for (Map.Entry<Integer, List<R>> entry : pages.entrySet()) {
+            List<R> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (Objects.equals(source.getUniqueKey().valueOf.apply(rows.get(i)), key)) {
+                    return entry.getKey() * pageSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Absolute index the row would take under the current order, or -1 if that falls in an
+    // uncached gap.
+    private int locate(PageSource.Query<R> query, R row) {
+        if (rowCount == 0) {
+            return 0;
+        }
+        int previousEnd = -1;
+        for (int page : new TreeSet<>(pages.keySet())) {
+            List<R> rows = pages.get(page);
+            int start = page * pageSize;
+            if (rows.isEmpty()) {
+                continue;
+            }
+            if (compare(query, row, rows.get(0)) < 0) {
+                return start == 0 || previousEnd == start ? start : -1;
+            }
+            if (compare(query, row, rows.get(rows.size() - 1)) < 0) {
+                int low = 0;
+                int high = rows.size() - 1;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (compare(query, row, rows.get(mid)) < 0) {
+                        high = mid;
+                    } else {
+                        low = mid + 1;
+                    }
+                }
+                return start + low;
+            }
+            previousEnd = start + rows.size();
+            if (previousEnd == rowCount) {
+                return rowCount;
+            }
+        }
+        return -1;
+    }
+
+    private void insertAt(int index, R row) {
+        int page = index / pageSize;
+        List<R> rows = pages.get(page);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            pages.put(page, rows);
+        }
+        rows.add(index - page * pageSize, row);
+        rowCount++;
+        // Push the overflow down through the following cached pages.
+        while (rows.size() > pageSize) {
+            R spilled = rows.remove(rows.size() - 1);
+            List<R> next = pages.get(page + 1);
+            if (next == null) {
+                if ((page + 1) * pageSize < rowCount - 1) {
+                    dropPagesAfter(page);
+                    return;
+                }
+                next = new ArrayList<>();
+                pages.put(page + 1, next);
+            }
+            next.add(0, spilled);
+            rows = next;
+            page++;
+        }
+    }
+
+    private void removeAt(int index) {
+        int page = index / pageSize;
+        List<R> rows = pages.get(page);
+        rows.remove(index - page * pageSize);
+        rowCount--;
+        // Pull the first row of each following cached page up to close the gap.
+        while (page * pageSize + rows.size() < rowCount) {
+            List<R> next = pages.get(page + 1);
+            if (next == null || next.isEmpty()) {
+                // This page is now short a row we do not have; reload it when painted.
+                pages.remove(page);
+                dropPagesAfter(page);
+                return;
+            }
+            rows.add(next.remove(0));
+            rows = next;
+            page++;
+        }
+        if (rows.isEmpty()) {
+            pages.remove(page);
+        }
+    }
+
+    private void setRow(int index, R row) {
+        int page = index / pageSize;
+        pages.get(page).set(index - page * pageSize, row);
+    }
+
+    // Cached pages past a gap no longer line up with their indexes after a shift.
+    private void dropPagesAfter(int page) {
+        pages.keySet().removeIf(p -> p > page);
+        // Loads already in flight were computed against the old positions.
+        generation++;
+        loadingPages.clear();
+    }
+
+    private int compare(PageSource.Query<R> query, R a, R b) {
+        int result = compareValues(query.sortKey.valueOf.apply(a), query.sortKey.valueOf.apply(b));
+        if (result == 0 && query.sortKey != source.getUniqueKey()) {
+            result = compareValues(source.getUniqueKey().valueOf.apply(a), source.getUniqueKey().valueOf.apply(b));
+        }
+        return query.ascending ? result : -result;
+    }
+
+    // Strings compare case-insensitively like the default MySQL collation; nulls sort first.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof String && b instanceof String) {
+            return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private PageSource.Query<R> currentQuery() {
+        PageSource.SortKey<R> sortKey = sortColumn >= 0 ? columns.get(sortColumn).sortKey : source.getUniqueKey();
+        return new PageSource.Query<>(sortKey, ascending, filter);
+    }
+
+    // Lets the user sort by clicking a column header.
+    static void installHeaderSorting(JTable table, PagedTableModel<?> model) {
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int viewColumn = table.columnAtPoint(e.getPoint());
+                if (viewColumn >= 0) {
+                    model.toggleSort(table.convertColumnIndexToModel(viewColumn));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,89 @@
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Salted PBKDF2-HMAC-SHA256 password hashes, stored as "pbkdf2$<iterations>$<salt>$<hash>".
+// The iteration count is tunable with -Dtimesheet.auth.iterations; hashes made with fewer
+// iterations, and the plaintext passwords of older installs, still verify and are reported as
+// needing a rehash so the caller can upgrade them.
+class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong hashCount = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+
+    PasswordHasher() {
+        this(Integer.getInteger("timesheet.auth.iterations", 120_000));
+    }
+
+    PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(derive(password, salt, iterations));
+    }
+
+    boolean verify(String password, String stored) {
+        if (stored == null || password == null) {
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[3]);
+        return MessageDigest.isEqual(expected, derive(password, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+    }
+
+    // True for plaintext and for hashes weaker than the current setting.
+    boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+    }
+
+    long getHashCount() {
+        return hashCount.get();
+    }
+
+    // Average time of one derivation, the cost every uncached login pays.
+    double averageHashMillis() {
+        long count = hashCount.get();
+        return count == 0 ? 0 : hashNanos.get() / 1e6 / count;
+    }
+
+    private byte[] derive(String password, byte[] salt, int rounds) {
+        long started = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
+            throw new IllegalStateException("PBKDF2 is not available", ex);
+        } finally {
+            spec.clearPassword();
+            hashCount.incrementAndGet();
+            hashNanos.addAndGet(System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Fixed-length pay periods (-Dtimesheet.payPeriod.days, default 14, counted from
+// -Dtimesheet.payPeriod.anchor, default 2024-01-01). Once a period has been over for
+// -Dtimesheet.payPeriod.graceDays it can be closed: its finished shifts move from timesheet to
+// timesheet_archive and their per-employee totals go to pay_period_hours, so the live table only
+// holds the last few periods. Closing runs in the background with -Dtimesheet.payPeriod.archive=true.
+//
+// Which periods may be archived follows from the date alone, so every process routes reads the
+// same way without asking the others: ranges ending after archivableBefore() read timesheet only,
+// older ranges also read the archive. A shift written late into a closed period lands in
+// timesheet and is swept into the archive on the next run, so nothing is lost.
+class PayPeriodArchive {
+    static final String ARCHIVE_TABLE = "timesheet_archive";
+
+    // Result of one closing run.
+    static class Result {
+        int periodsClosed;
+        long shiftsArchived;
+
+        @Override
+        public String toString() {
+            return String.format("periodsClosed=%d shiftsArchived=%d", periodsClosed, shiftsArchived);
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final int periodDays = Integer.getInteger("timesheet.payPeriod.days", 14);
+    private final LocalDate anchor = LocalDate.parse(System.getProperty("timesheet.payPeriod.anchor", "2024-01-01"));
+    private final int graceDays = Integer.getInteger("timesheet.payPeriod.graceDays", 7);
+    private final long checkIntervalMinutes = Long.getLong("timesheet.payPeriod.checkMinutes", 60);
+    private final Metrics.Operation archiveMetrics;
+    private ScheduledExecutorService scheduler;
+
+    PayPeriodArchive(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+        this.archiveMetrics = dbManager.getMetrics().operation("archive-period");
+    }
+
+    // Closes due periods now and then every checkMinutes, unless archiving is turned off.
+    synchronized void start() {
+        if (scheduler != null || !Boolean.getBoolean("timesheet.payPeriod.archive")) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pay-period-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                Result result = closeDuePeriods(LocalDate.now());
+                if (result.periodsClosed > 0) {
+                    System.out.println("Archived pay periods: " + result);
+                }
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }, 0, checkIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    LocalDate periodStart(LocalDate day) {
+        long index = Math.floorDiv(ChronoUnit.DAYS.between(anchor, day), periodDays);
+        return anchor.plusDays(index * periodDays);
+    }
+
+    LocalDate periodEnd(LocalDate periodStart) {
+        return periodStart.plusDays(periodDays);
+    }
+
+    // Start of the oldest period that is not yet due for archiving on the given day; shifts
+    // starting earlier may be in timesheet_archive.
+    LocalDate archivableBefore(LocalDate today) {
+        return periodStart(today.minusDays(graceDays));
+    }
+
+    // True when [from, ...) reaches into periods that may have been archived; null means no lower limit.
+    boolean reachesArchive(LocalDate from) {
+        return from == null || from.isBefore(archivableBefore(LocalDate.now()));
+    }
+
+    // Archives every period that ended at least graceDays before today, one transaction per period,
+    // oldest first. Safe to run from several processes: the archive's primary key is the timesheet
+    // id, so a period moved twice fails and rolls back instead of counting twice.
+    synchronized Result closeDuePeriods(LocalDate today) throws SQLException {
+        Result result = new Result();
+        LocalDate cutoff = archivableBefore(today);
+        try (Connection conn = dbManager.getConnection()) {
+            LocalDate oldest;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT MIN(start_time) FROM timesheet WHERE start_time < ? AND end_time IS NOT NULL")) {
+                stmt.setTimestamp(1, Timestamp.valueOf(cutoff.atStartOfDay()));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    Timestamp min = rs.getTimestamp(1);
+                    if (min == null) {
+                        return result;
+                    }
+                    oldest = min.toLocalDateTime().toLocalDate();
+                }
+            }
+            for (LocalDate period = periodStart(oldest); period.isBefore(cutoff); period = periodEnd(period)) {
+                long started = archiveMetrics.begin();
+                try {
+                    long moved = closePeriod(conn, period);
+                    archiveMetrics.end(started, moved);
+                    if (moved > 0) {
+                        result.periodsClosed++;
+                        result.shiftsArchived += moved;
+                    }
+                } catch (SQLException | RuntimeException ex) {
+                    archiveMetrics.fail(started);
+                    throw ex;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Moves the finished shifts of one period and adds them to its summary; returns the shifts moved.
+    private long closePeriod(Connection conn, LocalDate periodStart) throws SQLException {
+        Timestamp from = Timestamp.valueOf(periodStart.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(periodEnd(periodStart).atStartOfDay());
+        String range = " FROM timesheet WHERE start_time >= ? AND start_time < ? AND end_time IS NOT NULL";
+        conn.setAutoCommit(false);
+        try {
+            long moved;
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + ARCHIVE_TABLE
+                    + " (id, employee_id, start_time, end_time) SELECT id, employee_id, start_time, end_time" + range)) {
+                stmt.setTimestamp(1, from);
+                stmt.setTimestamp(2, to);
+                moved = stmt.executeUpdate();
+            }
+            if (moved == 0) {
+                conn.rollback();
+                return 0;
+            }
+
+            // Summed from the rows just archived, which are the ones still in timesheet too, so the
+            // totals cover exactly what moved even if a shift was written or closed since
+            Map<String, long[]> totals = new TreeMap<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT a.employee_id, "
+                    + "SUM(TIMESTAMPDIFF(MINUTE, a.start_time, a.end_time)), COUNT(*) FROM " + ARCHIVE_TABLE + " a "
+                    + "JOIN timesheet t ON t.id = a.id WHERE a.start_time >= ? AND a.start_time < ? GROUP BY a.employee_id")) {
+                stmt.setTimestamp(1, from);
+                stmt.setTimestamp(2, to);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        totals.put(rs.getString(1), new long[] {rs.getLong(2), rs.getLong(3)});
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE" + range)) {
+                stmt.setTimestamp(1, from);
+                stmt.setTimestamp(2, to);
+                if (stmt.executeUpdate() != moved) {
+                    // A shift was written in between; leave the period for the next run
+                    conn.rollback();
+                    return 0;
+                }
+            }
+
+            long minutes = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO pay_period_hours (period_start, employee_id, minutes, entries) "
+                    + "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE minutes = minutes + VALUES(minutes), entries = entries + VALUES(entries)")) {
+                for (Map.Entry<String, long[]> total : totals.entrySet()) {
+                    stmt.setObject(1, periodStart);
+                    stmt.setString(2, total.getKey());
+                    stmt.setLong(3, total.getValue()[0]);
+                    stmt.setLong(4, total.getValue()[1]);
+                    stmt.addBatch();
+                    minutes += total.getValue()[0];
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO pay_period (period_start, period_end, minutes, entries) "
+                    + "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE minutes = minutes + VALUES(minutes), entries = entries + VALUES(entries), "
+                    + "closed_at = CURRENT_TIMESTAMP")) {
+                stmt.setObject(1, periodStart);
+                stmt.setObject(2, periodEnd(periodStart));
+                stmt.setLong(3, minutes);
+                stmt.setLong(4, moved);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            return moved;
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Hours per employee from the archive for shifts starting in [from, toExclusive), either end
+    // open. Periods lying wholly inside the range come from their pay_period_hours summary and only
+    // the partial periods at the ends are summed from archived shifts.
+    List<EmployeeHours> hoursByEmployee(Connection conn, LocalDate from, LocalDate toExclusive, String department) throws SQLException {
+        LocalDate firstWhole = from == null ? null : (periodStart(from).equals(from) ? from : periodEnd(periodStart(from)));
+        LocalDate afterLastWhole = toExclusive == null ? null : periodStart(toExclusive);
+        if (firstWhole != null && afterLastWhole != null && firstWhole.isAfter(afterLastWhole)) {
+            // Range inside a single period: archived shifts only
+            firstWhole = afterLastWhole;
+        }
+
+        Map<String, Double> hours = new TreeMap<>();
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT h.employee_id, SUM(h.minutes) / 60.0 FROM pay_period_hours h");
+        joinDepartment(sql, "h", department, parameters);
+        sql.append(" WHERE 1 = 1");
+        bound(sql, "h.period_start >= ?", firstWhole, parameters);
+        bound(sql, "h.period_start < ?", afterLastWhole, parameters);
+        sql.append(" GROUP BY h.employee_id");
+        sum(conn, sql.toString(), parameters, hours);
+
+        if (from != null && from.isBefore(firstWhole)) {
+            sumShifts(conn, from, firstWhole, department, hours);
+        }
+        if (toExclusive != null && afterLastWhole.isBefore(toExclusive)) {
+            sumShifts(conn, from != null && from.isAfter(afterLastWhole) ? from : afterLastWhole, toExclusive, department, hours);
+        }
+
+        List<EmployeeHours> report = new ArrayList<>();
+        hours.forEach((employeeId, total) -> report.add(new EmployeeHours(employeeId, total)));
+        return report;
+    }
+
+    private void sumShifts(Connection conn, LocalDate from, LocalDate toExclusive, String department, Map<String, Double> hours) throws SQLException {
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT a.employee_id, SUM(TIMESTAMPDIFF(MINUTE, a.start_time, a.end_time)) / 60.0 FROM "
+                + ARCHIVE_TABLE + " a");
+        joinDepartment(sql, "a", department, parameters);
+        sql.append(" WHERE a.start_time >= ? AND a.start_time < ? GROUP BY a.employee_id");
+        parameters.add(Timestamp.valueOf(from.atStartOfDay()));
+        parameters.add(Timestamp.valueOf(toExclusive.atStartOfDay()));
+        sum(conn, sql.toString(), parameters, hours);
+    }
+
+    private static void sum(Connection conn, String sql, List<Object> parameters, Map<String, Double> hours) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    hours.merge(rs.getString(1), rs.getDouble(2), Double::sum);
+                }
+            }
+        }
+    }
+
+    private static void joinDepartment(StringBuilder sql, String alias, String department, List<Object> parameters) {
+        if (department != null) {
+            sql.append(" JOIN employees e ON e.employee_id = ").append(alias).append(".employee_id AND e.department = ?");
+            parameters.add(department);
+        }
+    }
+
+    private static void bound(StringBuilder sql, String condition, LocalDate value, List<Object> parameters) {
+        if (value != null) {
+            sql.append(" AND ").append(condition);
+            parameters.add(value);
+        }
+    }
+}
@@ -0,0 +1,573 @@
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Regular and overtime minutes per employee for one pay period, written to payroll_hours. Minutes
+// over the daily threshold are overtime, then minutes over the weekly threshold (weeks start on
+// Monday) among those still regular; shifts crossing midnight count towards each day they touch.
+// Thresholds come from -Dtimesheet.payroll.overtime as daily/weekly hours (default 8/40, "-" for
+// none) and per department from -Dtimesheet.payroll.departmentOvertime, e.g. Warehouse:10/40,Office:-/40.
+// Like reports, a shift belongs to the period it starts in; with an anchor that is not a Monday,
+// weeks are cut at the period boundary.
+//
+// The employee id space is split into ranges worked on by -Dtimesheet.payroll.threads threads.
+// Each range is read in chunks of -Dtimesheet.payroll.chunkEmployees employees: one pass over a
+// forward-only cursor of their shifts in employee and start time order, holding only the current
+// employee's days, then one transaction writing the chunk's results and the range's progress. So
+// memory does not grow with the number of shifts, results do not depend on the thread count, and a
+// run that stops half way resumes after the last committed chunk. Each chunk advances its range's
+// progress from where it started in the same transaction, so a second runner on the same period
+// never writes a chunk twice, but runs are meant to be one at a time.
+class PayrollEngine {
+
+    static class Rules {
+        // Minutes; Long.MAX_VALUE for no threshold
+        final long dailyMinutes;
+        final long weeklyMinutes;
+
+        Rules(long dailyMinutes, long weeklyMinutes) {
+            this.dailyMinutes = dailyMinutes;
+            this.weeklyMinutes = weeklyMinutes;
+        }
+
+        // daily/weekly in hours, "-" for none, e.g. 8/40 or -/40.
+        static Rules parse(String spec) {
+            String[] parts = spec.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Overtime rule must be daily/weekly hours: " + spec);
+            }
+            return new Rules(minutes(parts[0]), minutes(parts[1]));
+        }
+
+        private static long minutes(String hours) {
+            hours = hours.trim();
+            return hours.equals("-") ? Long.MAX_VALUE : Math.round(Double.parseDouble(hours) * 60);
+        }
+
+        @Override
+        public String toString() {
+            return hours(dailyMinutes) + "/" + hours(weeklyMinutes);
+        }
+
+        private static String hours(long minutes) {
+            return minutes == Long.MAX_VALUE ? "-" : minutes % 60 == 0 ? Long.toString(minutes / 60) : Double.toString(minutes / 60.0);
+        }
+    }
+
+    static class Line {
+        final String employeeId;
+        final String department;
+        final int shifts;
+        final long regularMinutes;
+        final long overtimeMinutes;
+
+        Line(String employeeId, String department, int shifts, long regularMinutes, long overtimeMinutes) {
+            this.employeeId = employeeId;
+            this.department = department;
+            this.shifts = shifts;
+            this.regularMinutes = regularMinutes;
+            this.overtimeMinutes = overtimeMinutes;
+        }
+    }
+
+    static class Result {
+        LocalDate periodStart;
+        long employees;
+        long shifts;
+        long regularMinutes;
+        long overtimeMinutes;
+        // Employees already done by an earlier run, all of them when it had finished
+        long resumedEmployees;
+        int partitions;
+        long elapsedNanos;
+
+        @Override
+        public String toString() {
+            return String.format("period %s: employees=%d shifts=%d regular=%.1fh overtime=%.1fh resumed=%d, %d partitions, %.1fs, %.0f shifts/s",
+                    periodStart, employees, shifts, regularMinutes / 60.0, overtimeMinutes / 60.0, resumedEmployees, partitions,
+                    elapsedNanos / 1e9, elapsedNanos == 0 ? 0 : shifts * 1e9 / elapsedNanos);
+        }
+    }
+
+    private static class Partition {
+        final int number;
+        // Ids in (lowerId, upperId]; null means unbounded
+        final String lowerId;
+        final String upperId;
+        String doneThrough;
+
+        Partition(int number, String lowerId, String upperId, String doneThrough) {
+            this.number = number;
+            this.lowerId = lowerId;
+            this.upperId = upperId;
+            this.doneThrough = doneThrough;
+        }
+    }
+
+    // Splits one employee's shifts into days and weeks and applies the thresholds.
+    private static class Calculator {
+        private final Map<LocalDate, long[]> dayMinutes = new HashMap<>();
+        private final Map<LocalDate, long[]> weekRegularMinutes = new HashMap<>();
+        String employeeId;
+        String department;
+        Rules rules;
+        int shifts;
+        long regular;
+        long overtime;
+
+        void begin(String employeeId, String department, Rules rules) {
+            this.employeeId = employeeId;
+            this.department = department;
+            this.rules = rules;
+            dayMinutes.clear();
+            weekRegularMinutes.clear();
+            shifts = 0;
+            regular = 0;
+            overtime = 0;
+        }
+
+        // Whole minutes as TIMESTAMPDIFF counts them for the shift, cut at each midnight so the
+        // days add up to the shift.
+        void add(LocalDateTime start, LocalDateTime end) {
+            shifts++;
+            long total = Duration.between(start, end).toMinutes();
+            long allocated = 0;
+            LocalDateTime dayStart = start;
+            while (allocated < total) {
+                LocalDateTime midnight = dayStart.toLocalDate().plusDays(1).atStartOfDay();
+                long upTo = end.isAfter(midnight) ? Duration.between(start, midnight).toMinutes() : total;
+                addToDay(dayStart.toLocalDate(), upTo - allocated);
+                allocated = upTo;
+                dayStart = midnight;
+            }
+        }
+
+        private void addToDay(LocalDate day, long minutes) {
+            long[] worked = dayMinutes.computeIfAbsent(day, d -> new long[1]);
+            long dailyRegular = Math.max(0, Math.min(minutes, rules.dailyMinutes - worked[0]));
+            worked[0] += minutes;
+            long[] weekRegular = weekRegularMinutes.computeIfAbsent(HoursRollup.weekStart(day), d -> new long[1]);
+            long dayRegular = Math.max(0, Math.min(dailyRegular, rules.weeklyMinutes - weekRegular[0]));
+            weekRegular[0] += dayRegular;
+            regular += dayRegular;
+            overtime += minutes - dayRegular;
+        }
+
+        Line finish() {
+            return new Line(employeeId, department, shifts, regular, overtime);
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final PayPeriodArchive payPeriods;
+    private final Rules defaultRules;
+    private final Map<String, Rules> departmentRules = new TreeMap<>();
+    private final int threads = Math.max(1, Integer.getInteger("timesheet.payroll.threads", Runtime.getRuntime().availableProcessors()));
+    private final int partitionsPerThread = Integer.getInteger("timesheet.payroll.partitionsPerThread", 4);
+    private final int chunkEmployees = Integer.getInteger("timesheet.payroll.chunkEmployees", 1000);
+    private final int fetchSize = Integer.getInteger("timesheet.export.fetchSize", 1000);
+
+    PayrollEngine(DatabaseManager dbManager, PayPeriodArchive payPeriods) {
+        this.dbManager = dbManager;
+        this.payPeriods = payPeriods;
+        this.defaultRules = Rules.parse(System.getProperty("timesheet.payroll.overtime", "8/40"));
+        String departments = System.getProperty("timesheet.payroll.departmentOvertime", "");
+        for (String entry : departments.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Department overtime rule must be department:daily/weekly: " + entry);
+            }
+            departmentRules.put(entry.substring(0, separator).trim(), Rules.parse(entry.substring(separator + 1)));
+        }
+    }
+
+    // Computes the pay period containing the given day. A finished run is returned as recorded and
+    // an interrupted one resumes, unless recompute is set or the overtime rules changed since, in
+    // which case it starts over.
+    synchronized Result run(LocalDate day, boolean recompute) throws SQLException, InterruptedException {
+        long started = System.nanoTime();
+        LocalDate periodStart = payPeriods.periodStart(day);
+        List<Partition> pending = prepare(periodStart, recompute);
+        Result result = new Result();
+        result.periodStart = periodStart;
+        result.resumedEmployees = countResults(periodStart);
+
+        if (pending != null && !pending.isEmpty()) {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, pending.size()), r -> {
+                Thread thread = new Thread(r, "payroll-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Partition partition : pending) {
+                    futures.add(workers.submit(() -> {
+                        computePartition(periodStart, partition, cancelled);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException ex) {
+                Throwable cause = DataAccessExecutor.rootCause(ex);
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                }
+                if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                stopWorkers(workers, cancelled);
+            }
+        }
+        if (pending != null) {
+            complete(periodStart);
+        }
+        summarize(periodStart, result);
+        result.partitions = countPartitions(periodStart);
+        result.elapsedNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    // One period's results in employee id order.
+    List<Line> lines(LocalDate periodStart) throws SQLException {
+        List<Line> lines = new ArrayList<>();
+        try (Connection conn = dbManager.getReadConnection(null);
+             PreparedStatement stmt = conn.prepareStatement("SELECT employee_id, department, shifts, regular_minutes, overtime_minutes "
+                     + "FROM payroll_hours WHERE period_start = ? ORDER BY employee_id")) {
+            stmt.setDate(1, Date.valueOf(periodStart));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(new Line(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getLong(4), rs.getLong(5)));
+                }
+            }
+        }
+        return lines;
+    }
+
+    // Rules in a canonical form, recorded with the run so a resume never mixes two rule sets.
+    String describeRules() {
+        StringBuilder rules = new StringBuilder(defaultRules.toString());
+        departmentRules.forEach((department, rule) -> rules.append(',').append(department).append(':').append(rule));
+        return rules.toString();
+    }
+
+    // Returns the unfinished partitions of the period's run, starting a new run first when there is
+    // none, it is to be recomputed or its rules are outdated; null when the run is already complete.
+    private List<Partition> prepare(LocalDate periodStart, boolean recompute) throws SQLException {
+        String rules = describeRules();
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            boolean fresh = recompute;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT rules, completed_at FROM payroll_run WHERE period_start = ? FOR UPDATE")) {
+                stmt.setDate(1, Date.valueOf(periodStart));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        fresh = true;
+                    } else if (!rules.equals(rs.getString(1))) {
+                        System.out.println("Payroll for " + periodStart + ": overtime rules changed from " + rs.getString(1) + ", starting over");
+                        fresh = true;
+                    } else if (!recompute && rs.getTimestamp(2) != null) {
+                        conn.commit();
+                        return null;
+                    }
+                }
+            }
+            if (fresh) {
+                for (String table : new String[]{"payroll_hours", "payroll_partition", "payroll_run"}) {
+                    try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE period_start = ?")) {
+                        stmt.setDate(1, Date.valueOf(periodStart));
+                        stmt.executeUpdate();
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO payroll_run (period_start, rules, started_at) VALUES (?, ?, ?)")) {
+                    stmt.setDate(1, Date.valueOf(periodStart));
+                    stmt.setString(2, rules);
+                    stmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+                    stmt.executeUpdate();
+                }
+                List<String> bounds = partitionBounds(conn);
+                try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO payroll_partition "
+                        + "(period_start, partition_no, lower_id, upper_id, done_through, finished) VALUES (?, ?, ?, ?, NULL, FALSE)")) {
+                    for (int i = 0; i <= bounds.size(); i++) {
+                        stmt.setDate(1, Date.valueOf(periodStart));
+                        stmt.setInt(2, i);
+                        stmt.setString(3, i == 0 ? null : bounds.get(i - 1));
+                        stmt.setString(4, i == bounds.size() ? null : bounds.get(i));
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            conn.commit();
+
+            List<Partition> pending = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT partition_no, lower_id, upper_id, done_through FROM payroll_partition "
+                    + "WHERE period_start = ? AND NOT finished ORDER BY partition_no")) {
+                stmt.setDate(1, Date.valueOf(periodStart));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        pending.add(new Partition(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+                    }
+                }
+            }
+            return pending;
+        }
+    }
+
+    // Ids splitting the employees into about threads * partitionsPerThread equal ranges, but no
+    // ranges smaller than a chunk. Shifts of employees deleted since still fall into some range.
+    private List<String> partitionBounds(Connection conn) throws SQLException {
+        long employees;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM employees")) {
+            rs.next();
+            employees = rs.getLong(1);
+        }
+        long partitions = Math.max(1, Math.min((long) threads * partitionsPerThread, employees / chunkEmployees));
+        List<String> bounds = new ArrayList<>();
+        if (partitions == 1) {
+            return bounds;
+        }
+        long perPartition = (employees + partitions - 1) / partitions;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT employee_id FROM employees ORDER BY employee_id",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(ReportExporter.streamingFetchSize(conn, fetchSize));
+            try (ResultSet rs = stmt.executeQuery()) {
+                for (long row = 1; rs.next(); row++) {
+                    if (row % perPartition == 0 && row < employees) {
+                        bounds.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return bounds;
+    }
+
+    private void computePartition(LocalDate periodStart, Partition partition, AtomicBoolean cancelled)
+            throws SQLException, InterruptedException {
+        while (true) {
+            if (cancelled.get()) {
+                throw new InterruptedException("Payroll for " + periodStart + " interrupted");
+            }
+            try (Connection conn = dbManager.getConnection()) {
+                String chunkUpper = chunkUpperBound(conn, partition);
+                boolean last = chunkUpper == null || chunkUpper.equals(partition.upperId);
+                List<Line> lines = computeChunk(conn, periodStart, partition.doneThrough != null ? partition.doneThrough : partition.lowerId, chunkUpper,
+                        cancelled);
+                conn.setAutoCommit(false);
+                // Moves the progress on only from where this chunk started, so a chunk is never
+                // written twice even if another runner got to it first
+                try (PreparedStatement stmt = conn.prepareStatement("UPDATE payroll_partition SET done_through = ?, finished = ? "
+                        + "WHERE period_start = ? AND partition_no = ? AND NOT finished AND COALESCE(done_through, '') = ?")) {
+                    stmt.setString(1, chunkUpper);
+                    stmt.setBoolean(2, last);
+                    stmt.setDate(3, Date.valueOf(periodStart));
+                    stmt.setInt(4, partition.number);
+                    stmt.setString(5, partition.doneThrough == null ? "" : partition.doneThrough);
+                    if (stmt.executeUpdate() == 0) {
+                        conn.rollback();
+                        return;
+                    }
+                }
+                writeChunk(conn, periodStart, lines);
+                conn.commit();
+                if (last) {
+                    return;
+                }
+                partition.doneThrough = chunkUpper;
+            }
+        }
+    }
+
+    // Id of the chunkEmployees-th employee after the partition's progress, capped at its upper
+    // bound; null once the rest of an unbounded partition fits in one chunk.
+    private String chunkUpperBound(Connection conn, Partition partition) throws SQLException {
+        String after = partition.doneThrough != null ? partition.doneThrough : partition.lowerId;
+        StringBuilder sql = new StringBuilder("SELECT employee_id FROM employees WHERE 1 = 1");
+        List<Object> parameters = new ArrayList<>();
+        if (after != null) {
+            sql.append(" AND employee_id > ?");
+            parameters.add(after);
+        }
+        if (partition.upperId != null) {
+            sql.append(" AND employee_id <= ?");
+            parameters.add(partition.upperId);
+        }
+        sql.append(" ORDER BY employee_id LIMIT 1 OFFSET ?");
+        parameters.add(chunkEmployees - 1);
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : partition.upperId;
+            }
+        }
+    }
+
+    // One pass over the finished shifts of employees in (afterId, throughId] starting in the period.
+    private List<Line> computeChunk(Connection conn, LocalDate periodStart, String afterId, String throughId, AtomicBoolean cancelled)
+            throws SQLException, InterruptedException {
+        StringBuilder range = new StringBuilder(" WHERE start_time >= ? AND start_time < ? AND end_time IS NOT NULL");
+        List<Object> rangeParameters = new ArrayList<>();
+        rangeParameters.add(Timestamp.valueOf(periodStart.atStartOfDay()));
+        rangeParameters.add(Timestamp.valueOf(payPeriods.periodEnd(periodStart).atStartOfDay()));
+        if (afterId != null) {
+            range.append(" AND employee_id > ?");
+            rangeParameters.add(afterId);
+        }
+        if (throughId != null) {
+            range.append(" AND employee_id <= ?");
+            rangeParameters.add(throughId);
+        }
+        String shifts = "(SELECT employee_id, start_time, end_time FROM timesheet" + range;
+        List<Object> parameters = new ArrayList<>(rangeParameters);
+        if (payPeriods.reachesArchive(periodStart)) {
+            shifts += " UNION ALL SELECT employee_id, start_time, end_time FROM " + PayPeriodArchive.ARCHIVE_TABLE + range;
+            parameters.addAll(rangeParameters);
+        }
+        String sql = "SELECT t.employee_id, e.department, t.start_time, t.end_time FROM " + shifts + ") t "
+                + "LEFT JOIN employees e ON e.employee_id = t.employee_id ORDER BY t.employee_id, t.start_time, t.end_time";
+
+        List<Line> lines = new ArrayList<>();
+        Calculator calculator = new Calculator();
+        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(ReportExporter.streamingFetchSize(conn, fetchSize));
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                long rows = 0;
+                while (rs.next()) {
+                    String employeeId = rs.getString(1);
+                    if (!employeeId.equals(calculator.employeeId)) {
+                        if (calculator.employeeId != null) {
+                            lines.add(calculator.finish());
+                        }
+                        String department = rs.getString(2);
+                        calculator.begin(employeeId, department, department == null ? defaultRules : departmentRules.getOrDefault(department, defaultRules));
+                    }
+                    calculator.add(rs.getTimestamp(3).toLocalDateTime(), rs.getTimestamp(4).toLocalDateTime());
+                    if (++rows % 10_000 == 0 && cancelled.get()) {
+                        throw new InterruptedException("Payroll for " + periodStart + " interrupted");
+                    }
+                }
+            }
+        }
+        if (calculator.employeeId != null) {
+            lines.add(calculator.finish());
+        }
+        return lines;
+    }
+
+    private static void writeChunk(Connection conn, LocalDate periodStart, List<Line> lines) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO payroll_hours "
+                + "(period_start, employee_id, department, shifts, regular_minutes, overtime_minutes) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (Line line : lines) {
+                stmt.setDate(1, Date.valueOf(periodStart));
+                stmt.setString(2, line.employeeId);
+                stmt.setString(3, line.department);
+                stmt.setInt(4, line.shifts);
+                stmt.setLong(5, line.regularMinutes);
+                stmt.setLong(6, line.overtimeMinutes);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // Waits for the workers to stop, so a chunk still being written cannot land after run returns.
+    // They are asked to stop rather than interrupted, as an interrupt in the middle of a JDBC call
+    // can break the connection (H2 closes its file on one).
+    private static void stopWorkers(ExecutorService workers, AtomicBoolean cancelled) {
+        cancelled.set(true);
+        workers.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void complete(LocalDate periodStart) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE payroll_run SET completed_at = ? WHERE period_start = ? "
+                     + "AND NOT EXISTS (SELECT 1 FROM payroll_partition WHERE period_start = ? AND NOT finished)")) {
+            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setDate(2, Date.valueOf(periodStart));
+            stmt.setDate(3, Date.valueOf(periodStart));
+            stmt.executeUpdate();
+        }
+    }
+
+    private void summarize(LocalDate periodStart, Result result) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*), COALESCE(SUM(shifts), 0), COALESCE(SUM(regular_minutes), 0), "
+                     + "COALESCE(SUM(overtime_minutes), 0) FROM payroll_hours WHERE period_start = ?")) {
+            stmt.setDate(1, Date.valueOf(periodStart));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                result.employees = rs.getLong(1);
+                result.shifts = rs.getLong(2);
+                result.regularMinutes = rs.getLong(3);
+                result.overtimeMinutes = rs.getLong(4);
+            }
+        }
+    }
+
+    private long countResults(LocalDate periodStart) throws SQLException {
+        return count("SELECT COUNT(*) FROM payroll_hours WHERE period_start = ?", periodStart);
+    }
+
+    private int countPartitions(LocalDate periodStart) throws SQLException {
+        return (int) count("SELECT COUNT(*) FROM payroll_partition WHERE period_start = ?", periodStart);
+    }
+
+    private long count(String sql, LocalDate periodStart) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setDate(1, Date.valueOf(periodStart));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            stmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+}
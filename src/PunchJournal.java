@@ -0,0 +1,423 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+// Write-behind buffer for clock punches taken while the database cannot be reached or does not
+// answer within the punch timeout. A punch is appended to a memory-mapped, append-only file and
+// forced to disk before it is acknowledged; a background thread then writes finished shifts to the
+// database in batches and appends an acknowledgement record once they are committed. Opening the journal after a crash replays
+// everything that was not acknowledged, including shifts that were clocked in but not yet out.
+//
+// Layout: an 8 byte header (magic, version), then records of [int length][int crc32][payload];
+// a zero length marks the end. A torn record at the tail fails its checksum and is overwritten.
+class PunchJournal implements AutoCloseable {
+
+    // Writes shifts to the database; must be idempotent, since a batch that committed just before a
+    // crash is replayed again.
+    interface Sink {
+        void write(List<TimesheetEntry> shifts) throws SQLException;
+    }
+
+    static class Stats {
+        final int backlog;
+        final long lagMillis;
+        final int openShifts;
+        final long appended;
+        final long flushed;
+        final long flushFailures;
+        final long bytesUsed;
+        final long capacity;
+
+        Stats(int backlog, long lagMillis, int openShifts, long appended, long flushed, long flushFailures,
+              long bytesUsed, long capacity) {
+            this.backlog = backlog;
+            this.lagMillis = lagMillis;
+            this.openShifts = openShifts;
+            this.appended = appended;
+            this.flushed = flushed;
+            this.flushFailures = flushFailures;
+            this.bytesUsed = bytesUsed;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("backlog=%d lag=%dms open=%d appended=%d flushed=%d failures=%d used=%d/%d bytes",
+                    backlog, lagMillis, openShifts, appended, flushed, flushFailures, bytesUsed, capacity);
+        }
+    }
+
+    private static final int MAGIC = 0x54534a31; // "TSJ1"
+    private static final int HEADER_SIZE = 8;
+    private static final byte START = 1;
+    private static final byte END = 2;
+    private static final byte ACK = 3;
+
+    private static class Pending {
+        final long sequence;
+        final TimesheetEntry shift;
+        final long appendedAtMillis;
+
+        Pending(long sequence, TimesheetEntry shift, long appendedAtMillis) {
+            this.sequence = sequence;
+            this.shift = shift;
+            this.appendedAtMillis = appendedAtMillis;
+        }
+    }
+
+    private static class OpenShift {
+        final long sequence;
+        final LocalDateTime start;
+
+        OpenShift(long sequence, LocalDateTime start) {
+            this.sequence = sequence;
+            this.start = start;
+        }
+    }
+
+    private final Path file;
+    private final Sink sink;
+    private final int capacity;
+    private final boolean sync;
+    private final int batchSize = Integer.getInteger("timesheet.journal.batchSize", 500);
+    private final long flushIntervalMillis = Long.getLong("timesheet.journal.flushMillis", 200);
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final CRC32 crc = new CRC32();
+    // Read without the monitor by openShiftStart, which every punch calls
+    private final Map<String, OpenShift> openShifts = new ConcurrentHashMap<>();
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private final Thread flusher;
+    private MappedByteBuffer buffer;
+    private long nextSequence = 1;
+    private long appended;
+    private long flushed;
+    private long flushFailures;
+    private boolean closed;
+
+    // Fails if another process has the journal open.
+    PunchJournal(Path file, Sink sink) throws IOException {
+        this.file = file;
+        this.sink = sink;
+        this.capacity = Integer.getInteger("timesheet.journal.sizeMB", 16) * 1024 * 1024;
+        this.sync = !"false".equals(System.getProperty("timesheet.journal.sync"));
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        // The lock lives on a side file because compaction replaces the journal itself.
+        this.lockChannel = FileChannel.open(file.resolveSibling(file.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Punch journal " + file + " is in use by another process");
+        }
+
+        boolean existed = Files.exists(file) && Files.size(file) >= HEADER_SIZE;
+        buffer = map(file);
+        if (existed && buffer.getInt(0) == MAGIC) {
+            replay();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, 1);
+            buffer.position(HEADER_SIZE);
+            buffer.putInt(HEADER_SIZE, 0);
+        }
+
+        flusher = new Thread(this::flushLoop, "punch-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Returns false if the employee is already clocked in.
+    synchronized boolean clockIn(String employeeId, LocalDateTime start) throws IOException {
+        if (closed) {
+            throw new IOException("Punch journal is closed");
+        }
+        if (openShifts.containsKey(employeeId)) {
+            return false;
+        }
+        long sequence = nextSequence++;
+        append(START, sequence, employeeId, start, null, System.currentTimeMillis());
+        openShifts.put(employeeId, new OpenShift(sequence, start));
+        return true;
+    }
+
+    // Returns the recorded shift, or null if the employee is not clocked in. The shift reaches the
+    // database asynchronously.
+    synchronized TimesheetEntry clockOut(String employeeId, LocalDateTime end) throws IOException {
+        if (closed) {
+            throw new IOException("Punch journal is closed");
+        }
+        OpenShift open = openShifts.get(employeeId);
+        if (open == null) {
+            return null;
+        }
+        long sequence = nextSequence++;
+        long now = System.currentTimeMillis();
+        append(END, sequence, employeeId, open.start, end, now);
+        openShifts.remove(employeeId);
+        TimesheetEntry shift = new TimesheetEntry(employeeId, open.start, end, Duration.between(open.start, end).toMinutes() / 60.0);
+        pending.addLast(new Pending(sequence, shift, now));
+        notifyAll();
+        return shift;
+    }
+
+    LocalDateTime openShiftStart(String employeeId) {
+        OpenShift open = openShifts.get(employeeId);
+        return open == null ? null : open.start;
+    }
+
+    synchronized Stats getStats() {
+        long lag = pending.isEmpty() ? 0 : System.currentTimeMillis() - pending.peekFirst().appendedAtMillis;
+        return new Stats(pending.size(), lag, openShifts.size(), appended, flushed, flushFailures, buffer.position(), capacity);
+    }
+
+    // Waits up to timeoutMillis for the backlog to drain; returns whether it did.
+    synchronized boolean awaitFlushed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!pending.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    // Stops the flusher after one last attempt; anything still unflushed stays in the file for next time.
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            buffer.force();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    private void flushLoop() {
+        long backoffMillis = flushIntervalMillis;
+        while (true) {
+            List<Pending> batch;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+                for (Pending entry : pending) {
+                    if (batch.size() == batchSize) {
+                        break;
+                    }
+                    batch.add(entry);
+                }
+            }
+
+            List<TimesheetEntry> shifts = new ArrayList<>(batch.size());
+            for (Pending entry : batch) {
+                shifts.add(entry.shift);
+            }
+            try {
+                sink.write(shifts);
+                synchronized (this) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        pending.removeFirst();
+                    }
+                    flushed += batch.size();
+                    append(ACK, batch.get(batch.size() - 1).sequence, null, null, null, System.currentTimeMillis());
+                    notifyAll();
+                }
+                backoffMillis = flushIntervalMillis;
+            } catch (SQLException | IOException | RuntimeException ex) {
+                synchronized (this) {
+                    flushFailures++;
+                    if (closed) {
+                        return;
+                    }
+                }
+                System.err.println("Punch journal flush failed, retrying in " + backoffMillis + " ms: " + ex);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, 30_000);
+            }
+        }
+    }
+
+    private void append(byte type, long sequence, String employeeId, LocalDateTime start, LocalDateTime end,
+                        long timestampMillis) throws IOException {
+        byte[] payload = encode(type, sequence, employeeId, start, end, timestampMillis);
+        if (buffer.position() + 8 + payload.length + 4 > capacity) {
+            compact();
+            if (buffer.position() + 8 + payload.length + 4 > capacity) {
+                throw new IOException("Punch journal is full; " + pending.size() + " shifts are waiting for the database");
+            }
+        }
+        writeRecord(buffer, payload);
+        if (sync) {
+            buffer.force();
+        }
+        appended++;
+    }
+
+    private void writeRecord(MappedByteBuffer target, byte[] payload) {
+        int position = target.position();
+        crc.reset();
+        crc.update(payload);
+        // Terminator first, then the record, so a reader never runs past a half-written tail
+        target.putInt(position + 8 + payload.length, 0);
+        target.position(position + 4);
+        target.putInt((int) crc.getValue());
+        target.put(payload);
+        target.putInt(position, payload.length);
+    }
+
+    // Rewrites the file with just the live records: open shifts and shifts not yet flushed.
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(temp);
+        MappedByteBuffer compacted = map(temp);
+        compacted.putInt(0, MAGIC);
+        compacted.putInt(4, 1);
+        compacted.position(HEADER_SIZE);
+        compacted.putInt(HEADER_SIZE, 0);
+        List<Object[]> live = new ArrayList<>();
+        for (Map.Entry<String, OpenShift> open : openShifts.entrySet()) {
+            live.add(new Object[]{open.getValue().sequence, encode(START, open.getValue().sequence, open.getKey(), open.getValue().start, null, System.currentTimeMillis())});
+        }
+        for (Pending entry : pending) {
+            live.add(new Object[]{entry.sequence, encode(END, entry.sequence, entry.shift.getEmployeeId(), entry.shift.getStartTime(),
+                    entry.shift.getEndTime(), entry.appendedAtMillis)});
+        }
+        live.sort((a, b) -> Long.compare((Long) a[0], (Long) b[0]));
+        for (Object[] record : live) {
+            writeRecord(compacted, (byte[]) record[1]);
+        }
+        compacted.force();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The old mapping is released when it is garbage collected.
+        buffer = compacted;
+    }
+
+    private void replay() {
+        Map<Long, Pending> unacknowledged = new HashMap<>();
+        long acknowledged = 0;
+        int position = HEADER_SIZE;
+        while (position + 8 <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 8 + length + 4 > capacity) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + 8, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            byte type = record.get();
+            long sequence = record.getLong();
+            long timestampMillis = record.getLong();
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (type == ACK) {
+                acknowledged = Math.max(acknowledged, sequence);
+            } else {
+                String employeeId = readString(record);
+                LocalDateTime start = LocalDateTime.ofEpochSecond(record.getLong(), 0, ZoneOffset.UTC);
+                if (type == START) {
+                    openShifts.put(employeeId, new OpenShift(sequence, start));
+                } else if (type == END) {
+                    LocalDateTime end = LocalDateTime.ofEpochSecond(record.getLong(), 0, ZoneOffset.UTC);
+                    openShifts.remove(employeeId);
+                    unacknowledged.put(sequence, new Pending(sequence, new TimesheetEntry(employeeId, start, end,
+                            Duration.between(start, end).toMinutes() / 60.0), timestampMillis));
+                }
+            }
+            position += 8 + length;
+        }
+        buffer.position(position);
+        buffer.putInt(position, 0);
+
+        List<Pending> replayed = new ArrayList<>();
+        for (Pending entry : unacknowledged.values()) {
+            if (entry.sequence > acknowledged) {
+                replayed.add(entry);
+            }
+        }
+        replayed.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        pending.addAll(replayed);
+        if (!replayed.isEmpty() || !openShifts.isEmpty()) {
+            System.out.println("Punch journal: replaying " + replayed.size() + " unflushed shifts, " + openShifts.size() + " open");
+        }
+    }
+
+    private static byte[] encode(byte type, long sequence, String employeeId, LocalDateTime start, LocalDateTime end,
+                                 long timestampMillis) {
+        byte[] id = employeeId == null ? new byte[0] : employeeId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 8 + 8 + (type == ACK ? 0 : 2 + id.length + 8 + (end == null ? 0 : 8)));
+        record.put(type);
+        record.putLong(sequence);
+        record.putLong(timestampMillis);
+        if (type != ACK) {
+            record.putShort((short) id.length);
+            record.put(id);
+            record.putLong(start.toEpochSecond(ZoneOffset.UTC));
+            if (end != null) {
+                record.putLong(end.toEpochSecond(ZoneOffset.UTC));
+            }
+        }
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xffff];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Finished hours reports by (from, to, department), so the manager's "Generate Report" shows the
+// last result at once instead of rerunning the aggregate. Each snapshot says how recent the data it
+// was computed from is. Entries go when a shift starting inside their range is written (for a
+// department's report, a shift of someone in that department), after -Dtimesheet.reportCache.ttlMinutes,
+// or as the least recently used beyond -Dtimesheet.reportCache.size.
+//
+// Once started, a background thread computes the standard reports (today, this week and this pay
+// period, for everyone and per department) every -Dtimesheet.reportCache.refreshMinutes, and puts
+// invalidated ones back at most every -Dtimesheet.reportCache.recomputeSeconds, so the usual clicks
+// find them ready without a steady stream of punches re-running them back to back. Writes by this process
+// invalidate directly; writes by other processes arrive through the change feed when it is
+// enabled, otherwise only the TTL and the periodic refresh bound how stale a snapshot gets.
+class ReportCache {
+
+    // Computes a report from the database; TimesheetDataService.generateReport.
+    interface Source {
+        List<EmployeeHours> report(LocalDate from, LocalDate to, String department) throws SQLException;
+    }
+
+    // The department an employee's shifts are reported under, null for none or no such employee.
+    interface Departments {
+        String of(String employeeId) throws SQLException;
+    }
+
+    static class Snapshot {
+        final List<EmployeeHours> lines;
+        // Everything committed before this is included
+        final LocalDateTime asOf;
+        final long computedAt;
+
+        Snapshot(List<EmployeeHours> lines, LocalDateTime asOf, long computedAt) {
+            this.lines = lines;
+            this.asOf = asOf;
+            this.computedAt = computedAt;
+        }
+    }
+
+    private static class Key {
+        final LocalDate from;
+        final LocalDate to;
+        final String department;
+
+        Key(LocalDate from, LocalDate to, String department) {
+            this.from = from;
+            this.to = to;
+            this.department = department;
+        }
+
+        boolean covers(LocalDate day) {
+            return (from == null || !day.isBefore(from)) && (to == null || !day.isAfter(to));
+        }
+
+        // Whether a shift on day by someone in shiftDepartment counts here; anyDepartment when that is not known.
+        boolean affectedBy(LocalDate day, String shiftDepartment, boolean anyDepartment) {
+            return covers(day) && (department == null || anyDepartment || department.equals(shiftDepartment));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(from, other.from) && Objects.equals(to, other.to) && Objects.equals(department, other.department);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to, department);
+        }
+    }
+
+    // A computation under way; an invalidation meanwhile keeps its result out of the cache.
+    private static class Pending {
+        final Key key;
+        boolean stale;
+
+        Pending(Key key) {
+            this.key = key;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final ChangeFeed changeFeed;
+    private final PayPeriodArchive payPeriods;
+    private final Source source;
+    private final Departments departments;
+    private final int maxEntries = Integer.getInteger("timesheet.reportCache.size", 200);
+    private final long ttlNanos = TimeUnit.MINUTES.toNanos(Long.getLong("timesheet.reportCache.ttlMinutes", 15));
+    private final long refreshMinutes = Long.getLong("timesheet.reportCache.refreshMinutes", 5);
+    private final long followMillis = Long.getLong("timesheet.reportCache.followMillis", 2_000);
+    private final long recomputeNanos = TimeUnit.SECONDS.toNanos(Long.getLong("timesheet.reportCache.recomputeSeconds", 30));
+
+    // Guarded by this, like inFlight
+    private final Map<Key, Snapshot> entries;
+    private final List<Pending> inFlight = new ArrayList<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong precomputed = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicBoolean recomputeQueued = new AtomicBoolean();
+    private volatile long lastRecomputeAt = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    private ChangeFeed.Cursor timesheetChanges;
+    private ChangeFeed.Cursor employeeChanges;
+    private ScheduledExecutorService scheduler;
+
+    ReportCache(DatabaseManager dbManager, ChangeFeed changeFeed, PayPeriodArchive payPeriods, Source source, Departments departments) {
+        this.dbManager = dbManager;
+        this.changeFeed = changeFeed;
+        this.payPeriods = payPeriods;
+        this.source = source;
+        this.departments = departments;
+        this.entries = new LinkedHashMap<Key, Snapshot>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Snapshot> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "report-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (changeFeed.isEnabled()) {
+            scheduler.execute(() -> {
+                try {
+                    // Nothing is cached yet, so earlier changes do not matter
+                    long latest = changeFeed.latestChangeId();
+                    timesheetChanges = changeFeed.cursor("timesheet", latest);
+                    employeeChanges = changeFeed.cursor("employees", latest);
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            });
+            scheduler.scheduleWithFixedDelay(this::followChangesQuietly, followMillis, followMillis, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::precomputeQuietly, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // The cached snapshot when there is a current one, else a freshly computed one; refresh skips the cache.
+    Snapshot get(LocalDate from, LocalDate to, String department, boolean refresh) throws SQLException {
+        Key key = new Key(from, to, department);
+        if (!refresh) {
+            Snapshot snapshot = cached(key);
+            if (snapshot != null) {
+                hits.incrementAndGet();
+                return snapshot;
+            }
+        }
+        misses.incrementAndGet();
+        return compute(key);
+    }
+
+    // Call after committing a finished shift of the employee starting on the given day.
+    void invalidate(String employeeId, LocalDate day) {
+        if (!covered(day)) {
+            return;
+        }
+        String department = null;
+        boolean anyDepartment = false;
+        try {
+            department = departments.of(employeeId);
+        } catch (SQLException ex) {
+            anyDepartment = true;
+        }
+        synchronized (this) {
+            for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().affectedBy(day, department, anyDepartment)) {
+                    it.remove();
+                    invalidated.incrementAndGet();
+                }
+            }
+            for (Pending pending : inFlight) {
+                pending.stale |= pending.key.affectedBy(day, department, anyDepartment);
+            }
+        }
+        recomputeSoon();
+    }
+
+    // Saves the department lookup for the usual punch that no cached report includes.
+    private synchronized boolean covered(LocalDate day) {
+        for (Key key : entries.keySet()) {
+            if (key.covers(day)) {
+                return true;
+            }
+        }
+        for (Pending pending : inFlight) {
+            if (pending.key.covers(day)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // For changes that may touch any report: bulk imports, employees moving department or leaving.
+    void invalidateAll() {
+        synchronized (this) {
+            invalidated.addAndGet(entries.size());
+            entries.clear();
+            for (Pending pending : inFlight) {
+                pending.stale = true;
+            }
+        }
+        recomputeSoon();
+    }
+
+    String getStats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        long lookups = hits.get() + misses.get();
+        return String.format("hitRate=%.1f%% hits=%d misses=%d cached=%d precomputed=%d invalidated=%d",
+                lookups == 0 ? 0.0 : hits.get() * 100.0 / lookups, hits.get(), misses.get(), size, precomputed.get(), invalidated.get());
+    }
+
+    private synchronized Snapshot cached(Key key) {
+        Snapshot snapshot = entries.get(key);
+        if (snapshot != null && System.nanoTime() - snapshot.computedAt > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return snapshot;
+    }
+
+    private Snapshot compute(Key key) throws SQLException {
+        Pending pending = new Pending(key);
+        synchronized (this) {
+            inFlight.add(pending);
+        }
+        Snapshot snapshot = null;
+        try {
+            // Taken before the query and less the lag of the replica it may read from, so the snapshot
+            // claims no more than it has seen
+            LocalDateTime asOf = LocalDateTime.now().minus(dbManager.readLagMillis(), ChronoUnit.MILLIS);
+            long computedAt = System.nanoTime();
+            snapshot = new Snapshot(Collections.unmodifiableList(source.report(key.from, key.to, key.department)), asOf, computedAt);
+            return snapshot;
+        } finally {
+            synchronized (this) {
+                inFlight.remove(pending);
+                if (snapshot != null && !pending.stale) {
+                    entries.put(key, snapshot);
+                }
+            }
+        }
+    }
+
+    // Puts invalidated standard reports back followMillis after the first invalidation, but no sooner
+    // than recomputeNanos after the last time, so a burst of punches costs one recompute each and a
+    // steady stream of them no more than one per interval.
+    private synchronized void recomputeSoon() {
+        if (scheduler == null || !recomputeQueued.compareAndSet(false, true)) {
+            return;
+        }
+        long delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(followMillis), lastRecomputeAt + recomputeNanos - System.nanoTime());
+        scheduler.schedule(() -> {
+            recomputeQueued.set(false);
+            try {
+                precompute(LocalDate.now(), true);
+            } catch (SQLException | RuntimeException ex) {
+                ex.printStackTrace();
+            } finally {
+                lastRecomputeAt = System.nanoTime();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void precomputeQuietly() {
+        try {
+            precompute(LocalDate.now(), changeFeed.isEnabled());
+        } catch (SQLException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    // Without the change feed a snapshot may miss other processes' writes, so every run redoes them
+    // all; with it, only the invalidated ones.
+    private void precompute(LocalDate today, boolean missingOnly) throws SQLException {
+        for (Key key : standardReports(today)) {
+            if (!missingOnly || cached(key) == null) {
+                compute(key);
+                precomputed.incrementAndGet();
+            }
+        }
+    }
+
+    // Today, this week and this pay period for everyone, then per department while they take up
+    // no more than half the cache, leaving the rest for ad hoc ranges.
+    private List<Key> standardReports(LocalDate today) throws SQLException {
+        LocalDate weekStart = HoursRollup.weekStart(today);
+        LocalDate periodStart = payPeriods.periodStart(today);
+        List<LocalDate[]> ranges = new ArrayList<>();
+        ranges.add(new LocalDate[]{today, today});
+        ranges.add(new LocalDate[]{weekStart, weekStart.plusDays(6)});
+        ranges.add(new LocalDate[]{periodStart, payPeriods.periodEnd(periodStart).minusDays(1)});
+
+        List<Key> keys = new ArrayList<>();
+        for (LocalDate[] range : ranges) {
+            keys.add(new Key(range[0], range[1], null));
+        }
+        for (String department : departmentNames()) {
+            if (keys.size() + ranges.size() > maxEntries / 2) {
+                break;
+            }
+            for (LocalDate[] range : ranges) {
+                keys.add(new Key(range[0], range[1], department));
+            }
+        }
+        return keys;
+    }
+
+    private List<String> departmentNames() throws SQLException {
+        List<String> departments = new ArrayList<>();
+        try (Connection conn = dbManager.getReadConnection(TimesheetDataService.EMPLOYEES_KEY);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT department FROM employees WHERE department IS NOT NULL ORDER BY department")) {
+            while (rs.next()) {
+                departments.add(rs.getString(1));
+            }
+        }
+        return departments;
+    }
+
+    private void followChangesQuietly() {
+        try {
+            followChanges();
+        } catch (SQLException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    // Shifts written by other processes (and echoes of our own, which cost one extra recompute).
+    private void followChanges() throws SQLException {
+        if (timesheetChanges == null) {
+            // The start failed; try again
+            long latest = changeFeed.latestChangeId();
+            timesheetChanges = changeFeed.cursor("timesheet", latest);
+            employeeChanges = changeFeed.cursor("employees", latest);
+        }
+        List<ChangeFeed.Change> changes;
+        while (!(changes = changeFeed.poll(timesheetChanges, 10_000)).isEmpty()) {
+            for (ChangeFeed.Change change : changes) {
+                int separator = change.rowKey.lastIndexOf('|');
+                invalidate(change.rowKey.substring(0, separator), LocalDateTime.parse(change.rowKey.substring(separator + 1)).toLocalDate());
+            }
+        }
+        while (!(changes = changeFeed.poll(employeeChanges, 10_000)).isEmpty()) {
+            for (ChangeFeed.Change change : changes) {
+                // A new employee has no shifts yet
+                if (!ChangeFeed.INSERT.equals(change.operation)) {
+                    invalidateAll();
+                    break;
+                }
+            }
+        }
+    }
+}
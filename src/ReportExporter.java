@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+// Writes the timesheet rows behind a report straight from a forward-only cursor to a file, one
+// row at a time, so memory use does not depend on how many rows there are. The file appears under
+// its final name only once the export is complete.
+class ReportExporter {
+    enum Format { CSV, JSONL }
+
+    // Called from the exporting thread every PROGRESS_INTERVAL rows and once at the end.
+    interface Progress {
+        void update(long rowsWritten, long totalRows);
+
+        boolean isCancelled();
+    }
+
+    static final String[] COLUMNS = {"employee_id", "name", "department", "start_time", "end_time", "hours"};
+    private static final int PROGRESS_INTERVAL = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final DatabaseManager dbManager;
+    private final PayPeriodArchive payPeriods;
+    private final int fetchSize = Integer.getInteger("timesheet.export.fetchSize", 1000);
+
+    ReportExporter(DatabaseManager dbManager, PayPeriodArchive payPeriods) {
+        this.dbManager = dbManager;
+        this.payPeriods = payPeriods;
+    }
+
+    // Shifts starting between from and to (inclusive; null means no limit), optionally for one
+    // department, ordered by employee and start time. Returns the number of rows written; throws
+    // CancellationException if the progress callback asked to stop.
+    long export(Path target, Format format, LocalDate from, LocalDate to, String department, Progress progress)
+            throws SQLException, IOException {
+        StringBuilder range = new StringBuilder(" WHERE 1 = 1");
+        List<Object> rangeParameters = new ArrayList<>();
+        if (from != null) {
+            range.append(" AND start_time >= ?");
+            rangeParameters.add(Timestamp.valueOf(from.atStartOfDay()));
+        }
+        if (to != null) {
+            range.append(" AND start_time < ?");
+            rangeParameters.add(Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+        }
+        // Ranges reaching back into closed pay periods read the archive too, filtered inside each
+        // branch so both tables use their start_time index
+        String where = range.toString();
+        List<Object> parameters = new ArrayList<>(rangeParameters);
+        String shifts = "timesheet";
+        if (payPeriods.reachesArchive(from)) {
+            shifts = "(SELECT employee_id, start_time, end_time FROM timesheet" + range + " UNION ALL "
+                    + "SELECT employee_id, start_time, end_time FROM " + PayPeriodArchive.ARCHIVE_TABLE + range + ")";
+            parameters.addAll(rangeParameters);
+            where = " WHERE 1 = 1";
+        }
+        if (department != null) {
+            where += " AND e.department = ?";
+            parameters.add(department);
+        }
+        String joins = " FROM " + shifts + " t LEFT JOIN employees e ON e.employee_id = t.employee_id";
+
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+        try (Connection conn = dbManager.getReadConnection(null)) {
+            long total;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*)" + joins + where)) {
+                bind(stmt, parameters);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    total = rs.getLong(1);
+                }
+            }
+
+            String sql = "SELECT t.employee_id, e.name, e.department, t.start_time, t.end_time" + joins + where
+                    + " ORDER BY t.employee_id, t.start_time";
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                 FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                stmt.setFetchSize(streamingFetchSize(conn, fetchSize));
+                bind(stmt, parameters);
+                Writer writer = new Writer(channel);
+                if (format == Format.CSV) {
+                    writer.line.append(String.join(",", COLUMNS));
+                    writer.writeLine();
+                }
+
+                long rows = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDateTime start = TimesheetDao.toLocalDateTime(rs.getTimestamp(4));
+                        LocalDateTime end = TimesheetDao.toLocalDateTime(rs.getTimestamp(5));
+                        Object[] values = {rs.getString(1), rs.getString(2), rs.getString(3), format(start), format(end),
+                                end == null ? null : Math.round(Duration.between(start, end).getSeconds() / 36.0) / 100.0};
+                        if (format == Format.CSV) {
+                            appendCsv(writer.line, values);
+                        } else {
+                            appendJson(writer.line, values);
+                        }
+                        writer.writeLine();
+
+                        if (++rows % PROGRESS_INTERVAL == 0) {
+                            if (progress.isCancelled() || Thread.currentThread().isInterrupted()) {
+                                throw new CancellationException("Export cancelled after " + rows + " rows");
+                            }
+                            progress.update(rows, total);
+                        }
+                    }
+                }
+                writer.flush();
+                channel.force(false);
+                progress.update(rows, Math.max(rows, total));
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return rows;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Connector/J buffers the whole result unless the fetch size is Integer.MIN_VALUE or the URL
+    // turns on server-side cursors; other drivers honour the fetch size as a cursor batch size.
+    static int streamingFetchSize(Connection conn, int fetchSize) throws SQLException {
+        String url = conn.getMetaData().getURL();
+        if (url != null && url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true")) {
+            return Integer.MIN_VALUE;
+        }
+        return fetchSize;
+    }
+
+    // Encodes each line into one reusable direct buffer and writes it to the channel when full.
+    private static class Writer {
+        final StringBuilder line = new StringBuilder(256);
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeLine() throws IOException {
+            line.append('\n');
+            CharBuffer chars = CharBuffer.wrap(line);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            line.setLength(0);
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static void appendCsv(StringBuilder line, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            if (values[i] == null) {
+                continue;
+            }
+            String value = values[i].toString();
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+    }
+
+    private static void appendJson(StringBuilder line, Object[] values) {
+        line.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append('"').append(COLUMNS[i]).append("\":");
+            Object value = values[i];
+            if (value == null || value instanceof Number) {
+                line.append(value);
+            } else {
+                Json.appendString(line, value.toString());
+            }
+        }
+        line.append('}');
+    }
+
+    private static String format(LocalDateTime time) {
+        return time == null ? null : time.format(TIME_FORMAT);
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            stmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+}
@@ -0,0 +1,501 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Versioned schema changes, applied in order at startup and recorded in schema_version. Every step
+// is idempotent (IF NOT EXISTS, or a metadata check first), so a database created by hand before
+// this existed is adopted as is, and two instances starting at once both finish cleanly. DDL
+// commits implicitly on MySQL, so steps run outside any transaction.
+//
+// Optionally (-Dtimesheet.schema.partitionByMonth=true, MySQL only) the timesheet table is
+// range-partitioned by month of start_time, with partitions kept a few months ahead.
+//
+// Afterwards an EXPLAIN of each hot query warns when it would scan a whole table; turn it off
+// with -Dtimesheet.schema.selfCheck=false.
+class SchemaMigrator {
+    private static final int PARTITION_MONTHS_AHEAD = 3;
+    private static final long SMALL_TABLE_ROWS = 1000;
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final List<Step> steps;
+
+        Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = Arrays.asList(steps);
+        }
+    }
+
+    // A query the application runs constantly, with sample parameters for EXPLAIN.
+    private static class HotQuery {
+        final String name;
+        final String table;
+        final String sql;
+        final Object[] parameters;
+
+        HotQuery(String name, String table, String sql, Object... parameters) {
+            this.name = name;
+            this.table = table;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    // Append only: a released migration never changes, later fixes get a new version.
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new Migration(1, "Core tables",
+                    sql("CREATE TABLE IF NOT EXISTS users ("
+                            + "username VARCHAR(50) PRIMARY KEY, "
+                            + "password VARCHAR(255) NOT NULL, "
+                            + "role VARCHAR(20) NOT NULL)"),
+                    sql("CREATE TABLE IF NOT EXISTS employees ("
+                            + "employee_id VARCHAR(50) PRIMARY KEY, "
+                            + "name VARCHAR(100), "
+                            + "department VARCHAR(100))"),
+                    sql("CREATE TABLE IF NOT EXISTS timesheet ("
+                            + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                            + "employee_id VARCHAR(50) NOT NULL, "
+                            + "start_time DATETIME NOT NULL, "
+                            + "end_time DATETIME)")),
+            new Migration(2, "Room for password hashes",
+                    widenColumn("users", "password", 255)),
+            new Migration(3, "Change feed, hours rollup and import ledger tables",
+                    sql("CREATE TABLE IF NOT EXISTS change_log ("
+                            + "change_id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                            + "table_name VARCHAR(32) NOT NULL, "
+                            + "row_key VARCHAR(255) NOT NULL, "
+                            + "operation CHAR(1) NOT NULL, "
+                            + "changed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"),
+                    sql("CREATE TABLE IF NOT EXISTS hours_rollup ("
+                            + "period_type CHAR(1) NOT NULL, "
+                            + "period_start DATE NOT NULL, "
+                            + "employee_id VARCHAR(50) NOT NULL, "
+                            + "minutes BIGINT NOT NULL, "
+                            + "entries INT NOT NULL, "
+                            + "PRIMARY KEY (period_type, period_start, employee_id))"),
+                    sql("CREATE TABLE IF NOT EXISTS import_chunk_log ("
+                            + "chunk_id CHAR(64) PRIMARY KEY, "
+                            + "source VARCHAR(255) NOT NULL, "
+                            + "chunk_number INT NOT NULL, "
+                            + "row_count INT NOT NULL, "
+                            + "imported_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)")),
+            new Migration(4, "Indexes for the hot queries",
+                    // One employee's shifts in order, the punch de-duplication probe and the per-employee
+                    // report, all answered from the index without touching the rows
+                    index("timesheet", "idx_timesheet_employee_start", "employee_id", "start_time", "end_time"),
+                    // Date-range reports, exports and rollup rebuilds
+                    index("timesheet", "idx_timesheet_start", "start_time"),
+                    // Department filters and the prefix search on the employee grid
+                    index("employees", "idx_employees_department", "department"),
+                    index("employees", "idx_employees_name", "name"),
+                    index("change_log", "idx_change_log_table", "table_name", "change_id")),
+            new Migration(5, "Pay periods and the timesheet archive",
+                    // Same columns as timesheet; id is kept so a period cannot be archived twice
+                    sql("CREATE TABLE IF NOT EXISTS timesheet_archive ("
+                            + "id BIGINT PRIMARY KEY, "
+                            + "employee_id VARCHAR(50) NOT NULL, "
+                            + "start_time DATETIME NOT NULL, "
+                            + "end_time DATETIME NOT NULL)"),
+                    index("timesheet_archive", "idx_timesheet_archive_employee_start", "employee_id", "start_time", "end_time"),
+                    index("timesheet_archive", "idx_timesheet_archive_start", "start_time"),
+                    sql("CREATE TABLE IF NOT EXISTS pay_period ("
+                            + "period_start DATE PRIMARY KEY, "
+                            + "period_end DATE NOT NULL, "
+                            + "minutes BIGINT NOT NULL, "
+                            + "entries BIGINT NOT NULL, "
+                            + "closed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"),
+                    sql("CREATE TABLE IF NOT EXISTS pay_period_hours ("
+                            + "period_start DATE NOT NULL, "
+                            + "employee_id VARCHAR(50) NOT NULL, "
+                            + "minutes BIGINT NOT NULL, "
+                            + "entries INT NOT NULL, "
+                            + "PRIMARY KEY (period_start, employee_id))"),
+                    // Archived rows are written once and rarely read, so trade CPU for disk on MySQL
+                    onMySql("ALTER TABLE timesheet_archive ROW_FORMAT=COMPRESSED")),
+            new Migration(6, "Replication heartbeat",
+                    // One row, stamped by the primary and read back from each replica to measure lag
+                    sql("CREATE TABLE IF NOT EXISTS replication_heartbeat ("
+                            + "id INT PRIMARY KEY, "
+                            + "beat_at BIGINT NOT NULL)"),
+                    sql("INSERT INTO replication_heartbeat (id, beat_at) SELECT 1, 0 FROM DUAL "
+                            + "WHERE NOT EXISTS (SELECT 1 FROM replication_heartbeat WHERE id = 1)")),
+            new Migration(7, "Payroll runs and results",
+                    sql("CREATE TABLE IF NOT EXISTS payroll_run ("
+                            + "period_start DATE PRIMARY KEY, "
+                            + "rules VARCHAR(1000) NOT NULL, "
+                            + "started_at TIMESTAMP NOT NULL, "
+                            + "completed_at TIMESTAMP NULL)"),
+                    // Employee id ranges (lower_id, upper_id] of one run and how far each has got, so an
+                    // interrupted run resumes where it stopped
+                    sql("CREATE TABLE IF NOT EXISTS payroll_partition ("
+                            + "period_start DATE NOT NULL, "
+                            + "partition_no INT NOT NULL, "
+                            + "lower_id VARCHAR(50), "
+                            + "upper_id VARCHAR(50), "
+                            + "done_through VARCHAR(50), "
+                            + "finished BOOLEAN NOT NULL, "
+                            + "PRIMARY KEY (period_start, partition_no))"),
+                    sql("CREATE TABLE IF NOT EXISTS payroll_hours ("
+                            + "period_start DATE NOT NULL, "
+                            + "employee_id VARCHAR(50) NOT NULL, "
+                            + "department VARCHAR(100), "
+                            + "shifts INT NOT NULL, "
+                            + "regular_minutes BIGINT NOT NULL, "
+                            + "overtime_minutes BIGINT NOT NULL, "
+                            + "PRIMARY KEY (period_start, employee_id))")),
+            new Migration(8, "Change log retention",
+                    // The hourly prune deletes by age
+                    index("change_log", "idx_change_log_changed_at", "changed_at")),
+            new Migration(9, "Hours rollup backfill marker",
+                    // One row; backfilled_at is set once the rollups cover all history. Installs that had
+                    // rollups before this start without it and backfill once more.
+                    sql("CREATE TABLE IF NOT EXISTS hours_rollup_state ("
+                            + "id INT PRIMARY KEY, "
+                            + "backfilled_at TIMESTAMP NULL)"),
+                    sql("INSERT INTO hours_rollup_state (id, backfilled_at) SELECT 1, NULL FROM DUAL "
+                            + "WHERE NOT EXISTS (SELECT 1 FROM hours_rollup_state WHERE id = 1)")),
+            new Migration(10, "Timesheet id on hand-made tables",
+                    addTimesheetId())
+    );
+
+    private static final List<HotQuery> HOT_QUERIES = Arrays.asList(
+            new HotQuery("login", "users", "SELECT u.password, u.role, e.employee_id FROM users u "
+                    + "LEFT JOIN employees e ON e.employee_id = u.username WHERE u.username = ?", "probe"),
+            new HotQuery("load-timesheet", "timesheet", "SELECT " + TimesheetDao.COLUMNS
+                    + " FROM timesheet WHERE employee_id = ? ORDER BY start_time", "probe"),
+            new HotQuery("punch-dedupe", "timesheet",
+                    "SELECT 1 FROM timesheet WHERE employee_id = ? AND start_time = ?", "probe", Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0))),
+            new HotQuery("open-shift", "timesheet",
+                    "SELECT start_time FROM timesheet WHERE employee_id = ? AND end_time IS NULL", "probe"),
+            new HotQuery("report-range", "timesheet", "SELECT employee_id, SUM(TIMESTAMPDIFF(MINUTE, start_time, end_time)) "
+                    + "FROM timesheet WHERE start_time >= ? AND start_time < ? AND end_time IS NOT NULL GROUP BY employee_id",
+                    Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0)), Timestamp.valueOf(LocalDateTime.of(2000, 2, 1, 0, 0))),
+            new HotQuery("archive-history", "timesheet_archive", "SELECT " + TimesheetDao.COLUMNS
+                    + " FROM timesheet_archive WHERE employee_id = ? AND start_time >= ? ORDER BY start_time",
+                    "probe", Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0))),
+            new HotQuery("department-filter", "employees", "SELECT employee_id FROM employees WHERE department = ?", "probe"),
+            new HotQuery("change-feed", "change_log", "SELECT change_id, row_key FROM change_log "
+                    + "WHERE change_id > ? AND table_name = ? ORDER BY change_id LIMIT 100", 0L, "timesheet")
+    );
+
+    private final DatabaseManager dbManager;
+
+    SchemaMigrator(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    // Brings the schema up to date; returns the number of migrations applied.
+    int migrate() throws SQLException {
+        int applied = 0;
+        try (Connection conn = dbManager.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                        + "version INT PRIMARY KEY, "
+                        + "description VARCHAR(200) NOT NULL, "
+                        + "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            }
+            int current = currentVersion(conn);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                for (Step step : migration.steps) {
+                    step.apply(conn);
+                }
+                if (recordVersion(conn, migration)) {
+                    System.out.println("Schema migrated to version " + migration.version + ": " + migration.description);
+                    applied++;
+                }
+            }
+            if (Boolean.getBoolean("timesheet.schema.partitionByMonth")) {
+                partitionTimesheetByMonth(conn);
+            }
+        }
+        if (!"false".equals(System.getProperty("timesheet.schema.selfCheck"))) {
+            for (String warning : selfCheck()) {
+                System.err.println("Schema self-check: " + warning);
+            }
+        }
+        return applied;
+    }
+
+    // EXPLAINs each hot query and returns a warning for every one that would scan a whole table.
+    List<String> selfCheck() throws SQLException {
+        List<String> warnings = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection()) {
+            for (HotQuery query : HOT_QUERIES) {
+                String plan = explain(conn, query);
+                if (plan != null && isFullScan(plan)) {
+                    warnings.add(query.name + " reads every row of " + query.table + ": " + plan);
+                }
+            }
+        }
+        return warnings;
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // False when another instance recorded it first.
+    private static boolean recordVersion(Connection conn, Migration migration) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            stmt.setInt(1, migration.version);
+            stmt.setString(2, migration.description);
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLException ex) {
+            if (ex.getSQLState() != null && ex.getSQLState().startsWith("23")) {
+                return false;
+            }
+            throw ex;
+        }
+    }
+
+    private static Step sql(String statement) {
+        return conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(statement);
+            }
+        };
+    }
+
+    private static Step onMySql(String statement) {
+        return conn -> {
+            if (isMySql(conn)) {
+                sql(statement).apply(conn);
+            }
+        };
+    }
+
+    private static Step index(String table, String name, String... columns) {
+        return conn -> {
+            if (indexExists(conn, table, name)) {
+                return;
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX " + name + " ON " + table + " (" + String.join(", ", columns) + ")");
+            } catch (SQLException ex) {
+                // Another instance created it in the meantime
+                if (!indexExists(conn, table, name)) {
+                    throw ex;
+                }
+            }
+        };
+    }
+
+    // Older installs created the column by hand, often too short for a hash.
+    private static Step widenColumn(String table, String column, int size) {
+        return conn -> {
+            DatabaseMetaData metaData = conn.getMetaData();
+            try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, stored(metaData, table), stored(metaData, column))) {
+                if (!rs.next() || rs.getInt("COLUMN_SIZE") >= size) {
+                    return;
+                }
+                String nullable = rs.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls ? " NOT NULL" : "";
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " MODIFY " + column + " VARCHAR(" + size + ")" + nullable);
+                }
+            }
+        };
+    }
+
+    // Installs older than the migrations created timesheet by hand without the id column that archiving
+    // and partitioning key on, so version 1 left it as it was. Adds it as the primary key, numbering the
+    // existing rows; a primary key the table already had stays as a unique key.
+    private static Step addTimesheetId() {
+        return conn -> {
+            if (columnExists(conn, "timesheet", "id")) {
+                return;
+            }
+            Map<Integer, String> keyColumns = new TreeMap<>();
+            DatabaseMetaData metaData = conn.getMetaData();
+            try (ResultSet rs = metaData.getPrimaryKeys(conn.getCatalog(), null, stored(metaData, "timesheet"))) {
+                while (rs.next()) {
+                    keyColumns.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+            }
+            String naturalKey = String.join(", ", keyColumns.values());
+            try (Statement stmt = conn.createStatement()) {
+                if (isMySql(conn)) {
+                    // One statement: MySQL wants an AUTO_INCREMENT column to be a key from the start
+                    stmt.execute("ALTER TABLE timesheet "
+                            + (keyColumns.isEmpty() ? "" : "DROP PRIMARY KEY, ADD UNIQUE KEY uk_timesheet_natural (" + naturalKey + "), ")
+                            + "ADD COLUMN id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY FIRST");
+                } else {
+                    if (!keyColumns.isEmpty()) {
+                        stmt.execute("ALTER TABLE timesheet DROP PRIMARY KEY");
+                        stmt.execute("ALTER TABLE timesheet ADD CONSTRAINT uk_timesheet_natural UNIQUE (" + naturalKey + ")");
+                    }
+                    stmt.execute("ALTER TABLE timesheet ADD COLUMN id BIGINT AUTO_INCREMENT PRIMARY KEY FIRST");
+                }
+            } catch (SQLException ex) {
+                // Another instance added it in the meantime
+                if (!columnExists(conn, "timesheet", "id")) {
+                    throw ex;
+                }
+            }
+        };
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, stored(metaData, table), stored(metaData, column))) {
+            return rs.next();
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String name) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, stored(metaData, table), false, false)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // An unquoted name as the database stores it, which metadata lookups match exactly: upper case
+    // on H2 without DATABASE_TO_LOWER, as written on MySQL.
+    private static String stored(DatabaseMetaData metaData, String name) throws SQLException {
+        if (metaData.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase(Locale.ROOT);
+        }
+        return metaData.storesLowerCaseIdentifiers() ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    // Null when the database cannot explain the query.
+    private static String explain(Connection conn, HotQuery query) {
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + query.sql)) {
+            for (int i = 0; i < query.parameters.length; i++) {
+                stmt.setObject(i + 1, query.parameters[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData columns = rs.getMetaData();
+                StringBuilder plan = new StringBuilder();
+                while (rs.next()) {
+                    if (plan.length() > 0) {
+                        plan.append(" | ");
+                    }
+                    if (columns.getColumnCount() == 1) {
+                        plan.append(rs.getString(1).replaceAll("\\s+", " "));
+                        continue;
+                    }
+                    // MySQL: one row per table with its access type
+                    plan.append("table=").append(rs.getString("table"))
+                            .append(" type=").append(rs.getString("type"))
+                            .append(" key=").append(rs.getString("key"))
+                            .append(" rows=").append(rs.getLong("rows"));
+                }
+                return plan.toString();
+            }
+        } catch (SQLException ex) {
+            return null;
+        }
+    }
+
+    // MySQL reports type=ALL for a table scan, but also picks one over an index on a near-empty
+    // table, so small estimates are ignored. H2 marks a scanned table with tableScan.
+    private static boolean isFullScan(String plan) {
+        for (String part : plan.toLowerCase(Locale.ROOT).split(" \\| ")) {
+            if (part.startsWith("table=")) {
+                if (part.contains(" type=all ")
+                        && Long.parseLong(part.substring(part.lastIndexOf("rows=") + 5)) >= SMALL_TABLE_ROWS) {
+                    return true;
+                }
+            } else if (part.contains(".tablescan")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Converts timesheet to monthly RANGE COLUMNS partitions on first use, then splits the catch-all
+    // partition so there are always PARTITION_MONTHS_AHEAD months ready. MySQL requires the
+    // partitioning column in every unique key, so the primary key becomes (id, start_time).
+    private static void partitionTimesheetByMonth(Connection conn) throws SQLException {
+        if (!isMySql(conn)) {
+            System.err.println("Monthly partitioning of timesheet needs MySQL; " + conn.getMetaData().getDatabaseProductName()
+                    + " is left unpartitioned");
+            return;
+        }
+        YearMonth lastNeeded = YearMonth.now().plusMonths(PARTITION_MONTHS_AHEAD);
+        List<String> existing = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT partition_name FROM information_schema.partitions "
+                + "WHERE table_schema = DATABASE() AND table_name = 'timesheet' AND partition_name IS NOT NULL "
+                + "ORDER BY partition_ordinal_position")) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            if (existing.isEmpty()) {
+                YearMonth first = lastNeeded;
+                try (ResultSet rs = stmt.executeQuery("SELECT MIN(start_time) FROM timesheet")) {
+                    if (rs.next() && rs.getTimestamp(1) != null) {
+                        first = YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+                    }
+                }
+                stmt.execute("ALTER TABLE timesheet DROP PRIMARY KEY, ADD PRIMARY KEY (id, start_time)");
+                stmt.execute("ALTER TABLE timesheet PARTITION BY RANGE COLUMNS (start_time) ("
+                        + monthPartitions(first, lastNeeded) + "PARTITION p_future VALUES LESS THAN (MAXVALUE))");
+                System.out.println("Partitioned timesheet by month from " + first + " to " + lastNeeded);
+                return;
+            }
+            YearMonth lastExisting = null;
+            for (String name : existing) {
+                if (name.matches("p\\d{6}")) {
+                    lastExisting = YearMonth.of(Integer.parseInt(name.substring(1, 5)), Integer.parseInt(name.substring(5)));
+                }
+            }
+            if (lastExisting != null && lastExisting.isBefore(lastNeeded)) {
+                stmt.execute("ALTER TABLE timesheet REORGANIZE PARTITION p_future INTO ("
+                        + monthPartitions(lastExisting.plusMonths(1), lastNeeded) + "PARTITION p_future VALUES LESS THAN (MAXVALUE))");
+            }
+        }
+    }
+
+    private static boolean isMySql(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+    }
+
+    private static String monthPartitions(YearMonth first, YearMonth last) {
+        StringBuilder partitions = new StringBuilder();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            LocalDate next = month.plusMonths(1).atDay(1);
+            partitions.append(String.format("PARTITION p%04d%02d VALUES LESS THAN ('%s'), ",
+                    month.getYear(), month.getMonthValue(), next));
+        }
+        return partitions.toString();
+    }
+}
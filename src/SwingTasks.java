@@ -0,0 +1,124 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Ties background database tasks to one window: callbacks run on the EDT, a busy bar and wait
+// cursor show while anything is pending, and everything still running is cancelled when the
+// window is disposed.
+class SwingTasks {
+    private final JFrame window;
+    private final DataAccessExecutor executor;
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<?>> visible = ConcurrentHashMap.newKeySet();
+    private final Map<String, CompletableFuture<?>> pendingByKey = new ConcurrentHashMap<>();
+    private final JProgressBar busyIndicator = new JProgressBar();
+    private boolean disposed;
+
+    SwingTasks(JFrame window, DataAccessExecutor executor) {
+        this.window = window;
+        this.executor = executor;
+
+        busyIndicator.setIndeterminate(true);
+        busyIndicator.setVisible(false);
+
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                cancelAll();
+            }
+        });
+    }
+
+    // Component the window adds to its layout; it is only visible while a task is running.
+    JComponent getBusyIndicator() {
+        return busyIndicator;
+    }
+
+    <T> void run(DataAccessExecutor.SqlTask<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        run(null, task, onSuccess, onError);
+    }
+
+    // Must be called on the EDT. A second call with the same key while the first is still pending
+    // is ignored, so a double click does not run the query or show the result twice.
+    <T> void run(String key, DataAccessExecutor.SqlTask<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        run(key, task, onSuccess, onError, true);
+    }
+
+    // Same as run, but without the busy indicator; for periodic work the user did not ask for.
+    <T> void runInBackground(String key, DataAccessExecutor.SqlTask<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        run(key, task, onSuccess, onError, false);
+    }
+
+    // Same as run for writes: the key only stops a double click in this window, and the task is not
+    // coalesced with another window's, whose values may differ.
+    <T> void runWrite(String key, DataAccessExecutor.SqlTask<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        run(key, null, task, onSuccess, onError, true);
+    }
+
+    private <T> void run(String key, DataAccessExecutor.SqlTask<T> task, Consumer<T> onSuccess, Consumer<Throwable> onError,
+                         boolean showBusy) {
+        run(key, key, task, onSuccess, onError, showBusy);
+    }
+
+    private <T> void run(String key, String executorKey, DataAccessExecutor.SqlTask<T> task, Consumer<T> onSuccess,
+                         Consumer<Throwable> onError, boolean showBusy) {
+        if (disposed || (key != null && pendingByKey.containsKey(key))) {
+            return;
+        }
+
+        CompletableFuture<T> future = executor.submit(executorKey, task);
+        pending.add(future);
+        if (showBusy) {
+            visible.add(future);
+        }
+        if (key != null) {
+            pendingByKey.put(key, future);
+        }
+        updateBusyState();
+
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            pending.remove(future);
+            visible.remove(future);
+            if (key != null) {
+                pendingByKey.remove(key, future);
+            }
+            updateBusyState();
+
+            if (disposed || future.isCancelled()) {
+                return;
+            }
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                Throwable cause = DataAccessExecutor.rootCause(error);
+                if (!(cause instanceof CancellationException)) {
+                    onError.accept(cause);
+                }
+            }
+        }));
+    }
+
+    private void cancelAll() {
+        disposed = true;
+        for (CompletableFuture<?> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        visible.clear();
+        pendingByKey.clear();
+    }
+
+    private void updateBusyState() {
+        boolean busy = !visible.isEmpty();
+        busyIndicator.setVisible(busy);
+        window.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        window.revalidate();
+    }
+}
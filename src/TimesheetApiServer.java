@@ -0,0 +1,475 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless mode: the same TimesheetDataService behind a JSON API on the JDK's built-in HTTP server,
+// for kiosks and mobile clients that should not hold database credentials. Clients log in with
+// POST /api/login and send the returned token as "Authorization: Bearer <token>".
+//
+//   POST   /api/login                 {"username", "password"} -> {"token", "role"}
+//   POST   /api/logout                ends the session of the bearer token
+//   POST   /api/punch/start           clock in (employees)
+//   POST   /api/punch/end             clock out and record the shift (employees)
+//   GET    /api/timesheet             ?employee=&after=&limit=  (employees see only their own; after is the
+//                                     previous page's "next", start_time,id)
+//   GET    /api/employees             ?filter=|department=&after=&limit=  (managers)
+//   GET    /api/employees/{id}
+//   POST   /api/employees             {"employee_id", "name", "department"}
+//   PUT    /api/employees/{id}        {"name", "department"}
+//   DELETE /api/employees/{id}
+//   GET    /api/report                ?from=&to=&department=&refresh=true  (cached; X-Report-As-Of header)
+//   GET    /metrics                   per-operation latency, errors and pool wait; ?format=json (managers,
+//                                     or a scraper sending -Dtimesheet.metrics.token as its bearer token)
+class TimesheetApiServer {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final String WORKER_THREAD_PREFIX = "http-worker-";
+
+    // A response body sent as text/plain instead of JSON.
+    private static class PlainText {
+        final String text;
+
+        PlainText(String text) {
+            this.text = text;
+        }
+    }
+
+    // Mapped to a JSON error body with the given status.
+    private static class ApiException extends RuntimeException {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(HttpExchange exchange, AuthService.Session session, String path) throws SQLException, IOException;
+    }
+
+    private final TimesheetDataService dataService;
+    private final String metricsToken = System.getProperty("timesheet.metrics.token");
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+
+    TimesheetApiServer(TimesheetDataService dataService, int port) throws IOException {
+        this.dataService = dataService;
+        // Requests block on JDBC, so they run on a bounded pool rather than the server's dispatcher
+        // thread. When the queue is full the dispatcher runs the exchange itself, and route() answers
+        // it with a quick 503 instead of doing the work there.
+        int threads = Integer.getInteger("timesheet.http.threads", 64);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("timesheet.http.queueSize", 10_000)), r -> {
+            Thread thread = new Thread(r, WORKER_THREAD_PREFIX + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("timesheet.http.backlog", 1024));
+        server.setExecutor(workers);
+        route("/api/login", false, this::login);
+        route("/api/logout", true, this::logout);
+        route("/api/punch/", true, this::punch);
+        route("/api/timesheet", true, this::timesheet);
+        route("/api/employees", true, this::employees);
+        route("/api/report", true, this::report);
+        // Checks its own token, since a scraper cannot log in
+        route("/metrics", false, this::metrics);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(1);
+        workers.shutdown();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void route(String prefix, boolean authenticated, Handler handler) {
+        server.createContext(prefix, exchange -> {
+            if (!Thread.currentThread().getName().startsWith(WORKER_THREAD_PREFIX)) {
+                try {
+                    send(exchange, 503, error("Server busy"));
+                } finally {
+                    exchange.close();
+                }
+                return;
+            }
+            try {
+                AuthService.Session session = authenticated ? requireSession(exchange) : null;
+                Object body = handler.handle(exchange, session, exchange.getRequestURI().getRawPath().substring(prefix.length()));
+                send(exchange, body == null ? 204 : 200, body);
+            } catch (ApiException ex) {
+                send(exchange, ex.status, error(ex.getMessage()));
+            } catch (IllegalArgumentException | DateTimeParseException ex) {
+                send(exchange, 400, error(ex.getMessage()));
+            } catch (SQLException ex) {
+                if (ex.getSQLState() != null && ex.getSQLState().startsWith("23")) {
+                    send(exchange, 409, error("Conflicts with an existing record"));
+                } else {
+                    ex.printStackTrace();
+                    send(exchange, 500, error("Database error"));
+                }
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                send(exchange, 500, error("Internal error"));
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private Object login(HttpExchange exchange, AuthService.Session none, String path) throws SQLException, IOException {
+        requireMethod(exchange, "POST");
+        Map<String, Object> body = readBody(exchange);
+        String username = requiredString(body, "username");
+        String role = dataService.authenticate(username, requiredString(body, "password"));
+        if (role == null) {
+            throw new ApiException(401, "Invalid login credentials");
+        }
+        AuthService.Session session = dataService.getAuthService().createSession(username, role);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("token", session.token);
+        response.put("role", role);
+        return response;
+    }
+
+    private Object logout(HttpExchange exchange, AuthService.Session session, String path) {
+        requireMethod(exchange, "POST");
+        dataService.getAuthService().endSession(session.token);
+        return new LinkedHashMap<String, Object>();
+    }
+
+    private Object punch(HttpExchange exchange, AuthService.Session session, String path) throws SQLException, IOException {
+        requireMethod(exchange, "POST");
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        String employeeId = session.username;
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("employee_id", employeeId);
+        switch (path) {
+            case "start":
+                switch (dataService.clockIn(employeeId, now)) {
+                    case RECORDED:
+                        break;
+                    case ALREADY_CLOCKED_IN:
+                        throw new ApiException(409, "Start time has already been recorded");
+                    default:
+                        throw new ApiException(404, "Employee does not exist");
+                }
+                response.put("start_time", now.toString());
+                return response;
+            case "end":
+                TimesheetDataService.ClockOut clockOut = dataService.clockOut(employeeId, now);
+                switch (clockOut.result) {
+                    case RECORDED:
+                        break;
+                    case NOT_CLOCKED_IN:
+                        throw new ApiException(409, "Start time has not been recorded yet");
+                    default:
+                        throw new ApiException(404, "Employee does not exist");
+                }
+                response.put("start_time", clockOut.shift.getStartTime().toString());
+                response.put("end_time", now.toString());
+                response.put("hours", ChronoUnit.MINUTES.between(clockOut.shift.getStartTime(), now) / 60.0);
+                return response;
+            default:
+                throw new ApiException(404, "Not found");
+        }
+    }
+
+    private Object timesheet(HttpExchange exchange, AuthService.Session session, String path) throws SQLException {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = queryParameters(exchange);
+        String employeeId = query.getOrDefault("employee", session.username);
+        if (!session.isManager() && !employeeId.equals(session.username)) {
+            throw new ApiException(403, "Employees can only list their own timesheet");
+        }
+        TimesheetEntry anchor = timesheetAnchor(employeeId, query.get("after"));
+        List<TimesheetEntry> rows = dataService.timesheetPages(employeeId).fetch(
+                new PageSource.Query<>(TimesheetDataService.ENTRY_START_TIME, true, null), anchor, 0, limit(query));
+
+        List<Object> entries = new ArrayList<>();
+        for (TimesheetEntry row : rows) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("start_time", row.getStartTime().toString());
+            entry.put("end_time", row.getEndTime() == null ? null : row.getEndTime().toString());
+            entry.put("hours", row.getEndTime() == null ? null : row.getDurationHours());
+            entries.add(entry);
+        }
+        TimesheetEntry last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        return page(entries, last == null ? null : last.getStartTime() + "," + last.getId());
+    }
+
+    // "start_time,id" as returned in next; a bare start_time, as older clients send, continues after that time.
+    private static TimesheetEntry timesheetAnchor(String employeeId, String after) {
+        if (after == null) {
+            return null;
+        }
+        int comma = after.indexOf(',');
+        if (comma < 0) {
+            return new TimesheetEntry(employeeId, LocalDateTime.parse(after), null, 0);
+        }
+        return new TimesheetEntry(Long.valueOf(after.substring(comma + 1)), employeeId, LocalDateTime.parse(after.substring(0, comma)), null, 0);
+    }
+
+    private Object employees(HttpExchange exchange, AuthService.Session session, String path) throws SQLException, IOException {
+        requireManager(session);
+        String employeeId = path.startsWith("/") && path.length() > 1 ? decode(path.substring(1)) : null;
+        String method = exchange.getRequestMethod();
+        if (employeeId == null) {
+            if (method.equals("GET")) {
+                Map<String, String> query = queryParameters(exchange);
+                String after = query.get("after");
+                List<Employee> rows;
+                if (query.containsKey("department")) {
+                    // Exact department match from the directory's department index
+                    int limit = limit(query);
+                    rows = new ArrayList<>();
+                    for (Employee employee : dataService.employeesInDepartment(query.get("department"))) {
+                        if (rows.size() == limit) {
+                            break;
+                        }
+                        // In the directory's order, which ignores case
+                        if (after == null || String.CASE_INSENSITIVE_ORDER.compare(employee.getEmployeeId(), after) > 0) {
+                            rows.add(employee);
+                        }
+                    }
+                } else {
+                    rows = dataService.employeePages().fetch(
+                            new PageSource.Query<>(TimesheetDataService.EMPLOYEE_ID, true, query.get("filter")),
+                            after == null ? null : new Employee(after, null, null), 0, limit(query));
+                }
+                List<Object> employees = new ArrayList<>();
+                for (Employee row : rows) {
+                    employees.add(toJson(row));
+                }
+                return page(employees, rows.isEmpty() ? null : rows.get(rows.size() - 1).getEmployeeId());
+            }
+            requireMethod(exchange, "POST");
+            Map<String, Object> body = readBody(exchange);
+            Employee employee = new Employee(requiredString(body, "employee_id"), requiredString(body, "name"),
+                    requiredString(body, "department"));
+            dataService.addEmployee(employee.getEmployeeId(), employee.getName(), employee.getDepartment());
+            return toJson(employee);
+        }
+
+        Employee existing = dataService.findEmployee(employeeId);
+        if (existing == null) {
+            throw new ApiException(404, "Employee not found: " + employeeId);
+        }
+        switch (method) {
+            case "GET":
+                return toJson(existing);
+            case "PUT":
+                Map<String, Object> body = readBody(exchange);
+                Employee updated = new Employee(employeeId, optionalString(body, "name", existing.getName()),
+                        optionalString(body, "department", existing.getDepartment()));
+                dataService.updateEmployee(employeeId, updated.getName(), updated.getDepartment());
+                return toJson(updated);
+            case "DELETE":
+                dataService.deleteEmployee(employeeId);
+                return null;
+            default:
+                throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private Object metrics(HttpExchange exchange, AuthService.Session none, String path) {
+        requireMethod(exchange, "GET");
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        boolean scraper = metricsToken != null && !metricsToken.isEmpty() && header != null
+                && MessageDigest.isEqual(("Bearer " + metricsToken).getBytes(StandardCharsets.UTF_8), header.trim().getBytes(StandardCharsets.UTF_8));
+        if (!scraper) {
+            requireManager(requireSession(exchange));
+        }
+        Metrics metrics = dataService.getDatabaseManager().getMetrics();
+        if ("json".equals(queryParameters(exchange).get("format"))) {
+            return metrics.toJson();
+        }
+        return new PlainText(metrics.toText());
+    }
+
+    private Object report(HttpExchange exchange, AuthService.Session session, String path) throws SQLException {
+        requireMethod(exchange, "GET");
+        requireManager(session);
+        Map<String, String> query = queryParameters(exchange);
+        LocalDate from = query.containsKey("from") ? LocalDate.parse(query.get("from")) : null;
+        LocalDate to = query.containsKey("to") ? LocalDate.parse(query.get("to")) : null;
+        String department = query.get("department");
+
+        boolean refresh = "true".equals(query.get("refresh"));
+
+        // Served from the report cache unless refresh=true; identical concurrent requests share one
+        // query through the executor's coalescing. X-Report-As-Of says when the numbers were computed.
+        ReportCache.Snapshot snapshot;
+        try {
+            snapshot = dataService.getExecutor().submit("report|" + from + "|" + to + "|" + department + "|" + refresh,
+                    () -> dataService.cachedReport(from, to, department, refresh)).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = DataAccessExecutor.rootCause(ex);
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+
+        exchange.getResponseHeaders().set("X-Report-As-Of", snapshot.asOf.toString());
+        List<Object> report = new ArrayList<>();
+        for (EmployeeHours line : snapshot.lines) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("employee_id", line.getEmployeeId());
+            entry.put("total_hours", line.getTotalHours());
+            report.add(entry);
+        }
+        return report;
+    }
+
+    private AuthService.Session requireSession(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            throw new ApiException(401, "Missing bearer token");
+        }
+        AuthService.Session session = dataService.getAuthService().resolveSession(header.substring("Bearer ".length()).trim());
+        if (session == null) {
+            throw new ApiException(401, "Invalid or expired token");
+        }
+        return session;
+    }
+
+    private static void requireManager(AuthService.Session session) {
+        if (!session.isManager()) {
+            throw new ApiException(403, "Managers only");
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private static Map<String, Object> page(List<Object> items, String next) {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", items);
+        page.put("next", next);
+        return page;
+    }
+
+    private static Map<String, Object> toJson(Employee employee) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("employee_id", employee.getEmployeeId());
+        json.put("name", employee.getName());
+        json.put("department", employee.getDepartment());
+        return json;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", message);
+        return error;
+    }
+
+    private static int limit(Map<String, String> query) {
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_LIMIT;
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(64 * 1024 + 1);
+            if (bytes.length > 64 * 1024) {
+                throw new ApiException(413, "Request body too large");
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String requiredString(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (value == null || value.toString().isBlank()) {
+            throw new IllegalArgumentException("Missing field: " + field);
+        }
+        return value.toString();
+    }
+
+    private static String optionalString(Map<String, Object> body, String field, String fallback) {
+        Object value = body.get(field);
+        return value == null ? fallback : value.toString();
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(decode(pair.substring(0, separator)), decode(pair.substring(separator + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes;
+        if (body instanceof PlainText) {
+            bytes = ((PlainText) body).text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        } else {
+            bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
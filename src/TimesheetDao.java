@@ -0,0 +1,165 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// SQL for the timesheet table. Like EmployeeDao, every method runs on the caller's connection.
+class TimesheetDao {
+    static final String COLUMNS = "id, employee_id, start_time, end_time, TIMESTAMPDIFF(MINUTE, start_time, end_time) / 60.0 AS duration";
+
+    private static final String FIND_BY_EMPLOYEE = "SELECT " + COLUMNS + " FROM timesheet WHERE employee_id = ?";
+    // Inserts nothing when the employee is gone, checked by the same statement
+    private static final String INSERT = "INSERT INTO timesheet (employee_id, start_time, end_time) "
+            + "SELECT employee_id, ?, ? FROM employees WHERE employee_id = ?";
+    private static final String FIND_OPEN = "SELECT start_time FROM timesheet WHERE employee_id = ? AND end_time IS NULL "
+            + "ORDER BY start_time DESC FOR UPDATE";
+    private static final String CLOSE = "UPDATE timesheet SET end_time = ? "
+            + "WHERE employee_id = ? AND start_time = ? AND end_time IS NULL AND start_time <= ?";
+    private static final String INSERT_IF_ABSENT = "INSERT INTO timesheet (employee_id, start_time, end_time) SELECT ?, ?, ? FROM DUAL "
+            + "WHERE NOT EXISTS (SELECT 1 FROM timesheet WHERE employee_id = ? AND start_time = ?) "
+            + "AND EXISTS (SELECT 1 FROM employees WHERE employee_id = ?)";
+
+    List<TimesheetEntry> findByEmployee(Connection conn, String employeeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND_BY_EMPLOYEE)) {
+            stmt.setString(1, employeeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<TimesheetEntry> entries = new ArrayList<>();
+                while (rs.next()) {
+                    entries.add(map(rs));
+                }
+                return entries;
+            }
+        }
+    }
+
+    // One employee's shifts in table (timesheet or the archive) starting in [from, toExclusive), in
+    // start time order; nulls mean no limit.
+    List<TimesheetEntry> findByEmployee(Connection conn, String table, String employeeId, LocalDate from, LocalDate toExclusive) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM " + table + " WHERE employee_id = ?");
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(employeeId);
+        appendRange(sql, "start_time", from, toExclusive, parameters);
+        sql.append(" ORDER BY start_time");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<TimesheetEntry> entries = new ArrayList<>();
+                while (rs.next()) {
+                    entries.add(map(rs));
+                }
+                return entries;
+            }
+        }
+    }
+
+    // A null endTime writes an open shift. Returns false, inserting nothing, if the employee is gone.
+    boolean insert(Connection conn, String employeeId, LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(startTime));
+            stmt.setTimestamp(2, endTime == null ? null : Timestamp.valueOf(endTime));
+            stmt.setString(3, employeeId);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    // Start of the employee's open shift (the latest, should there ever be more than one), or null.
+    // Locks the row until the transaction ends.
+    LocalDateTime findOpenShiftStart(Connection conn, String employeeId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND_OPEN)) {
+            stmt.setString(1, employeeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getTimestamp(1).toLocalDateTime() : null;
+            }
+        }
+    }
+
+    // Sets the end time of the open shift starting at startTime. Returns false when there is no such
+    // open shift, for instance because a concurrent clock-out closed it first, or it starts after endTime.
+    boolean close(Connection conn, String employeeId, LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(CLOSE)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(endTime));
+            stmt.setString(2, employeeId);
+            stmt.setTimestamp(3, Timestamp.valueOf(startTime));
+            stmt.setTimestamp(4, Timestamp.valueOf(endTime));
+            return stmt.executeUpdate() == 1;
+        }
+    }
+
+    // Inserts each shift unless a row with the same employee and start time already exists or the
+    // employee is gone. Returns the shifts that were inserted.
+    List<TimesheetEntry> insertIfAbsent(Connection conn, List<TimesheetEntry> shifts) throws SQLException {
+        List<TimesheetEntry> inserted = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_IF_ABSENT)) {
+            for (TimesheetEntry shift : shifts) {
+                Timestamp start = Timestamp.valueOf(shift.getStartTime());
+                stmt.setString(1, shift.getEmployeeId());
+                stmt.setTimestamp(2, start);
+                stmt.setTimestamp(3, Timestamp.valueOf(shift.getEndTime()));
+                stmt.setString(4, shift.getEmployeeId());
+                stmt.setTimestamp(5, start);
+                stmt.setString(6, shift.getEmployeeId());
+                if (stmt.executeUpdate() == 1) {
+                    inserted.add(shift);
+                }
+            }
+        }
+        return inserted;
+    }
+
+    // Hours per employee for finished shifts starting in [from, toExclusive); nulls mean no limit.
+    List<EmployeeHours> hoursByEmployee(Connection conn, LocalDate from, LocalDate toExclusive, String department) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT t.employee_id, SUM(TIMESTAMPDIFF(MINUTE, t.start_time, t.end_time)) / 60.0 AS total_hours "
+                + "FROM timesheet t");
+        List<Object> parameters = new ArrayList<>();
+        if (department != null) {
+            sql.append(" JOIN employees e ON e.employee_id = t.employee_id AND e.department = ?");
+            parameters.add(department);
+        }
+        sql.append(" WHERE t.end_time IS NOT NULL");
+        appendRange(sql, "t.start_time", from, toExclusive, parameters);
+        sql.append(" GROUP BY t.employee_id ORDER BY t.employee_id");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<EmployeeHours> report = new ArrayList<>();
+                while (rs.next()) {
+                    report.add(new EmployeeHours(rs.getString("employee_id"), rs.getDouble("total_hours")));
+                }
+                return report;
+            }
+        }
+    }
+
+    private static void appendRange(StringBuilder sql, String column, LocalDate from, LocalDate toExclusive, List<Object> parameters) {
+        if (from != null) {
+            sql.append(" AND ").append(column).append(" >= ?");
+            parameters.add(Timestamp.valueOf(from.atStartOfDay()));
+        }
+        if (toExclusive != null) {
+            sql.append(" AND ").append(column).append(" < ?");
+            parameters.add(Timestamp.valueOf(toExclusive.atStartOfDay()));
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            stmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    static TimesheetEntry map(ResultSet rs) throws SQLException {
+        return new TimesheetEntry(rs.getLong("id"), rs.getString("employee_id"), toLocalDateTime(rs.getTimestamp("start_time")),
+                toLocalDateTime(rs.getTimestamp("end_time")), rs.getDouble("duration"));
+    }
+
+    static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
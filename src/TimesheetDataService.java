@@ -0,0 +1,695 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+// All database work of the Swing screens. Methods here block, so the UI calls them through
+// the DataAccessExecutor rather than from the event dispatch thread.
+class TimesheetDataService {
+    enum SignUpResult { CREATED, USERNAME_TAKEN }
+
+    enum PunchResult { RECORDED, ALREADY_CLOCKED_IN, NOT_CLOCKED_IN, UNKNOWN_EMPLOYEE }
+
+    // What a clock-out did; shift is the recorded shift when result is RECORDED.
+    static class ClockOut {
+        final PunchResult result;
+        final TimesheetEntry shift;
+
+        ClockOut(PunchResult result, TimesheetEntry shift) {
+            this.result = result;
+            this.shift = shift;
+        }
+    }
+
+    static final PageSource.SortKey<Employee> EMPLOYEE_ID = new PageSource.SortKey<>("employee_id", Employee::getEmployeeId);
+    static final PageSource.SortKey<Employee> EMPLOYEE_NAME = new PageSource.SortKey<>("name", Employee::getName);
+    static final PageSource.SortKey<Employee> EMPLOYEE_DEPARTMENT = new PageSource.SortKey<>("department", Employee::getDepartment);
+    // What the employee grid's filter prefix-matches
+    static final List<PageSource.SortKey<Employee>> EMPLOYEE_SEARCH_COLUMNS = Arrays.asList(EMPLOYEE_ID, EMPLOYEE_NAME, EMPLOYEE_DEPARTMENT);
+    // Consistency key for reads of the employees table; timesheet reads use the employee id
+    static final String EMPLOYEES_KEY = "employees";
+
+    static final PageSource.SortKey<TimesheetEntry> ENTRY_START_TIME = new PageSource.SortKey<>("start_time", TimesheetEntry::getStartTime);
+    // Orders shifts with the same start time, which the table does not rule out
+    static final PageSource.SortKey<TimesheetEntry> ENTRY_ID = new PageSource.SortKey<>("id", TimesheetEntry::getId);
+
+    private final DatabaseManager dbManager;
+    private final DataAccessExecutor executor;
+    private final ChangeFeed changeFeed;
+    private final EmployeeDirectory directory;
+    private final HoursRollup hoursRollup;
+    private final PayPeriodArchive payPeriods;
+    private final ColumnarTimesheetStore columnarStore;
+    private final ReportExporter reportExporter;
+    private final ReportCache reportCache;
+    private final PayrollEngine payroll;
+    private final BulkTimesheetImporter importer;
+    private final AuthService authService;
+    private final UserDao users = new UserDao();
+    private final EmployeeDao employees = new EmployeeDao();
+    private final TimesheetDao timesheets = new TimesheetDao();
+    private final Metrics metrics;
+    private final Metrics.Operation loginMetrics;
+    private final Metrics.Operation punchMetrics;
+    private final Metrics.Operation loadTimesheetMetrics;
+    private final Metrics.Operation reportMetrics;
+    private final Metrics.Operation employeeReadMetrics;
+    private final Metrics.Operation employeeWriteMetrics;
+    private final Metrics.Operation journalFlushMetrics;
+    // Open shift starts as last seen by this process; the open timesheet row is what counts
+    private final Map<String, LocalDateTime> openShifts = new ConcurrentHashMap<>();
+    // Punches for one employee take turns here rather than queueing on the database row lock while
+    // holding a connection. One lock per employee, so a punch stuck on the database only holds up
+    // that employee's next punch.
+    private final Map<String, Object> punchLocks = new ConcurrentHashMap<>();
+    // With the journal open, how long a punch waits on the database before it is journaled instead
+    private final long punchTimeoutMillis = Long.getLong("timesheet.punch.timeoutMillis", 2000);
+    private volatile PunchJournal punchJournal;
+
+    TimesheetDataService(DatabaseManager dbManager, DataAccessExecutor executor) {
+        this.dbManager = dbManager;
+        this.executor = executor;
+        this.changeFeed = new ChangeFeed(dbManager, Boolean.getBoolean("timesheet.changeFeed"));
+        this.directory = new EmployeeDirectory(dbManager, employees, changeFeed, EMPLOYEE_SEARCH_COLUMNS);
+        this.hoursRollup = new HoursRollup(dbManager);
+        this.payPeriods = new PayPeriodArchive(dbManager);
+        // Opt-in: keeps every finished shift in memory, so it is meant for the manager's machine.
+        this.columnarStore = Boolean.getBoolean("timesheet.columnarReports") ? new ColumnarTimesheetStore(dbManager, changeFeed) : null;
+        this.reportExporter = new ReportExporter(dbManager, payPeriods);
+        this.reportCache = new ReportCache(dbManager, changeFeed, payPeriods, this::generateReport, this::departmentOf);
+        this.payroll = new PayrollEngine(dbManager, payPeriods);
+        this.authService = new AuthService(dbManager, users, new PasswordHasher());
+        this.importer = new BulkTimesheetImporter(dbManager, changeFeed, hoursRollup, columnarStore);
+        this.metrics = dbManager.getMetrics();
+        this.loginMetrics = metrics.operation("login");
+        this.punchMetrics = metrics.operation("punch");
+        this.loadTimesheetMetrics = metrics.operation("load-timesheet");
+        this.reportMetrics = metrics.operation("report");
+        this.employeeReadMetrics = metrics.operation("load-employees");
+        this.employeeWriteMetrics = metrics.operation("employee-write");
+        this.journalFlushMetrics = metrics.operation("journal-flush");
+        metrics.register("auth", authService::getStats);
+        metrics.register("directory", directory::getStats);
+        metrics.register("report-cache", reportCache::getStats);
+    }
+
+    DatabaseManager getDatabaseManager() {
+        return dbManager;
+    }
+
+    DataAccessExecutor getExecutor() {
+        return executor;
+    }
+
+    ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    EmployeeDirectory getDirectory() {
+        return directory;
+    }
+
+    HoursRollup getHoursRollup() {
+        return hoursRollup;
+    }
+
+    PayPeriodArchive getPayPeriods() {
+        return payPeriods;
+    }
+
+    ReportCache getReportCache() {
+        return reportCache;
+    }
+
+    AuthService getAuthService() {
+        return authService;
+    }
+
+    // Null unless -Dtimesheet.columnarReports=true.
+    ColumnarTimesheetStore getColumnarStore() {
+        return columnarStore;
+    }
+
+    // Returns the user's role, or null when the credentials do not match.
+    String authenticate(String username, String password) throws SQLException {
+        long started = loginMetrics.begin();
+        try {
+            String role = authService.authenticate(username, password, this::addDefaultEmployee);
+            loginMetrics.end(started, role == null ? 0 : 1);
+            return role;
+        } catch (SQLException | RuntimeException ex) {
+            loginMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    // Employees who log in before a manager has added them get a placeholder record.
+    private void addDefaultEmployee(String employeeId) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            beginWrite(conn);
+            employees.insert(conn, employeeId, "Default Name", "Default Department");
+            changeFeed.record(conn, "employees", employeeId, ChangeFeed.INSERT);
+            conn.commit();
+            dbManager.recordWrite(EMPLOYEES_KEY);
+            directory.put(new Employee(employeeId, "Default Name", "Default Department"));
+        } catch (SQLException ex) {
+            // Another login or a manager created it first
+            if (!isDuplicateKey(ex)) {
+                throw ex;
+            }
+        }
+    }
+
+    SignUpResult signUp(String username, String name, String password, String role, String department) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            if (users.exists(conn, username)) {
+                return SignUpResult.USERNAME_TAKEN;
+            }
+            users.insert(conn, username, authService.getHasher().hash(password), role);
+        } catch (SQLException ex) {
+            // Taken between the check and the insert
+            if (isDuplicateKey(ex)) {
+                return SignUpResult.USERNAME_TAKEN;
+            }
+            throw ex;
+        }
+        authService.invalidate(username);
+
+        if (role.equals("Employee")) {
+            addEmployee(username, name, department);
+        }
+        return SignUpResult.CREATED;
+    }
+
+    // The employee's shifts still in the live table: the open pay periods plus any not archived yet.
+    List<TimesheetEntry> loadTimesheet(String employeeId) throws SQLException {
+        long started = loadTimesheetMetrics.begin();
+        try (Connection conn = dbManager.getReadConnection(employeeId)) {
+            List<TimesheetEntry> entries = timesheets.findByEmployee(conn, employeeId);
+            loadTimesheetMetrics.end(started, entries.size());
+            return entries;
+        } catch (SQLException | RuntimeException ex) {
+            loadTimesheetMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    // Shifts starting between from and to (inclusive, null for no limit) in start time order, read
+    // from the archive as well when the range reaches back into closed pay periods.
+    List<TimesheetEntry> loadTimesheet(String employeeId, LocalDate from, LocalDate to) throws SQLException {
+        long started = loadTimesheetMetrics.begin();
+        try (Connection conn = dbManager.getReadConnection(employeeId)) {
+            LocalDate toExclusive = to == null ? null : to.plusDays(1);
+            List<TimesheetEntry> entries = timesheets.findByEmployee(conn, "timesheet", employeeId, from, toExclusive);
+            if (payPeriods.reachesArchive(from)) {
+                List<TimesheetEntry> archived = timesheets.findByEmployee(conn, PayPeriodArchive.ARCHIVE_TABLE, employeeId, from, toExclusive);
+                if (!archived.isEmpty()) {
+                    archived.addAll(entries);
+                    archived.sort(Comparator.comparing(TimesheetEntry::getStartTime));
+                    entries = archived;
+                }
+            }
+            loadTimesheetMetrics.end(started, entries.size());
+            return entries;
+        } catch (SQLException | RuntimeException ex) {
+            loadTimesheetMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    // Pages through one employee's live entries in start time order for the timesheet grid.
+    PageSource<TimesheetEntry> timesheetPages(String employeeId) {
+        return new JdbcPageSource<>(dbManager, employeeId, TimesheetDao.COLUMNS,
+                "timesheet", "employee_id = ?", Collections.singletonList(employeeId),
+                ENTRY_START_TIME, ENTRY_ID, Collections.emptyList(), TimesheetDao::map, loadTimesheetMetrics);
+    }
+
+    // Returns false when the employee does not exist. The insert itself checks, so an employee
+    // deleted after the directory lookup gets no row either.
+    boolean addTimeEntry(String employeeId, LocalDateTime startTime, LocalDateTime endTime) throws SQLException {
+        if (!directory.exists(employeeId)) {
+            return false;
+        }
+        try (Connection conn = dbManager.getConnection()) {
+            beginWrite(conn);
+            if (!timesheets.insert(conn, employeeId, startTime, endTime)) {
+                conn.rollback();
+                return false;
+            }
+            hoursRollup.add(conn, employeeId, startTime, endTime);
+            changeFeed.record(conn, "timesheet", timesheetKey(employeeId, startTime), ChangeFeed.INSERT);
+            conn.commit();
+            dbManager.recordWrite(employeeId);
+            reportCache.invalidate(employeeId, startTime.toLocalDate());
+            if (columnarStore != null) {
+                columnarStore.append(employeeId, startTime, endTime);
+            }
+            return true;
+        }
+    }
+
+    // Opens the punch journal (-Dtimesheet.journal.path, default ~/.timesheet/punches.journal) and
+    // replays anything a previous run left unflushed. Punches go to the database; the journal only
+    // takes them while the database cannot be reached. Off with -Dtimesheet.journal=false.
+    synchronized void openPunchJournal() {
+        if (punchJournal != null || "false".equals(System.getProperty("timesheet.journal"))) {
+            return;
+        }
+        Path file = Paths.get(System.getProperty("timesheet.journal.path",
+                Paths.get(System.getProperty("user.home"), ".timesheet", "punches.journal").toString()));
+        try {
+            punchJournal = new PunchJournal(file, this::writeJournaledShifts);
+            metrics.register("journal", punchJournal::getStats);
+        } catch (IOException ex) {
+            System.err.println("Punch journal unavailable, punches need the database: " + ex.getMessage());
+        }
+    }
+
+    // Null unless openPunchJournal succeeded.
+    PunchJournal getPunchJournal() {
+        return punchJournal;
+    }
+
+    // As last seen by this process; a clock-in from another device or server shows up here once
+    // this process has punched for the employee.
+    LocalDateTime openShiftStart(String employeeId) {
+        LocalDateTime start = openShifts.get(employeeId);
+        PunchJournal journal = punchJournal;
+        return start != null || journal == null ? start : journal.openShiftStart(employeeId);
+    }
+
+    // Writes the open shift as a timesheet row without an end time. The employee's row is locked
+    // first, so clock-ins from any window, device or server take turns and at most one shift per
+    // employee is ever open.
+    PunchResult clockIn(String employeeId, LocalDateTime start) throws SQLException, IOException {
+        long started = punchMetrics.begin();
+        try {
+            PunchResult result;
+            synchronized (punchLock(employeeId)) {
+                result = recordClockIn(employeeId, start);
+            }
+            punchMetrics.end(started, result == PunchResult.RECORDED ? 1 : 0);
+            return result;
+        } catch (SQLException | IOException | RuntimeException ex) {
+            punchMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    // Closes the open shift with one conditional UPDATE, so of two racing clock-outs exactly one
+    // records the shift and the other gets NOT_CLOCKED_IN.
+    ClockOut clockOut(String employeeId, LocalDateTime end) throws SQLException, IOException {
+        long started = punchMetrics.begin();
+        try {
+            ClockOut result;
+            synchronized (punchLock(employeeId)) {
+                result = recordClockOut(employeeId, end);
+            }
+            punchMetrics.end(started, result.result == PunchResult.RECORDED ? 1 : 0);
+            return result;
+        } catch (SQLException | IOException | RuntimeException ex) {
+            punchMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    // Nothing here reads the database before the punch's own transaction, whose time is bounded
+    // while the journal can take the punch instead.
+    private PunchResult recordClockIn(String employeeId, LocalDateTime start) throws SQLException, IOException {
+        if (!directory.mayExist(employeeId)) {
+            return PunchResult.UNKNOWN_EMPLOYEE;
+        }
+        PunchJournal journal = punchJournal;
+        if (journal != null && journal.openShiftStart(employeeId) != null) {
+            // Clocked in while the database was unreachable or slow
+            return PunchResult.ALREADY_CLOCKED_IN;
+        }
+        try (Connection conn = punchConnection(journal)) {
+            beginWrite(conn);
+            if (!employees.lock(conn, employeeId)) {
+                conn.rollback();
+                return PunchResult.UNKNOWN_EMPLOYEE;
+            }
+            LocalDateTime open = timesheets.findOpenShiftStart(conn, employeeId);
+            if (open != null) {
+                conn.rollback();
+                openShifts.put(employeeId, open);
+                return PunchResult.ALREADY_CLOCKED_IN;
+            }
+            timesheets.insert(conn, employeeId, start, null);
+            changeFeed.record(conn, "timesheet", timesheetKey(employeeId, start), ChangeFeed.INSERT);
+            conn.commit();
+        } catch (SQLException ex) {
+            if (journal == null || !isUnreachable(ex) || openShifts.containsKey(employeeId)) {
+                throw ex;
+            }
+            System.err.println("Database unreachable or slow, journaling clock-in of " + employeeId + ": " + ex.getMessage());
+            return journal.clockIn(employeeId, start) ? PunchResult.RECORDED : PunchResult.ALREADY_CLOCKED_IN;
+        }
+        dbManager.recordWrite(employeeId);
+        openShifts.put(employeeId, start);
+        return PunchResult.RECORDED;
+    }
+
+    private ClockOut recordClockOut(String employeeId, LocalDateTime end) throws SQLException, IOException {
+        if (!directory.mayExist(employeeId)) {
+            return new ClockOut(PunchResult.UNKNOWN_EMPLOYEE, null);
+        }
+        PunchJournal journal = punchJournal;
+        if (journal != null && journal.openShiftStart(employeeId) != null) {
+            // Clocked in while the database was unreachable or slow; the journal pairs the punches and
+            // inserts the shift once it can
+            TimesheetEntry shift = journal.clockOut(employeeId, end);
+            if (shift != null) {
+                return new ClockOut(PunchResult.RECORDED, shift);
+            }
+        }
+        LocalDateTime start;
+        try (Connection conn = punchConnection(journal)) {
+            beginWrite(conn);
+            start = timesheets.findOpenShiftStart(conn, employeeId);
+            if (start == null || !timesheets.close(conn, employeeId, start, end)) {
+                boolean known = start != null || employees.find(conn, employeeId) != null;
+                conn.rollback();
+                openShifts.remove(employeeId);
+                return new ClockOut(known ? PunchResult.NOT_CLOCKED_IN : PunchResult.UNKNOWN_EMPLOYEE, null);
+            }
+            hoursRollup.add(conn, employeeId, start, end);
+            changeFeed.record(conn, "timesheet", timesheetKey(employeeId, start), ChangeFeed.UPDATE);
+            conn.commit();
+        } catch (SQLException ex) {
+            LocalDateTime known = openShifts.get(employeeId);
+            if (journal == null || !isUnreachable(ex) || known == null) {
+                throw ex;
+            }
+            // The flush closes the open row, or finds it already closed if the commit got through
+            System.err.println("Database unreachable or slow, journaling clock-out of " + employeeId + ": " + ex.getMessage());
+            journal.clockIn(employeeId, known);
+            openShifts.remove(employeeId);
+            return new ClockOut(PunchResult.RECORDED, journal.clockOut(employeeId, end));
+        }
+        dbManager.recordWrite(employeeId);
+        openShifts.remove(employeeId);
+        reportCache.invalidate(employeeId, start.toLocalDate());
+        if (columnarStore != null) {
+            columnarStore.append(employeeId, start, end);
+        }
+        return new ClockOut(PunchResult.RECORDED, new TimesheetEntry(employeeId, start, end, Duration.between(start, end).toMinutes() / 60.0));
+    }
+
+    private Object punchLock(String employeeId) {
+        return punchLocks.computeIfAbsent(employeeId, id -> new Object());
+    }
+
+    // Without the journal the punch has nowhere else to go, so it waits as long as any other write.
+    private Connection punchConnection(PunchJournal journal) throws SQLException {
+        return journal == null ? dbManager.getConnection() : dbManager.getConnection(punchTimeoutMillis);
+    }
+
+    // Journal flush: closes the open row of each shift that has one, else inserts the shift unless a
+    // row with the same employee and start time already exists (a replayed batch) or the employee
+    // is gone, in one transaction per batch.
+    private void writeJournaledShifts(List<TimesheetEntry> shifts) throws SQLException {
+        List<TimesheetEntry> written = new ArrayList<>(shifts.size());
+        long started = journalFlushMetrics.begin();
+        try (Connection conn = dbManager.getConnection()) {
+            beginWrite(conn);
+            List<TimesheetEntry> unopened = new ArrayList<>();
+            for (TimesheetEntry shift : shifts) {
+                if (timesheets.close(conn, shift.getEmployeeId(), shift.getStartTime(), shift.getEndTime())) {
+                    changeFeed.record(conn, "timesheet", timesheetKey(shift.getEmployeeId(), shift.getStartTime()), ChangeFeed.UPDATE);
+                    written.add(shift);
+                } else {
+                    unopened.add(shift);
+                }
+            }
+            for (TimesheetEntry shift : timesheets.insertIfAbsent(conn, unopened)) {
+                changeFeed.record(conn, "timesheet", timesheetKey(shift.getEmployeeId(), shift.getStartTime()), ChangeFeed.INSERT);
+                written.add(shift);
+            }
+            for (TimesheetEntry shift : written) {
+                hoursRollup.add(conn, shift.getEmployeeId(), shift.getStartTime(), shift.getEndTime());
+            }
+            conn.commit();
+            for (TimesheetEntry shift : written) {
+                dbManager.recordWrite(shift.getEmployeeId());
+                reportCache.invalidate(shift.getEmployeeId(), shift.getStartTime().toLocalDate());
+            }
+            journalFlushMetrics.end(started, written.size());
+        } catch (SQLException | RuntimeException ex) {
+            journalFlushMetrics.fail(started);
+            throw ex;
+        }
+        if (columnarStore != null) {
+            for (TimesheetEntry shift : written) {
+                columnarStore.append(shift.getEmployeeId(), shift.getStartTime(), shift.getEndTime());
+            }
+        }
+    }
+
+    List<Employee> loadEmployees() throws SQLException {
+        List<Employee> cached = directory.all();
+        if (cached != null) {
+            return cached;
+        }
+        try (Connection conn = dbManager.getReadConnection(EMPLOYEES_KEY)) {
+            return employees.findAll(conn);
+        }
+    }
+
+    // Pages through the employees for the manager's grid, from the directory once it is warm; the
+    // filter prefix-matches id, name or department.
+    PageSource<Employee> employeePages() {
+        return directory.pages(new JdbcPageSource<>(dbManager, EMPLOYEES_KEY, EmployeeDao.COLUMNS, "employees", null, Collections.emptyList(),
+                EMPLOYEE_ID, EMPLOYEE_SEARCH_COLUMNS, EmployeeDao::map, employeeReadMetrics));
+    }
+
+    // One department's employees ordered by id.
+    List<Employee> employeesInDepartment(String department) throws SQLException {
+        List<Employee> cached = directory.inDepartment(department);
+        if (cached != null) {
+            return cached;
+        }
+        try (Connection conn = dbManager.getReadConnection(EMPLOYEES_KEY)) {
+            return employees.findByDepartment(conn, department);
+        }
+    }
+
+    // Returns null when no employee has that id.
+    Employee findEmployee(String employeeId) throws SQLException {
+        long started = employeeReadMetrics.begin();
+        try {
+            Employee employee = directory.find(employeeId);
+            employeeReadMetrics.end(started, employee == null ? 0 : 1);
+            return employee;
+        } catch (SQLException | RuntimeException ex) {
+            employeeReadMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    // For the report cache, which only drops the reports a shift of this employee can change.
+    private String departmentOf(String employeeId) throws SQLException {
+        Employee employee = directory.find(employeeId);
+        return employee == null ? null : employee.getDepartment();
+    }
+
+    // Employees changed by anyone since the cursor last moved, re-read from the table into the directory.
+    ChangeFeed.Delta<Employee> employeeChanges(ChangeFeed.Cursor cursor, int limit) throws SQLException {
+        List<ChangeFeed.Change> changes = changeFeed.poll(cursor, limit);
+        ChangeFeed.Delta<Employee> delta = new ChangeFeed.Delta<>();
+        Set<String> keys = new LinkedHashSet<>();
+        for (ChangeFeed.Change change : changes) {
+            keys.add(change.rowKey);
+        }
+        Map<String, Employee> found = directory.refresh(keys);
+        for (String key : keys) {
+            Employee employee = found.get(key);
+            if (employee == null) {
+                delta.removedKeys.add(key);
+            } else {
+                delta.upserts.add(employee);
+            }
+        }
+        return delta;
+    }
+
+    void addEmployee(String employeeId, String name, String department) throws SQLException {
+        long started = employeeWriteMetrics.begin();
+        try (Connection conn = dbManager.getConnection()) {
+            beginWrite(conn);
+            employees.insert(conn, employeeId, name, department);
+            changeFeed.record(conn, "employees", employeeId, ChangeFeed.INSERT);
+            conn.commit();
+            dbManager.recordWrite(EMPLOYEES_KEY);
+            directory.put(new Employee(employeeId, name, department));
+            employeeWriteMetrics.end(started, 1);
+        } catch (SQLException | RuntimeException ex) {
+            employeeWriteMetrics.fail(started);
+            throw ex;
+        }
+        authService.invalidate(employeeId);
+    }
+
+    void updateEmployee(String employeeId, String name, String department) throws SQLException {
+        long started = employeeWriteMetrics.begin();
+        try (Connection conn = dbManager.getConnection()) {
+            beginWrite(conn);
+            int updated = employees.update(conn, employeeId, name, department);
+            changeFeed.record(conn, "employees", employeeId, ChangeFeed.UPDATE);
+            conn.commit();
+            dbManager.recordWrite(EMPLOYEES_KEY);
+            if (updated > 0) {
+                directory.put(new Employee(employeeId, name, department));
+                // Department reports follow the employee's current department
+                reportCache.invalidateAll();
+            }
+            employeeWriteMetrics.end(started, updated);
+        } catch (SQLException | RuntimeException ex) {
+            employeeWriteMetrics.fail(started);
+            throw ex;
+        }
+        // Name and department are not part of a login, so sessions stay valid
+    }
+
+    void deleteEmployee(String employeeId) throws SQLException {
+        long started = employeeWriteMetrics.begin();
+        try (Connection conn = dbManager.getConnection()) {
+            beginWrite(conn);
+            int deleted = employees.delete(conn, employeeId);
+            changeFeed.record(conn, "employees", employeeId, ChangeFeed.DELETE);
+            conn.commit();
+            dbManager.recordWrite(EMPLOYEES_KEY);
+            directory.remove(employeeId);
+            if (deleted > 0) {
+                reportCache.invalidateAll();
+            }
+            employeeWriteMetrics.end(started, deleted);
+        } catch (SQLException | RuntimeException ex) {
+            employeeWriteMetrics.fail(started);
+            throw ex;
+        }
+        authService.invalidate(employeeId);
+    }
+
+    List<EmployeeHours> generateReport() throws SQLException {
+        return generateReport(null, null, null);
+    }
+
+    // Same report from the report cache, with the time it was computed; refresh recomputes it.
+    ReportCache.Snapshot cachedReport(LocalDate from, LocalDate to, String department, boolean refresh) throws SQLException {
+        return reportCache.get(from, to, department, refresh);
+    }
+
+    // Hours per employee for shifts starting between from and to (inclusive); null means no limit.
+    // Served from the in-memory columnar store when enabled, else from the rollup tables once they are
+    // backfilled, else from the live table plus the pay period archive for ranges reaching back that far.
+    List<EmployeeHours> generateReport(LocalDate from, LocalDate to, String department) throws SQLException {
+        long started = reportMetrics.begin();
+        try {
+            List<EmployeeHours> report = computeReport(from, to, department);
+            reportMetrics.end(started, report.size());
+            return report;
+        } catch (SQLException | RuntimeException ex) {
+            reportMetrics.fail(started);
+            throw ex;
+        }
+    }
+
+    private List<EmployeeHours> computeReport(LocalDate from, LocalDate to, String department) throws SQLException {
+        if (columnarStore != null) {
+            columnarStore.refresh();
+            return columnarStore.hoursByEmployee(from, to == null ? null : to.plusDays(1), department);
+        }
+        if (hoursRollup.isReady()) {
+            return hoursRollup.report(from, to, department);
+        }
+        LocalDate toExclusive = to == null ? null : to.plusDays(1);
+        try (Connection conn = dbManager.getReadConnection(null)) {
+            if (!payPeriods.reachesArchive(from)) {
+                return timesheets.hoursByEmployee(conn, from, toExclusive, department);
+            }
+            // One snapshot for both, so shifts archived in between are neither missed nor counted twice
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            List<EmployeeHours> live = timesheets.hoursByEmployee(conn, from, toExclusive, department);
+            Map<String, Double> hours = new TreeMap<>();
+            for (EmployeeHours row : payPeriods.hoursByEmployee(conn, from, toExclusive, department)) {
+                hours.put(row.getEmployeeId(), row.getTotalHours());
+            }
+            conn.commit();
+            for (EmployeeHours row : live) {
+                hours.merge(row.getEmployeeId(), row.getTotalHours(), Double::sum);
+            }
+            List<EmployeeHours> report = new ArrayList<>();
+            hours.forEach((employeeId, total) -> report.add(new EmployeeHours(employeeId, total)));
+            return report;
+        }
+    }
+
+    // Streams the shifts behind generateReport(from, to, department) to a CSV or JSON Lines file.
+    long exportReport(Path target, ReportExporter.Format format, LocalDate from, LocalDate to, String department,
+                      ReportExporter.Progress progress) throws SQLException, IOException {
+        return reportExporter.export(target, format, from, to, department, progress);
+    }
+
+    // Bulk-loads finished shifts from a CSV or JSON Lines file; safe to rerun after a failure.
+    BulkTimesheetImporter.Result importTimesheet(Path file, LongConsumer progress) throws SQLException, IOException {
+        try {
+            return importer.importFile(file, progress);
+        } finally {
+            // Chunks commit as they go, so even a failed import may have changed any range
+            reportCache.invalidateAll();
+        }
+    }
+
+    // Regular and overtime minutes per employee for the pay period containing day; see PayrollEngine.
+    PayrollEngine.Result runPayroll(LocalDate day, boolean recompute) throws SQLException, InterruptedException {
+        return payroll.run(day, recompute);
+    }
+
+    // Department totals, weekly overtime and shift length percentiles from the columnar store.
+    ColumnarTimesheetStore.Summary analyticsSummary(LocalDate from, LocalDate to) throws SQLException {
+        if (columnarStore == null) {
+            throw new IllegalStateException("Columnar reports are disabled; start with -Dtimesheet.columnarReports=true");
+        }
+        columnarStore.refresh();
+        return columnarStore.summarize(from, to == null ? null : to.plusDays(1));
+    }
+
+    // Writes run as one transaction with their change_log entry; an uncommitted transaction is
+    // rolled back when the connection goes back to the pool.
+    private void beginWrite(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+    }
+
+    // change_log key of a timesheet row
+    static String timesheetKey(String employeeId, LocalDateTime startTime) {
+        return employeeId + "|" + startTime;
+    }
+
+    private static boolean isDuplicateKey(SQLException ex) {
+        return ex.getSQLState() != null && ex.getSQLState().startsWith("23");
+    }
+
+    // Connection failures (SQLState class 08) and timeouts, as opposed to errors in the statement.
+    private static boolean isUnreachable(SQLException ex) {
+        return ex instanceof SQLTimeoutException || (ex.getSQLState() != null && ex.getSQLState().startsWith("08"));
+    }
+}
@@ -0,0 +1,43 @@
+import java.time.LocalDateTime;
+
+class TimesheetEntry {
+    private final Long id;
+    private final String employeeId;
+    private final LocalDateTime startTime;
+    private final LocalDateTime endTime;
+    private final double durationHours;
+
+    TimesheetEntry(String employeeId, LocalDateTime startTime, LocalDateTime endTime, double durationHours) {
+        this(null, employeeId, startTime, endTime, durationHours);
+    }
+
+    TimesheetEntry(Long id, String employeeId, LocalDateTime startTime, LocalDateTime endTime, double durationHours) {
+        this.id = id;
+        this.employeeId = employeeId;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.durationHours = durationHours;
+    }
+
+    // Null for an entry built in memory rather than read from the table
+    Long getId() {
+        return id;
+    }
+
+    String getEmployeeId() {
+        return employeeId;
+    }
+
+    LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    // Null while the shift is still open
+    LocalDateTime getEndTime() {
+        return endTime;
+    }
+
+    double getDurationHours() {
+        return durationHours;
+    }
+}
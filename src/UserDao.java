@@ -0,0 +1,68 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// SQL for the users table. Passwords only ever pass through here already hashed.
+class UserDao {
+
+    // What a login needs: the stored hash, the role and whether the employee row exists.
+    static class Credentials {
+        final String passwordHash;
+        final String role;
+        final boolean employeeExists;
+
+        Credentials(String passwordHash, String role, boolean employeeExists) {
+            this.passwordHash = passwordHash;
+            this.role = role;
+            this.employeeExists = employeeExists;
+        }
+    }
+
+    private static final String EXISTS = "SELECT 1 FROM users WHERE username = ?";
+    private static final String FIND_CREDENTIALS = "SELECT u.password, u.role, e.employee_id FROM users u "
+            + "LEFT JOIN employees e ON e.employee_id = u.username WHERE u.username = ?";
+    private static final String INSERT = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
+    private static final String REPLACE_PASSWORD = "UPDATE users SET password = ? WHERE username = ? AND password = ?";
+
+    boolean exists(Connection conn, String username) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(EXISTS)) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // Null for an unknown username.
+    Credentials findCredentials(Connection conn, String username) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND_CREDENTIALS)) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Credentials(rs.getString("password"), rs.getString("role"), rs.getString("employee_id") != null);
+            }
+        }
+    }
+
+    void insert(Connection conn, String username, String passwordHash, String role) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT)) {
+            stmt.setString(1, username);
+            stmt.setString(2, passwordHash);
+            stmt.setString(3, role);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Compare-and-set, so a password changed concurrently is not overwritten. Returns false if it was.
+    boolean replacePassword(Connection conn, String username, String expectedHash, String newHash) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(REPLACE_PASSWORD)) {
+            stmt.setString(1, newHash);
+            stmt.setString(2, username);
+            stmt.setString(3, expectedHash);
+            return stmt.executeUpdate() == 1;
+        }
+    }
+}